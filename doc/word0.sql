@@ -10,7 +10,7 @@ CREATE TABLE `word`  (
   `word` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '单词',
   `sound` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '音标',
   `translation` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '翻译',
-  `schedule` int(1) NOT NULL DEFAULT 0 COMMENT '进度: 0(未背诵), 1(已背诵1遍), 2(已背诵2遍), 3(已背诵3遍, 今日无需再背诵), 4(不认识: 只要一次背诵时忘记, 则变为不认识状态)',
+  `schedule` int(1) NOT NULL DEFAULT 0 COMMENT '不再使用, 始终为0, 各用户的进度见user_word_progress',
   `start_date` timestamp(0) NOT NULL DEFAULT CURRENT_TIMESTAMP(0) COMMENT '计划开始时间, 初始为录入单词的第二天, 后续按照艾宾浩斯记忆曲线背诵单词: 0, 1, 2, 4, 8, 16, 32, 108. 若某个单词没有在规定日期24点前背完, 则改为规定日期的第二天, 即单词进入记忆曲线的开始, 算作没背单词的惩罚',
   `remark` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '备注',
   `create_by` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT 'system' COMMENT '创建人ID，默认为系统创建',
@@ -21,20 +21,97 @@ CREATE TABLE `word`  (
   `column2` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '备用字段2',
   `column3` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '备用字段3',
   `del_flag` char(1) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT '0' COMMENT '删除标志',
-  PRIMARY KEY (`id`) USING BTREE
+  `start_day` date GENERATED ALWAYS AS (date(`start_date`)) STORED COMMENT '计划开始日期, 由start_date自动生成, 查询今日单词时用start_day IN (8个日期)走索引',
+  `ease` double NOT NULL DEFAULT 2.5 COMMENT '难易系数(SM-2算法)',
+  `stability` double NOT NULL DEFAULT 0 COMMENT '记忆稳定性, 单位为天(FSRS算法), 没背过时为0',
+  `difficulty` double NOT NULL DEFAULT 0 COMMENT '难度, 1到10(FSRS算法), 没背过时为0',
+  `reps` int(11) NOT NULL DEFAULT 0 COMMENT '连续记住的次数',
+  `lapses` int(11) NOT NULL DEFAULT 0 COMMENT '忘记的次数',
+  `last_day` date NULL DEFAULT NULL COMMENT '上次背诵日期',
+  `due_day` date NULL DEFAULT NULL COMMENT '下次背诵日期, 初始为计划开始日期, SM-2和FSRS算法查询今日单词时用due_day <= 今日走索引',
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_del_flag_id`(`del_flag`, `id`) USING BTREE COMMENT '游标分页',
+  INDEX `idx_del_flag_start_day`(`del_flag`, `start_day`) USING BTREE COMMENT '今日单词',
+  INDEX `idx_del_flag_due_day`(`del_flag`, `due_day`) USING BTREE COMMENT '今日单词(SM-2, FSRS)',
+  INDEX `idx_del_flag_word`(`del_flag`, `word`) USING BTREE COMMENT '按单词查询, 加载单词索引'
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '单词表' ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for word_review_log
+-- ----------------------------
+DROP TABLE IF EXISTS `word_review_log`;
+CREATE TABLE `word_review_log`  (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `word_id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '单词ID',
+  `user_key` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '背诵会话键, 登录用户为用户ID',
+  `know` tinyint(1) NOT NULL COMMENT '1: 认识, 0: 不认识',
+  `schedule` int(1) NOT NULL COMMENT '回答后的进度',
+  `review_time` datetime(3) NOT NULL COMMENT '回答时间',
+  `review_day` date NOT NULL COMMENT '回答日期, 分区字段',
+  PRIMARY KEY (`id`, `review_day`) USING BTREE,
+  INDEX `idx_word_id`(`word_id`) USING BTREE COMMENT '单词的背诵历史'
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '背诵记录表, 只插入, 按天分区, 之后的分区由程序每天提前创建, 过期的分区可直接DROP PARTITION' ROW_FORMAT = Dynamic
+PARTITION BY RANGE COLUMNS(`review_day`) (
+  PARTITION `p20190729` VALUES LESS THAN ('2019-07-30'),
+  PARTITION `pmax` VALUES LESS THAN (MAXVALUE)
+);
+
+-- ----------------------------
+-- Table structure for user_word_progress
+-- ----------------------------
+DROP TABLE IF EXISTS `user_word_progress`;
+CREATE TABLE `user_word_progress`  (
+  `user_key` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '背诵会话键, 登录用户为用户ID',
+  `word_id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '单词ID',
+  `schedule` int(1) NOT NULL COMMENT '进度: 0(未背诵), 1(已背诵1遍), 2(已背诵2遍), 3(已背诵3遍, 今日无需再背诵), 4(不认识: 只要一次背诵时忘记, 则变为不认识状态)',
+  PRIMARY KEY (`user_key`, `word_id`) USING BTREE,
+  INDEX `idx_schedule_word_id`(`schedule`, `word_id`) USING BTREE COMMENT '每日顺延时查询背完和没背完的单词'
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '用户今日的单词进度, 每个用户的每个单词一行, 每日顺延时清空(TRUNCATE)' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Table structure for deck
+-- ----------------------------
+DROP TABLE IF EXISTS `deck`;
+CREATE TABLE `deck`  (
+  `id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '主键',
+  `name` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '名称, 不能包含空白和运算符(!&|()), 用于牌组表达式',
+  `remark` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '备注',
+  `create_by` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT 'system' COMMENT '创建人ID，默认为系统创建',
+  `update_by` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT 'system' COMMENT '更新人ID，默认为系统更新',
+  `create_date` timestamp(0) NOT NULL DEFAULT CURRENT_TIMESTAMP(0) COMMENT '创建时间',
+  `update_date` timestamp(0) NOT NULL DEFAULT CURRENT_TIMESTAMP(0) ON UPDATE CURRENT_TIMESTAMP(0) COMMENT '更新时间',
+  `column1` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '备用字段1',
+  `column2` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '备用字段2',
+  `column3` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '备用字段3',
+  `del_flag` char(1) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT '0' COMMENT '删除标志',
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_del_flag_id`(`del_flag`, `id`) USING BTREE COMMENT '游标分页',
+  INDEX `idx_del_flag_name`(`del_flag`, `name`) USING BTREE COMMENT '按名称查询'
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '牌组表' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Table structure for word_deck
+-- ----------------------------
+DROP TABLE IF EXISTS `word_deck`;
+CREATE TABLE `word_deck`  (
+  `deck_id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '牌组ID',
+  `word_id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL COMMENT '单词ID',
+  PRIMARY KEY (`deck_id`, `word_id`) USING BTREE,
+  INDEX `idx_word_id`(`word_id`) USING BTREE COMMENT '单词所属的牌组'
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '单词所属的牌组, 启动时全部加载为内存中的压缩位图(DeckIndex)' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Records of word
 -- ----------------------------
-INSERT INTO `word` VALUES ('1', 'excellent', '\'ekslәnt', '杰出的, 出色的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:01', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('2', 'accompany', 'ә\'kʌmpәni', '陪伴, 伴随', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('3', 'compulsory', 'kәm\'pʌlsәri', '义务的, 必须做的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('4', 'embrace', 'im\'breis', '拥抱', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('5', 'extravagant', 'ik\'strævgәnt', '奢侈的, 浪费的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('6', 'flourish', '\'flʌriʃ', '繁荣, 茂盛', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('7', 'homogeneous', ',hәumә\'dʒi:niәs', '同种的, 同质的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('8', 'illuminate', 'i\'lju:mineit', '照明, 阐明', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
-INSERT INTO `word` VALUES ('9', 'glimpse', 'glimps', '闪烁不定', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0');
+INSERT INTO `word` VALUES ('1', 'excellent', '\'ekslәnt', '杰出的, 出色的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:01', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('2', 'accompany', 'ә\'kʌmpәni', '陪伴, 伴随', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('3', 'compulsory', 'kәm\'pʌlsәri', '义务的, 必须做的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('4', 'embrace', 'im\'breis', '拥抱', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('5', 'extravagant', 'ik\'strævgәnt', '奢侈的, 浪费的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('6', 'flourish', '\'flʌriʃ', '繁荣, 茂盛', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('7', 'homogeneous', ',hәumә\'dʒi:niәs', '同种的, 同质的', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('8', 'illuminate', 'i\'lju:mineit', '照明, 阐明', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+INSERT INTO `word` VALUES ('9', 'glimpse', 'glimps', '闪烁不定', 0, '2019-07-10 10:55:00', '', 'system', 'system', '2019-07-05 00:22:13', '2019-07-09 23:55:00', NULL, NULL, NULL, '0', DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+UPDATE `word` SET `due_day` = `start_day`;
 
 SET FOREIGN_KEY_CHECKS = 1;
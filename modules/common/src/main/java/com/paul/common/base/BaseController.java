@@ -1,11 +1,14 @@
 package com.paul.common.base;
 
+import com.paul.common.util.NdJsonWriter;
 import com.paul.common.util.P;
 import com.paul.common.util.R;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -139,6 +142,40 @@ public abstract class BaseController<E extends BaseEntity, S extends BaseService
 
         return service.listObjects(new P(page, limit).putMap(params));
     }
+
+    /**
+     * 根据参数游标分页查询列表, 每一页的耗时与页码无关, 适合翻很深的页或者导出全表
+     * 第一页不传cursor, 之后每次传上一页响应中的cursor, 响应中cursor为NULL时代表没有下一页
+     *
+     * @param limit  每页条数
+     * @param cursor 上一页响应中的游标
+     * @param params 参数
+     * @return com.paul.common.util.R
+     */
+    @GetMapping("seek/{limit}")
+    public R seekObjects(@PathVariable Integer limit,
+        @RequestParam(required = false) String cursor, @RequestParam Map<String, Object> params) {
+
+        params.remove("cursor");
+        return service.listObjects(P.seek(cursor, limit).putMap(params));
+    }
+
+    /**
+     * 根据参数流式导出列表, 响应为分块传输的NDJSON(每行一个JSON对象), 内存占用与数据量无关
+     * 适合后台导出全表等数据量很大的场景, 查询条件可在URL上追加
+     *
+     * @param params 参数
+     * @param resp   响应
+     * @throws java.io.IOException 写响应失败
+     */
+    @GetMapping("stream")
+    public void streamObjects(@RequestParam Map<String, Object> params, HttpServletResponse resp)
+        throws IOException {
+
+        try (NdJsonWriter writer = new NdJsonWriter(resp)) {
+            service.streamObjects(new P(params), writer);
+        }
+    }
 }
 
 /**
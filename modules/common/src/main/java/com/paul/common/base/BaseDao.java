@@ -1,17 +1,23 @@
 package com.paul.common.base;
 
+import com.paul.common.exception.CustomException;
+import com.paul.common.util.Criteria;
 import com.paul.common.util.P;
-import com.paul.common.util.SqlUtils;
 import com.paul.common.util.StringUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.jdbc.SQL;
+import org.apache.ibatis.mapping.ResultSetType;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.paul.common.constant.SqlConstant.*;
 import static com.paul.common.util.SqlUtils.*;
@@ -97,7 +103,17 @@ public interface BaseDao<E extends BaseEntity> {
     List<E> listObjectsByIds(@Param("ids") String ids);
 
     /**
-     * 根据参数查询列表
+     * 根据主键查询多个的主键和更新时间, 用于校验实体缓存(见EntityCache)
+     *
+     * @param ids 主键, 以英文逗号隔开
+     * @return java.util.List<E> 只有id和updateDate的实体
+     */
+    @SelectProvider(type = Provider.class, method = "listVersionsByIds")
+    List<E> listVersionsByIds(@Param("ids") String ids);
+
+    /**
+     * 根据参数查询列表, 支持页码分页和游标分页(见P)
+     * 游标分页时按(排序字段, 主键)排序, 表上需要有(del_flag, 排序字段)的索引
      *
      * @param p 多条件查询参数
      * @return java.util.List<E> 查询的列表
@@ -105,8 +121,38 @@ public interface BaseDao<E extends BaseEntity> {
     @SelectProvider(type = Provider.class, method = "listObjects")
     List<E> listObjects(P p);
 
+    /**
+     * 根据参数流式查询列表, SQL与listObjects相同, 但不会把结果全部读入内存
+     * fetchSize为Integer.MIN_VALUE时, MySQL驱动逐行从服务器读取结果(流式读取), 内存占用与结果数量无关
+     * 注意: 必须在事务中(如@Transactional(readOnly = true))遍历并关闭游标, 遍历结束前该连接不能执行其他SQL
+     *
+     * @param p 多条件查询参数
+     * @return org.apache.ibatis.cursor.Cursor<E> 游标, 用完必须关闭
+     */
+    @SelectProvider(type = Provider.class, method = "listObjects")
+    @Options(fetchSize = Integer.MIN_VALUE, resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<E> cursorObjects(P p);
+
+    /**
+     * 基础Provider, 会被注册为单例(见ProviderSqlSource), 所以初始化后不能再修改属性
+     * 实现了CacheableProvider, 生成的SQL只与参数形状有关的方法, 解析后的SQL会被缓存
+     * 子类若重写了下面的方法且SQL会随参数值变化, 需同时重写sqlCacheKey, 或将sqlCache设为false
+     *
+     * @param <E> 实体类
+     */
     @Slf4j
-    class Provider<E extends BaseEntity> {
+    class Provider<E extends BaseEntity> implements CacheableProvider {
+
+        /**
+         * 每种插入/更新语句最多缓存的模板数量
+         */
+        private static final int MAX_TEMPLATES = 256;
+
+        /**
+         * 当前线程正在执行的语句的查询条件, 从sqlCacheKey到sqlEnd有效
+         */
+        private static final ThreadLocal<StatementCriteria> STATEMENT_CRITERIA =
+            new ThreadLocal<>();
 
         /**
          * 批量插入的字段, 必须在子Dao接口中重新定义定义, 以英文逗号隔开
@@ -125,9 +171,161 @@ public interface BaseDao<E extends BaseEntity> {
         protected String tableName;
 
         /**
-         * 实体类所有属性, 也就是表的所有字段, 会在下面的构造代码块中初始化
+         * 是否缓存解析后的SQL, 若子Dao接口的Provider生成的SQL完全动态, 可在子Dao接口中设为false
+         */
+        protected boolean sqlCache = true;
+
+        /**
+         * 实体类元数据, 包括所有属性(也就是表的所有字段)及其取值函数, 会在下面的构造代码块中初始化
+         */
+        protected EntityMeta meta;
+
+        /**
+         * 插入语句模板, 键为实体类中不为NULL的属性掩码, 同样的非NULL属性组合复用同一个模板
+         */
+        private final ConcurrentMap<Long, String> insertTemplates = new ConcurrentHashMap<>();
+
+        /**
+         * 更新语句模板(不含WHERE), 键为实体类中不为NULL的属性掩码
+         */
+        private final ConcurrentMap<Long, String> updateTemplates = new ConcurrentHashMap<>();
+
+        /**
+         * 批量更新语句模板(不含WHERE), 键为实体类中不为NULL的属性掩码
+         */
+        private final ConcurrentMap<Long, String> updateBatchTemplates = new ConcurrentHashMap<>();
+
+        /**
+         * 获得SQL的缓存键, 条件值都通过Criteria生成占位符, 所以SQL只与参数形状有关:
+         * 插入/更新与哪些属性不为NULL有关, 批量操作与条数有关
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return java.lang.Object
+         */
+        @Override
+        public Object sqlCacheKey(String method, Object[] args) {
+
+            // 每条语句最先调用这里, 开始缓存本条语句的查询条件, 到sqlEnd为止
+            STATEMENT_CRITERIA.set(new StatementCriteria());
+            if (!sqlCache) {
+                return null;
+            }
+            switch (method) {
+                case "insert":
+                    return meta.nullMask(args[0]);
+                case "insertBatch":
+                    // 批量插入的SQL只与条数有关
+                    return ((List<?>) args[0]).size();
+                case "update":
+                case "updateBatch":
+                    Long mask = meta.nullMask(args[0]);
+                    return mask == null ? null :
+                        Arrays.asList(mask, getCriteria(method, args).toString());
+                default:
+                    Criteria criteria = getCriteria(method, args);
+                    return criteria == null ? null : criteria.toString();
+            }
+        }
+
+        /**
+         * 获得Criteria生成的占位符参数
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return java.util.Map<java.lang.String, java.lang.Object>
+         */
+        @Override
+        public Map<String, Object> sqlParams(String method, Object[] args) {
+
+            Criteria criteria = getCriteria(method, args);
+            return criteria == null ? Collections.emptyMap() : criteria.getParams();
+        }
+
+        /**
+         * 执行结束, 释放本条语句的查询条件
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         */
+        @Override
+        public void sqlEnd(String method, Object[] args) {
+
+            STATEMENT_CRITERIA.remove();
+        }
+
+        /**
+         * 获得本条语句的查询条件, 一条语句只构建一次
+         * sqlCacheKey, Provider方法与sqlParams共用同一个条件, 保证占位符与参数一致
+         * 参数与本条语句不是同一组对象时(如在语句外直接调用Provider方法), 重新构建且不缓存
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return com.paul.common.util.Criteria 没有参数化条件的方法返回NULL
          */
-        private List<Field> fields;
+        protected final Criteria getCriteria(String method, Object[] args) {
+
+            StatementCriteria current = STATEMENT_CRITERIA.get();
+            if (current == null) {
+                return buildCriteria(method, args);
+            }
+            if (current.args == null) {
+                current.method = method;
+                current.args = args;
+                current.criteria = buildCriteria(method, args);
+            } else if (!current.matches(method, args)) {
+                return buildCriteria(method, args);
+            }
+            return current.criteria;
+        }
+
+        /**
+         * 构建各方法的查询条件, 子类重写这个方法, 通过getCriteria获取
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return com.paul.common.util.Criteria 没有参数化条件的方法返回NULL
+         */
+        protected Criteria buildCriteria(String method, Object[] args) {
+
+            switch (method) {
+                case "delete":
+                case "getObject":
+                    return new Criteria().equalId(args[0]);
+                case "update":
+                    return new Criteria().equalId(((BaseEntity) args[0]).getId());
+                case "deleteBatch":
+                case "listObjectsByIds":
+                case "listVersionsByIds":
+                    return new Criteria().inIds(args[0]);
+                case "updateBatch":
+                    return new Criteria().inIds(args[1]);
+                case "listObjects":
+                    P p = (P) args[0];
+                    return new Criteria().notDeleted().seek(p, getSeekColumn(p)).page(p);
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * 获得游标分页的排序字段, 排序属性必须是实体类的属性, 防止SQL注入
+         *
+         * @param p 参数
+         * @return java.lang.String 转义后的字段名, 不是游标分页时返回NULL
+         */
+        private String getSeekColumn(P p) {
+
+            if (!p.isSeek()) {
+                return null;
+            }
+            String property = p.getSeekProperty() == null ? "id" : p.getSeekProperty();
+            int index = meta.getProperties().indexOf(property);
+            if (index < 0) {
+                throw new CustomException("分页排序属性有误: " + property);
+            }
+            return meta.getColumns().get(index);
+        }
 
         /**
          * 通用插入方法, 这里需要注意:
@@ -143,7 +341,7 @@ public interface BaseDao<E extends BaseEntity> {
          */
         public String insert(E entity) {
 
-            return getInsertOrCreateSql(entity, INSERT_INTO, null).toString();
+            return getInsertOrUpdateSql(entity, INSERT_INTO, null);
         }
 
         public String insertBatch(@Param("list") List<E> list) {
@@ -157,7 +355,7 @@ public interface BaseDao<E extends BaseEntity> {
             return new SQL() {{
                 UPDATE(tableName);
                 SET(deleted());
-                WHERE(equalId(id));
+                WHERE(getCriteria("delete", new Object[]{id}).getWhere());
             }}.toString();
         }
 
@@ -166,19 +364,20 @@ public interface BaseDao<E extends BaseEntity> {
             return new SQL() {{
                 UPDATE(tableName);
                 SET(deleted());
-                WHERE(inIds(ids));
+                WHERE(getCriteria("deleteBatch", new Object[]{ids}).getWhere());
             }}.toString();
         }
 
         public String update(E entity) {
 
-            return getInsertOrCreateSql(entity, UPDATE, null).WHERE(equalId(entity.getId()))
-                .toString();
+            return getInsertOrUpdateSql(entity, UPDATE, null) + WHERE +
+                getCriteria("update", new Object[]{entity}).getWhere();
         }
 
         public String updateBatch(@Param("entity") E entity, @Param("ids") String ids) {
 
-            return getInsertOrCreateSql(entity, UPDATE, "entity").WHERE(inIds(ids)).toString();
+            return getInsertOrUpdateSql(entity, UPDATE, "entity") + WHERE +
+                getCriteria("updateBatch", new Object[]{entity, ids}).getWhere();
         }
 
         public String getObject(Object id) {
@@ -186,7 +385,7 @@ public interface BaseDao<E extends BaseEntity> {
             return new SQL() {{
                 SELECT(selectColumns.toString());
                 FROM(tableName);
-                WHERE(equalId(id));
+                WHERE(getCriteria("getObject", new Object[]{id}).getWhere());
             }}.toString();
         }
 
@@ -195,17 +394,27 @@ public interface BaseDao<E extends BaseEntity> {
             return new SQL() {{
                 SELECT(selectColumns.toString());
                 FROM(tableName);
-                WHERE(inIds(ids));
+                WHERE(getCriteria("listObjectsByIds", new Object[]{ids}).getWhere());
+            }}.toString();
+        }
+
+        public String listVersionsByIds(@Param("ids") String ids) {
+
+            return new SQL() {{
+                SELECT("`id`, `update_date`");
+                FROM(tableName);
+                WHERE(getCriteria("listVersionsByIds", new Object[]{ids}).getWhere());
             }}.toString();
         }
 
         public String listObjects(P p) {
 
-            return page(p, new SQL() {{
+            Criteria criteria = getCriteria("listObjects", new Object[]{p});
+            return new SQL() {{
                 SELECT(selectColumns.toString());
                 FROM(tableName);
-                WHERE(notDeleted());
-            }}.toString());
+                WHERE(criteria.getWhere());
+            }}.toString() + criteria.getLimit();
         }
 
         {
@@ -213,75 +422,99 @@ public interface BaseDao<E extends BaseEntity> {
             @SuppressWarnings("unchecked") final Class<E> entityClass =
                 (Class<E>) ((ParameterizedType) getClass().getGenericSuperclass())
                     .getActualTypeArguments()[0];
-            String className = entityClass.getSimpleName();
-            className = className.substring(0, 1).toLowerCase() + className.substring(1);
+            // 实体类的属性, 字段名和取值函数只会解析一次
+            meta = EntityMeta.of(entityClass);
             // 根据类名获得表名
-            tableName = SqlUtils
-                .toUnderline(className.substring(0, className.lastIndexOf("Entity"))).toLowerCase();
-            // 获得BaseEntity.class
-            Class<? super E> superclass = entityClass.getSuperclass();
-            // 获得类中所有类型的属性, 但不包括父类中的属性
-            Field[] declaredFields = entityClass.getDeclaredFields();
-            Field[] superDeclaredFields = superclass.getDeclaredFields();
-            fields = new ArrayList<>();
-            selectColumns = new StringBuilder("`");
-            addFields(declaredFields);
-            addFields(superDeclaredFields);
-            StringUtils.removeLastChar(selectColumns, 3).append(" ");
+            tableName = meta.getTableName();
+            selectColumns = new StringBuilder(meta.getSelectColumns()).append(" ");
         }
 
         /**
-         * 装载实体类的属性
+         * 获得通用的插入或更新SQL语句, 同样的非NULL属性组合会复用缓存的模板
          *
-         * @param fields 实体类的属性
+         * @param entity     实体类
+         * @param type       类型: 插入或更新
+         * @param entityName 参数名, 批量更新时参数用@Param注解, 需要加上参数名前缀
+         * @return java.lang.String 更新语句不含WHERE
          */
-        private void addFields(Field[] fields) {
-
-            for (Field field : fields) {
-                if (!Objects.equals("serialVersionUID", field.getName())) {
-                    field.setAccessible(true);
-                    this.fields.add(field);
-                    selectColumns.append(SqlUtils.toUnderline(field.getName())).append("`, `");
+        private String getInsertOrUpdateSql(E entity, String type, String entityName) {
+
+            boolean update = Objects.equals(UPDATE, type);
+            ConcurrentMap<Long, String> templates = !update ? insertTemplates :
+                entityName == null ? updateTemplates : updateBatchTemplates;
+            Long mask = meta.nullMask(entity);
+            if (mask == null) {
+                return buildInsertOrUpdateSql(entity, update, entityName);
+            }
+            String sql = templates.get(mask);
+            if (sql == null) {
+                sql = buildInsertOrUpdateSql(entity, update, entityName);
+                if (templates.size() < MAX_TEMPLATES) {
+                    templates.putIfAbsent(mask, sql);
                 }
             }
+            return sql;
         }
 
         /**
-         * 获得通用的插入或更新SQL语句
+         * 生成插入或更新SQL语句, 实体类中只要不是NULL的属性都会插入/更新
          *
-         * @param entity 实体类
-         * @param type   类型: 插入或更新
-         * @return org.apache.ibatis.jdbc.SQL
+         * @param entity     实体类
+         * @param update     是否为更新
+         * @param entityName 参数名前缀, 可为NULL
+         * @return java.lang.String
          */
-        private SQL getInsertOrCreateSql(E entity, String type, String entityName) {
-
-            return new SQL() {{
-                if (Objects.equals(UPDATE, type)) {
-                    UPDATE(tableName);
+        private String buildInsertOrUpdateSql(E entity, boolean update, String entityName) {
+
+            String prefix = entityName == null ? "" : (entityName + ".");
+            StringBuilder sql = new StringBuilder(update ? UPDATE : INSERT_INTO).append(tableName);
+            StringBuilder values = new StringBuilder();
+            sql.append(update ? SET : " (");
+            for (int i = 0; i < meta.size(); i++) {
+                if (meta.get(entity, i) == null) {
+                    continue;
+                }
+                String column = meta.getColumns().get(i);
+                String property = meta.getProperties().get(i);
+                if (update) {
+                    sql.append(column).append(" = #{").append(prefix).append(property)
+                        .append("}, ");
                 } else {
-                    INSERT_INTO(tableName);
+                    sql.append(column).append(", ");
+                    values.append("#{").append(property).append("}, ");
                 }
-                for (Field field : fields) {
-                    try {
-                        // 属性名
-                        String fieldName = field.getName();
-                        // 获取字段值, 只要不是NULL都会插入/更新
-                        if (field.get(entity) != null) {
-                            if (Objects.equals(UPDATE, type)) {
-                                SET("`" + SqlUtils.toUnderline(fieldName) + "` = #{" +
-                                    (entityName == null ? "" : (entityName + ".")) + fieldName +
-                                    "}");
-                            } else {
-                                VALUES("`" + SqlUtils.toUnderline(fieldName) + "`",
-                                    "#{" + fieldName + "}");
-                            }
-                        }
-                    } catch (IllegalAccessException e) {
-                        log.error(e.getMessage());
-                        e.printStackTrace();
+            }
+            StringUtils.removeLastTwoChar(sql);
+            if (!update) {
+                sql.append(")").append(VALUES).append("(")
+                    .append(StringUtils.removeLastTwoChar(values)).append(")");
+            }
+            return sql.toString();
+        }
+
+        /**
+         * 一条语句的查询条件, 参数按引用比较, Provider方法里重新包装的参数数组也能匹配
+         */
+        private static final class StatementCriteria {
+
+            private String method;
+
+            private Object[] args;
+
+            private Criteria criteria;
+
+            private boolean matches(String method, Object[] args) {
+
+                if (!Objects.equals(this.method, method) || this.args.length != args.length) {
+                    return false;
+                }
+                for (int i = 0; i < args.length; i++) {
+                    if (this.args[i] != args[i]) {
+                        return false;
                     }
                 }
-            }};
+                return true;
+            }
         }
     }
 }
\ No newline at end of file
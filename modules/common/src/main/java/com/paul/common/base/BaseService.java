@@ -4,6 +4,7 @@ import com.paul.common.util.P;
 import com.paul.common.util.R;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 基础接口
@@ -79,10 +80,18 @@ public interface BaseService<E extends BaseEntity> {
     R listObjects(String ids);
 
     /**
-     * 根据参数查询列表
+     * 根据参数查询列表, 游标分页时响应中会有下一页的游标
      *
      * @param p 多条件查询参数
      * @return com.paul.common.util.R Web响应信息
      */
     R listObjects(P p);
+
+    /**
+     * 根据参数流式查询列表, 每查到一行就交给consumer处理, 不会把结果全部读入内存
+     *
+     * @param p        多条件查询参数
+     * @param consumer 每一行的处理
+     */
+    void streamObjects(P p, Consumer<? super E> consumer);
 }
\ No newline at end of file
@@ -1,11 +1,28 @@
 package com.paul.common.base;
 
+import com.paul.common.exception.CustomException;
 import com.paul.common.util.IDUtils;
 import com.paul.common.util.P;
 import com.paul.common.util.R;
+import com.paul.common.util.StringUtils;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ResolvableType;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static com.paul.common.constant.StringConstant.COMMA;
 
 /**
  * 基础增删改查, 在Service子类上, 要加@Service注解
@@ -22,6 +39,41 @@ public abstract class BaseServiceImpl<E extends BaseEntity, D extends BaseDao<E>
     @Autowired
     protected D dao;
 
+    @Autowired
+    private EntityCaches caches;
+
+    @Autowired
+    private BatchLoaders loaders;
+
+    /**
+     * 实体缓存, 实体类加了@CachedEntity时才有, 否则为NULL, 见getCached和listCached
+     */
+    protected EntityCache<E> cache;
+
+    /**
+     * 合并按主键查询单个的请求, 配置了合并窗口时才有, 否则为NULL
+     */
+    private BatchLoader<E> loader;
+
+    /**
+     * 游标分页的排序属性(驼峰), 默认按主键排序, 子类可以在构造代码块中修改
+     */
+    protected String seekProperty = "id";
+
+    /**
+     * 实体类加了@CachedEntity时创建实体缓存, 配置了合并窗口时创建合并查询
+     */
+    @PostConstruct
+    public void initEntityLoading() {
+
+        @SuppressWarnings("unchecked") Class<E> entityClass = (Class<E>) ResolvableType
+            .forClass(BaseServiceImpl.class, getClass()).getGeneric(0).resolve();
+        if (entityClass != null) {
+            cache = caches.of(entityClass, dao::listVersionsByIds);
+            loader = loaders.of(entityClass, dao::listObjectsByIds);
+        }
+    }
+
     /**
      * 插入单个
      *
@@ -62,6 +114,7 @@ public abstract class BaseServiceImpl<E extends BaseEntity, D extends BaseDao<E>
     public R delete(Object id) {
 
         dao.delete(id);
+        evict(String.valueOf(id));
         return R.ok();
     }
 
@@ -74,6 +127,7 @@ public abstract class BaseServiceImpl<E extends BaseEntity, D extends BaseDao<E>
     public R deleteBatch(String ids) {
 
         dao.deleteBatch(ids);
+        evict(ids);
         return R.ok();
     }
 
@@ -86,6 +140,7 @@ public abstract class BaseServiceImpl<E extends BaseEntity, D extends BaseDao<E>
     public R update(E entity) {
 
         dao.update(entity);
+        evict(entity.getId());
         return R.ok();
     }
 
@@ -99,6 +154,7 @@ public abstract class BaseServiceImpl<E extends BaseEntity, D extends BaseDao<E>
     public R updateBatch(E entity, String ids) {
 
         dao.updateBatch(entity, ids);
+        evict(ids);
         return R.ok();
     }
 
@@ -110,7 +166,7 @@ public abstract class BaseServiceImpl<E extends BaseEntity, D extends BaseDao<E>
      */
     public R getObject(Object id) {
 
-        return R.ok(dao.getObject(id));
+        return R.ok(getCached(id));
     }
 
     /**
@@ -121,17 +177,161 @@ public abstract class BaseServiceImpl<E extends BaseEntity, D extends BaseDao<E>
      */
     public R listObjects(String ids) {
 
-        return R.ok(dao.listObjectsByIds(ids));
+        return R.ok(listCached(ids));
     }
 
     /**
      * 根据参数查询列表
+     * 游标分页时, 若本页已满, 则响应中会有下一页的游标(cursor), 否则游标为NULL, 代表没有下一页
      *
      * @param p 多条件查询参数
      * @return com.paul.common.util.R Web响应信息
      */
     public R listObjects(P p) {
 
-        return R.ok(dao.listObjects(p));
+        if (!p.isSeek()) {
+            return R.ok(dao.listObjects(p));
+        }
+        p.defaultSeekProperty(seekProperty);
+        if (!Objects.equals(seekProperty, p.getSeekProperty())) {
+            throw new CustomException("分页游标有误! ");
+        }
+        List<E> list = dao.listObjects(p);
+        String cursor = null;
+        if (!list.isEmpty() && list.size() >= p.getLimit()) {
+            E last = list.get(list.size() - 1);
+            cursor = P.encodeCursor(seekProperty,
+                EntityMeta.of(last.getClass()).get(last, seekProperty), last.getId());
+        }
+        return R.ok(list).cursor(cursor);
+    }
+
+    /**
+     * 根据参数流式查询列表, 每查到一行就交给consumer处理, 不会把结果全部读入内存
+     * 游标需要在同一个连接上读完, 所以要在只读事务中执行
+     *
+     * @param p        多条件查询参数
+     * @param consumer 每一行的处理
+     */
+    @Transactional(readOnly = true)
+    public void streamObjects(P p, Consumer<? super E> consumer) {
+
+        stream(dao.cursorObjects(p), consumer);
+    }
+
+    /**
+     * 根据主键查询单个, 有实体缓存时先查缓存, 查询数据库时与其他线程同时的查询合并执行
+     *
+     * @param id 主键, 一般为String或Integer
+     * @return E 查询的单个对象, 可以修改, 不会影响缓存
+     */
+    protected E getCached(Object id) {
+
+        if (id == null) {
+            return dao.getObject(null);
+        }
+        if (cache == null) {
+            return load(id);
+        }
+        E entity = cache.get(id.toString());
+        if (entity == null) {
+            long generation = cache.generation();
+            entity = load(id);
+            cache.put(entity, generation);
+        }
+        return entity;
+    }
+
+    /**
+     * 从数据库按主键查询单个, 有合并查询时合并执行
+     * 在事务中时不合并: 合并的查询在其他线程的连接上执行, 看不到本事务未提交的修改
+     *
+     * @param id 主键
+     * @return E 查询的单个对象
+     */
+    private E load(Object id) {
+
+        if (loader == null || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return dao.getObject(id);
+        }
+        return loader.load(id.toString());
+    }
+
+    /**
+     * 根据主键查询多个, 有实体缓存时先查缓存, 只查询缓存中没有的, 按主键的顺序返回
+     *
+     * @param ids 主键, 以英文逗号隔开
+     * @return java.util.List<E> 查询的列表, 可以修改, 不会影响缓存
+     */
+    protected List<E> listCached(String ids) {
+
+        if (cache == null || StringUtils.isEmpty(ids)) {
+            return dao.listObjectsByIds(ids);
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        for (String id : ids.split(COMMA)) {
+            if (!id.trim().isEmpty()) {
+                keys.add(id.trim());
+            }
+        }
+        Map<String, E> found = cache.getAll(keys);
+        if (found.size() < keys.size()) {
+            List<String> missing = new ArrayList<>(keys.size() - found.size());
+            for (String key : keys) {
+                if (!found.containsKey(key)) {
+                    missing.add(key);
+                }
+            }
+            long generation = cache.generation();
+            for (E entity : dao.listObjectsByIds(String.join(COMMA, missing))) {
+                cache.put(entity, generation);
+                found.put(entity.getId(), entity);
+            }
+        }
+        List<E> list = new ArrayList<>(found.size());
+        for (String key : keys) {
+            E entity = found.get(key);
+            if (entity != null) {
+                list.add(entity);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 实体已修改, 移出实体缓存, 直接调用Dao修改实体时需要调用
+     *
+     * @param ids 主键, 以英文逗号隔开
+     */
+    protected void evict(String ids) {
+
+        if (cache != null && ids != null) {
+            cache.evictAll(Arrays.asList(ids.split(COMMA)));
+        }
+    }
+
+    /**
+     * 清空实体缓存, 直接用SQL修改了大量实体时调用
+     */
+    protected void clearCache() {
+
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 遍历并关闭游标
+     *
+     * @param cursor   游标
+     * @param consumer 每一行的处理
+     */
+    protected <T> void stream(Cursor<T> cursor, Consumer<? super T> consumer) {
+
+        try (Cursor<T> c = cursor) {
+            c.forEach(consumer);
+        } catch (IOException e) {
+            throw new CustomException("关闭游标失败! ", e);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,269 @@
+package com.paul.common.base;
+
+import com.paul.common.exception.CustomException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static com.paul.common.constant.StringConstant.COMMA;
+
+/**
+ * 合并按主键查询单个实体的请求: 同一时间窗口内(或凑够一定数量)不同线程的查询,
+ * 合并为一次listObjectsByIds
+ * 窗口内第一个到达的线程是这一批的执行者, 等待窗口结束或凑满后执行查询, 再把结果分给等待的线程;
+ * 其他线程只需等待结果, 查询失败(包括Error)时等待的线程都会收到异常, 不会一直阻塞
+ * 同一批中重复的主键只查询一次, 每个线程拿到的是各自的实体对象
+ * 统计每批的数量和因等待窗口增加的延迟, 用于调整窗口大小
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 18:00
+ */
+public final class BatchLoader<E extends BaseEntity> {
+
+    /**
+     * 批次数量的分组上限, 统计每组的批次数
+     */
+    private static final int[] SIZE_BUCKETS = {1, 4, 16, 64};
+
+    private final EntityMeta meta;
+
+    /**
+     * 批量查询, 参数为以英文逗号隔开的主键
+     */
+    private final Function<String, List<E>> loader;
+
+    private final long windowNanos;
+
+    private final int maxSize;
+
+    /**
+     * 正在收集的批次, 没有时为NULL, 由this保护
+     */
+    private Batch<E> pending;
+
+    private long batches;
+
+    private long keys;
+
+    /**
+     * 请求数, 同一批中重复的主键算多个请求
+     */
+    private long requests;
+
+    private int largest;
+
+    private final long[] sizeCounts = new long[SIZE_BUCKETS.length + 1];
+
+    /**
+     * 每个请求从到达到开始查询的等待时间之和
+     */
+    private long waitNanos;
+
+    private long maxWaitNanos;
+
+    private long failures;
+
+    BatchLoader(Class<E> entityClass, long windowNanos, int maxSize,
+        Function<String, List<E>> loader) {
+
+        this.meta = EntityMeta.of(entityClass);
+        this.loader = loader;
+        this.windowNanos = windowNanos;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * 按主键查询单个, 与其他线程同时的查询合并执行
+     *
+     * @param id 主键
+     * @return E 查询的单个对象, 没有时为NULL
+     */
+    public E load(String id) {
+
+        long arrived = System.nanoTime();
+        Batch<E> batch;
+        CompletableFuture<E> future = new CompletableFuture<>();
+        boolean leader = false;
+        synchronized (this) {
+            if (pending == null) {
+                pending = new Batch<>(Thread.currentThread(), arrived);
+                leader = true;
+            }
+            batch = pending;
+            batch.futures.computeIfAbsent(id, key -> new ArrayList<>(1)).add(future);
+            batch.arrivedSum += arrived;
+            batch.size++;
+            if (batch.futures.size() >= maxSize) {
+                // 凑满了, 叫醒执行者立即查询
+                close(batch);
+                LockSupport.unpark(batch.leader);
+            }
+        }
+        if (leader) {
+            awaitWindow(batch);
+            execute(batch);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new CustomException("合并查询失败! ", e.getCause());
+        }
+    }
+
+    /**
+     * 统计信息: 批次数, 查询的主键数, 请求数, 平均和最大的批次数量, 各数量区间的批次数,
+     * 平均和最大的等待微秒数, 失败的批次数
+     *
+     * @return java.util.Map<java.lang.String, java.lang.Object>
+     */
+    public synchronized Map<String, Object> stats() {
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batches", batches);
+        stats.put("keys", keys);
+        stats.put("requests", requests);
+        stats.put("averageSize", batches == 0 ? 0D : (double) keys / batches);
+        stats.put("largest", largest);
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        int low = 1;
+        for (int i = 0; i < SIZE_BUCKETS.length; i++) {
+            int high = SIZE_BUCKETS[i];
+            sizes.put(low == high ? String.valueOf(low) : low + "-" + high, sizeCounts[i]);
+            low = high + 1;
+        }
+        sizes.put(low + "+", sizeCounts[SIZE_BUCKETS.length]);
+        stats.put("sizes", sizes);
+        stats.put("averageWaitMicros", requests == 0 ? 0D : waitNanos / 1000D / requests);
+        stats.put("maxWaitMicros", TimeUnit.NANOSECONDS.toMicros(maxWaitNanos));
+        stats.put("failures", failures);
+        return stats;
+    }
+
+    /**
+     * 执行者等待窗口结束或批次凑满
+     *
+     * @param batch 批次
+     */
+    private void awaitWindow(Batch<E> batch) {
+
+        long deadline = batch.created + windowNanos;
+        while (true) {
+            long remaining;
+            synchronized (this) {
+                remaining = deadline - System.nanoTime();
+                if (batch.closed || remaining <= 0) {
+                    close(batch);
+                    return;
+                }
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * 关闭批次, 之后到达的请求进入下一批, 调用方需持有锁
+     *
+     * @param batch 批次
+     */
+    private void close(Batch<E> batch) {
+
+        if (pending == batch) {
+            pending = null;
+        }
+        batch.closed = true;
+    }
+
+    /**
+     * 查询并分发结果, 每个主键的第一个请求拿到查询的实体, 重复的请求拿到复制的实体
+     * 查询或复制失败(包括Error)时, 还没有拿到结果的请求都以该异常结束
+     *
+     * @param batch 已关闭的批次
+     */
+    private void execute(Batch<E> batch) {
+
+        long started = System.nanoTime();
+        try {
+            record(batch, started);
+            Map<String, E> found = new HashMap<>(batch.futures.size() * 2);
+            for (E entity : loader.apply(String.join(COMMA, batch.futures.keySet()))) {
+                found.put(entity.getId(), entity);
+            }
+            batch.futures.forEach((id, futures) -> {
+                E entity = found.get(id);
+                for (int i = 0; i < futures.size(); i++) {
+                    futures.get(i).complete(i == 0 ? entity : meta.copy(entity));
+                }
+            });
+        } catch (Throwable e) {
+            synchronized (this) {
+                failures++;
+            }
+            // 已拿到结果的请求不受影响
+            batch.futures.values().forEach(futures -> futures.forEach(
+                future -> future.completeExceptionally(e)));
+        }
+    }
+
+    private synchronized void record(Batch<E> batch, long started) {
+
+        int size = batch.futures.size();
+        batches++;
+        keys += size;
+        requests += batch.size;
+        largest = Math.max(largest, size);
+        int bucket = 0;
+        while (bucket < SIZE_BUCKETS.length && size > SIZE_BUCKETS[bucket]) {
+            bucket++;
+        }
+        sizeCounts[bucket]++;
+        waitNanos += started * batch.size - batch.arrivedSum;
+        maxWaitNanos = Math.max(maxWaitNanos, started - batch.created);
+    }
+
+    /**
+     * 一批请求
+     */
+    private static final class Batch<E> {
+
+        /**
+         * 执行者线程
+         */
+        final Thread leader;
+
+        final long created;
+
+        /**
+         * 主键对应的等待中的请求, 按到达顺序
+         */
+        final Map<String, List<CompletableFuture<E>>> futures = new LinkedHashMap<>();
+
+        /**
+         * 请求数(含重复的主键)和到达时间之和, 用于统计平均等待时间
+         */
+        int size;
+
+        long arrivedSum;
+
+        boolean closed;
+
+        Batch(Thread leader, long created) {
+
+            this.leader = leader;
+            this.created = created;
+        }
+    }
+}
\ No newline at end of file
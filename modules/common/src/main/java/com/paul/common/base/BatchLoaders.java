@@ -0,0 +1,79 @@
+package com.paul.common.base;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 合并查询(BatchLoader)的注册表, 每个实体类一个, 由BaseServiceImpl创建, 用于按主键查询单个
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 18:40
+ */
+@Slf4j
+@Component
+public class BatchLoaders {
+
+    /**
+     * 合并窗口的微秒数, 第一个请求最多等待这么久, 0为不合并
+     */
+    @Value("${spring.batch-loader.window-micros:0}")
+    private long windowMicros;
+
+    /**
+     * 每批最多合并的主键数量, 凑满后立即查询
+     */
+    @Value("${spring.batch-loader.max-size:100}")
+    private int maxSize;
+
+    private final ConcurrentMap<Class<?>, BatchLoader<?>> loaders = new ConcurrentHashMap<>();
+
+    /**
+     * 获得实体类的合并查询, 没有则创建
+     *
+     * @param entityClass 实体类
+     * @param loader      批量查询, 如BaseDao.listObjectsByIds
+     * @param <E>         实体类型
+     * @return com.paul.common.base.BatchLoader<E> 不合并时返回NULL
+     */
+    public <E extends BaseEntity> BatchLoader<E> of(Class<E> entityClass, Function<String, List<E>> loader) {
+
+        if (windowMicros <= 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked") BatchLoader<E> batchLoader = (BatchLoader<E>) loaders.computeIfAbsent(
+            entityClass, clazz -> new BatchLoader<>(entityClass, TimeUnit.MICROSECONDS.toNanos(windowMicros),
+                maxSize, loader));
+        return batchLoader;
+    }
+
+    /**
+     * 各实体的合并查询统计信息, 键为实体类名
+     *
+     * @return java.util.Map<java.lang.String, java.util.Map<java.lang.String, java.lang.Object>>
+     */
+    public Map<String, Map<String, Object>> stats() {
+
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        loaders.forEach((entityClass, loader) -> stats.put(entityClass.getSimpleName(), loader.stats()));
+        return stats;
+    }
+
+    /**
+     * 每10分钟记录一次批次数量和等待时间
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void logStats() {
+
+        loaders.forEach((entityClass, loader) -> log.info("合并查询{}: {}", entityClass.getSimpleName(), loader.stats()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.paul.common.base;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 可缓存SQL的Provider, 配合重写的org.apache.ibatis.builder.annotation.ProviderSqlSource使用
+ * 同一个Mapper方法, 若缓存键相同, 则生成的SQL一定相同, 解析后的SqlSource会被缓存复用, 不再调用Provider方法
+ * 若SQL随参数值变化(如把参数值直接拼接到SQL里), 则必须返回NULL, 此时每次执行都会重新生成SQL
+ * 使用com.paul.common.util.Criteria生成的占位符参数, 需要通过sqlParams交给MyBatis, 无论SQL是否被缓存都会调用
+ * 每条语句依次调用: sqlCacheKey, Provider方法(未命中缓存时), sqlParams, sqlEnd
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/20 10:12
+ */
+public interface CacheableProvider {
+
+    /**
+     * 获得SQL的缓存键, 即参数的"形状", 如: 插入时哪些字段不为NULL, 批量插入的条数
+     *
+     * @param method Provider方法名
+     * @param args   Provider方法的参数, 与Provider方法的参数一一对应
+     * @return java.lang.Object 缓存键, 需正确实现equals和hashCode, 返回NULL则不缓存
+     */
+    Object sqlCacheKey(String method, Object[] args);
+
+    /**
+     * 获得SQL中额外的占位符参数, 如Criteria生成的#{_c0}, 每次执行都会调用, 会作为MyBatis的额外参数绑定
+     *
+     * @param method Provider方法名
+     * @param args   Provider方法的参数
+     * @return java.util.Map<java.lang.String, java.lang.Object>
+     */
+    default Map<String, Object> sqlParams(String method, Object[] args) {
+
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 本条语句执行结束(生成BoundSql后)调用, 用于释放本条语句中缓存的状态, 如只构建一次的查询条件
+     *
+     * @param method Provider方法名
+     * @param args   Provider方法的参数
+     */
+    default void sqlEnd(String method, Object[] args) {
+
+    }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.paul.common.base;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 加在实体类上, 该实体的BaseServiceImpl.getObject和listObjects(ids)使用实体缓存(EntityCache), 不加则不缓存
+ * 只适合主要通过BaseServiceImpl修改的实体: 直接调用Dao修改时, 需要自己调用EntityCaches的evict或clear
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 16:00
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedEntity {
+
+    /**
+     * 最多缓存的实体数量
+     *
+     * @return int
+     */
+    int maximumSize() default 10000;
+}
\ No newline at end of file
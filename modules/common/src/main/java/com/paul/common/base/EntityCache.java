@@ -0,0 +1,509 @@
+package com.paul.common.base;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import static com.paul.common.constant.StringConstant.COMMA;
+
+/**
+ * 一种实体的缓存, 键为主键, 数量有上限, 淘汰策略为W-TinyLFU:
+ * 新加入的实体先进入占容量1%的窗口区(LRU), 从窗口区淘汰时与主区(分段LRU: 试用段和保护段)中最该淘汰的实体比较访问频率,
+ * 频率高的留下; 频率由Count-Min Sketch近似统计, 每个计数4位, 统计次数达到容量的10倍时全部减半, 旧的热点会逐渐冷却
+ * 只访问一次的实体(如翻页浏览全部单词)挤不掉经常访问的实体, 命中率比LRU高
+ * 部署多个实例时, 缓存超过一定时间的实体, 读取时先批量查询update_date校验, 不一致则重新查询
+ * 存入和取出的都是复制的实体, 调用方可以随意修改; 所有方法都加锁, 每次只是几次哈希和链表操作
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 16:10
+ */
+public final class EntityCache<E extends BaseEntity> {
+
+    private final EntityMeta meta;
+
+    /**
+     * 批量查询主键和update_date, 参数为以英文逗号隔开的主键
+     */
+    private final Function<String, List<E>> versions;
+
+    /**
+     * 缓存超过多少毫秒后读取时需要校验, 小于0时不校验
+     */
+    private final long verifyMillis;
+
+    private final int maximumSize;
+
+    private final int windowMax;
+
+    private final int mainMax;
+
+    private final int protectedMax;
+
+    private final Map<String, Node<E>> nodes = new HashMap<>();
+
+    private final Node<E> window = new Node<>();
+
+    private final Node<E> probation = new Node<>();
+
+    private final Node<E> protectedSegment = new Node<>();
+
+    private int windowSize;
+
+    private int probationSize;
+
+    private int protectedSize;
+
+    private final FrequencySketch sketch;
+
+    /**
+     * 最多记住多少个失效的主键
+     */
+    private static final int MAX_TOMBSTONES = 4096;
+
+    /**
+     * 失效次数, 每次失效一个主键加一, 查询数据库前获取, 放入缓存时据此判断查询期间该主键是否失效过
+     */
+    private long generation;
+
+    /**
+     * 最近失效的主键和失效时的次数, 按失效顺序, 查询期间失效过的主键的查询结果可能是旧的, 不放入缓存
+     * 只按主键判断, 其他主键的失效不影响放入
+     */
+    private final Map<String, Long> tombstones = new LinkedHashMap<>();
+
+    /**
+     * 不再记录的失效次数的上限: 超出MAX_TOMBSTONES被移除的主键, 以及清空缓存时
+     * 查询前获取的次数小于该值时, 无法判断该主键是否失效过, 不放入缓存
+     */
+    private long floor;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long verifications;
+
+    private long stale;
+
+    EntityCache(Class<E> entityClass, int maximumSize, long verifyMillis, Function<String, List<E>> versions) {
+
+        this.meta = EntityMeta.of(entityClass);
+        this.versions = versions;
+        this.verifyMillis = verifyMillis;
+        this.maximumSize = Math.max(1, maximumSize);
+        this.windowMax = Math.max(1, this.maximumSize / 100);
+        this.mainMax = this.maximumSize - windowMax;
+        this.protectedMax = mainMax * 4 / 5;
+        this.sketch = new FrequencySketch(this.maximumSize);
+    }
+
+    /**
+     * 查询缓存, 需要校验的实体批量校验
+     *
+     * @param ids 主键, 不重复
+     * @return java.util.Map<java.lang.String, E> 命中的实体(复制的), 键为主键
+     */
+    public Map<String, E> getAll(Collection<String> ids) {
+
+        Map<String, E> found = new HashMap<>(ids.size() * 2);
+        Map<String, Date> unverified = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (String id : ids) {
+                sketch.increment(id.hashCode());
+                Node<E> node = nodes.get(id);
+                if (node == null) {
+                    continue;
+                }
+                onAccess(node);
+                found.put(id, node.value);
+                if (verifyMillis >= 0 && now - node.verifiedAt > verifyMillis) {
+                    unverified.put(id, node.value.getUpdateDate());
+                }
+            }
+        }
+        if (!unverified.isEmpty()) {
+            verify(unverified, found, now);
+        }
+        synchronized (this) {
+            // 校验出的旧数据也算未命中
+            hits += found.size();
+            misses += ids.size() - found.size();
+        }
+        found.replaceAll((id, entity) -> meta.copy(entity));
+        return found;
+    }
+
+    /**
+     * 查询单个实体
+     *
+     * @param id 主键
+     * @return E 复制的实体, 未命中时返回NULL
+     */
+    public E get(String id) {
+
+        return getAll(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * 当前的失效次数, 查询数据库前获取, 放入缓存时传入, 查询期间该主键失效过时不放入
+     *
+     * @return long
+     */
+    public synchronized long generation() {
+
+        return generation;
+    }
+
+    /**
+     * 放入查询到的实体, 查询期间该主键失效过时不放入
+     *
+     * @param entity     实体, 为NULL时不放入
+     * @param generation 查询数据库前的失效次数
+     */
+    public synchronized void put(E entity, long generation) {
+
+        if (entity == null || entity.getId() == null || generation < floor) {
+            return;
+        }
+        Long invalidated = tombstones.get(entity.getId());
+        if (invalidated != null && invalidated > generation) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Date updateDate = entity.getUpdateDate();
+        if (verifyMillis >= 0 && (updateDate == null || now - updateDate.getTime() < 1000)) {
+            // update_date只精确到秒, 同一秒内其他实例的修改校验不出来, 刚修改过的实体先不缓存
+            return;
+        }
+        String id = entity.getId();
+        Node<E> node = nodes.get(id);
+        if (node != null) {
+            node.value = meta.copy(entity);
+            node.verifiedAt = now;
+            return;
+        }
+        node = new Node<>();
+        node.key = id;
+        node.value = meta.copy(entity);
+        node.verifiedAt = now;
+        node.segment = window;
+        nodes.put(id, node);
+        node.linkLast(window);
+        windowSize++;
+        while (windowSize > windowMax) {
+            admit(window.next);
+        }
+    }
+
+    /**
+     * 实体已修改, 移出缓存, 在事务中时提交(或回滚)后再移出一次, 防止期间读到的旧数据又被放入
+     *
+     * @param ids 主键
+     */
+    public void evictAll(Collection<?> ids) {
+
+        afterCompletion(() -> {
+            for (Object id : ids) {
+                String key = String.valueOf(id).trim();
+                invalidate(key);
+                Node<E> node = nodes.get(key);
+                if (node != null) {
+                    remove(node);
+                }
+            }
+        });
+    }
+
+    /**
+     * 清空缓存, 用于批量修改了大量实体时, 如直接用SQL更新整张表
+     */
+    public void clear() {
+
+        afterCompletion(() -> {
+            floor = ++generation;
+            tombstones.clear();
+            nodes.clear();
+            window.unlink();
+            probation.unlink();
+            protectedSegment.unlink();
+            windowSize = 0;
+            probationSize = 0;
+            protectedSize = 0;
+        });
+    }
+
+    /**
+     * 统计信息: 缓存数量, 命中, 未命中, 命中率, 淘汰, 校验和校验出的旧数据数量
+     *
+     * @return java.util.Map<java.lang.String, java.lang.Object>
+     */
+    public synchronized Map<String, Object> stats() {
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", nodes.size());
+        stats.put("maximumSize", maximumSize);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses == 0 ? 0D : (double) hits / (hits + misses));
+        stats.put("evictions", evictions);
+        stats.put("verifications", verifications);
+        stats.put("stale", stale);
+        return stats;
+    }
+
+    /**
+     * 批量查询update_date, 不一致或已不存在的实体移出缓存, 一致的更新校验时间
+     *
+     * @param unverified 需要校验的主键和缓存中的update_date
+     * @param found      命中的实体, 移除校验不通过的
+     * @param now        查询缓存的时间
+     */
+    private void verify(Map<String, Date> unverified, Map<String, E> found, long now) {
+
+        Map<String, Date> current = new HashMap<>(unverified.size() * 2);
+        for (E version : versions.apply(String.join(COMMA, unverified.keySet()))) {
+            current.put(version.getId(), version.getUpdateDate());
+        }
+        synchronized (this) {
+            verifications += unverified.size();
+            for (Map.Entry<String, Date> entry : unverified.entrySet()) {
+                String id = entry.getKey();
+                Node<E> node = nodes.get(id);
+                if (current.containsKey(id) && Objects.equals(current.get(id), entry.getValue())) {
+                    if (node != null) {
+                        node.verifiedAt = now;
+                    }
+                } else {
+                    stale++;
+                    found.remove(id);
+                    // 校验期间可能已放入新的实体, 只移出校验的那个
+                    if (node != null && Objects.equals(node.value.getUpdateDate(), entry.getValue())) {
+                        remove(node);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 访问命中的实体: 窗口区和保护段内移到最后, 试用段的晋升到保护段, 保护段满时把最旧的降回试用段
+     */
+    private void onAccess(Node<E> node) {
+
+        node.unlink();
+        if (node.segment == probation) {
+            probationSize--;
+            node.segment = protectedSegment;
+            protectedSize++;
+            node.linkLast(protectedSegment);
+            if (protectedSize > protectedMax) {
+                Node<E> demoted = protectedSegment.next;
+                demoted.unlink();
+                protectedSize--;
+                demoted.segment = probation;
+                probationSize++;
+                demoted.linkLast(probation);
+            }
+        } else {
+            node.linkLast(node.segment);
+        }
+    }
+
+    /**
+     * 从窗口区移出的实体进入主区: 主区未满时直接进入试用段, 否则与试用段(为空时为保护段)最旧的实体比较频率
+     */
+    private void admit(Node<E> candidate) {
+
+        candidate.unlink();
+        windowSize--;
+        if (probationSize + protectedSize < mainMax) {
+            candidate.segment = probation;
+            probationSize++;
+            candidate.linkLast(probation);
+            return;
+        }
+        Node<E> victim = probationSize > 0 ? probation.next : protectedSize > 0 ? protectedSegment.next : null;
+        if (victim != null &&
+            sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+            remove(victim);
+            candidate.segment = probation;
+            probationSize++;
+            candidate.linkLast(probation);
+        } else {
+            nodes.remove(candidate.key);
+        }
+        evictions++;
+    }
+
+    private void remove(Node<E> node) {
+
+        node.unlink();
+        nodes.remove(node.key);
+        if (node.segment == window) {
+            windowSize--;
+        } else if (node.segment == probation) {
+            probationSize--;
+        } else {
+            protectedSize--;
+        }
+    }
+
+    /**
+     * 记录主键失效, 超出MAX_TOMBSTONES时移除最早的, 并提高floor
+     *
+     * @param id 主键
+     */
+    private void invalidate(String id) {
+
+        tombstones.remove(id);
+        tombstones.put(id, ++generation);
+        if (tombstones.size() > MAX_TOMBSTONES) {
+            Iterator<Map.Entry<String, Long>> eldest = tombstones.entrySet().iterator();
+            floor = Math.max(floor, eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private void afterCompletion(Runnable evict) {
+
+        Runnable locked = () -> {
+            synchronized (this) {
+                evict.run();
+            }
+        };
+        locked.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+
+                    locked.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * 双向循环链表的节点, 三个区各有一个不存放实体的头节点
+     */
+    private static final class Node<E> {
+
+        String key;
+
+        E value;
+
+        /**
+         * 放入或上次校验的时间
+         */
+        long verifiedAt;
+
+        /**
+         * 所在区的头节点
+         */
+        Node<E> segment;
+
+        Node<E> prev = this;
+
+        Node<E> next = this;
+
+        void linkLast(Node<E> head) {
+
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink() {
+
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+
+    /**
+     * Count-Min Sketch, 每个long存放16个4位计数, 每个键对应4个计数, 频率取最小值
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+
+        private final long[] table;
+
+        private final int mask;
+
+        /**
+         * 统计多少次后计数减半
+         */
+        private final int sampleSize;
+
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+
+            int size = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+            table = new long[size];
+            mask = size - 1;
+            sampleSize = 10 * maximumSize;
+        }
+
+        int frequency(int hash) {
+
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long spread = spread(hash, i);
+                int shift = (int) (spread & 15) << 2;
+                frequency = Math.min(frequency, (int) ((table[index(spread)] >>> shift) & 15));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long spread = spread(hash, i);
+                int index = index(spread);
+                int shift = (int) (spread & 15) << 2;
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                additions >>>= 1;
+            }
+        }
+
+        private int index(long spread) {
+
+            return (int) (spread >>> 32) & mask;
+        }
+
+        private static long spread(int hash, int i) {
+
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            return h ^ (h >>> 29);
+        }
+    }
+}
\ No newline at end of file
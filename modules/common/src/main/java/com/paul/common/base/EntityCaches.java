@@ -0,0 +1,121 @@
+package com.paul.common.base;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import static com.paul.common.constant.StringConstant.COMMA;
+
+/**
+ * 实体缓存的注册表, 每个加了@CachedEntity的实体类一个缓存(EntityCache), 由BaseServiceImpl创建和使用
+ * 直接调用Dao修改实体时(不经过BaseServiceImpl), 需要调用这里的evict或clear
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 16:40
+ */
+@Slf4j
+@Component
+public class EntityCaches {
+
+    /**
+     * 是否使用实体缓存, 关闭后@CachedEntity不生效
+     */
+    @Value("${spring.entity-cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 缓存超过多少秒后读取时先校验update_date, 部署多个实例时需设置, 小于0时不校验
+     */
+    @Value("${spring.entity-cache.verify-seconds:-1}")
+    private int verifySeconds;
+
+    private final ConcurrentMap<Class<?>, EntityCache<?>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 获得实体类的缓存, 没有则创建
+     *
+     * @param entityClass 实体类
+     * @param versions    批量查询主键和update_date, 如BaseDao.listVersionsByIds
+     * @param <E>         实体类型
+     * @return com.paul.common.base.EntityCache<E> 未加@CachedEntity或未启用时返回NULL
+     */
+    public <E extends BaseEntity> EntityCache<E> of(Class<E> entityClass, Function<String, List<E>> versions) {
+
+        CachedEntity cached = entityClass.getAnnotation(CachedEntity.class);
+        if (!enabled || cached == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked") EntityCache<E> cache = (EntityCache<E>) caches.computeIfAbsent(entityClass,
+            clazz -> new EntityCache<>(entityClass, cached.maximumSize(), verifySeconds * 1000L, versions));
+        return cache;
+    }
+
+    /**
+     * 移出实体
+     *
+     * @param entityClass 实体类
+     * @param ids         主键, 以英文逗号隔开
+     */
+    public void evict(Class<?> entityClass, String ids) {
+
+        evictAll(entityClass, Arrays.asList(ids.split(COMMA)));
+    }
+
+    /**
+     * 移出实体
+     *
+     * @param entityClass 实体类
+     * @param ids         主键
+     */
+    public void evictAll(Class<?> entityClass, Collection<?> ids) {
+
+        EntityCache<?> cache = caches.get(entityClass);
+        if (cache != null) {
+            cache.evictAll(ids);
+        }
+    }
+
+    /**
+     * 清空实体类的缓存
+     *
+     * @param entityClass 实体类
+     */
+    public void clear(Class<?> entityClass) {
+
+        EntityCache<?> cache = caches.get(entityClass);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 各实体缓存的统计信息, 键为实体类名
+     *
+     * @return java.util.Map<java.lang.String, java.util.Map<java.lang.String, java.lang.Object>>
+     */
+    public Map<String, Map<String, Object>> stats() {
+
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        caches.forEach((entityClass, cache) -> stats.put(entityClass.getSimpleName(), cache.stats()));
+        return stats;
+    }
+
+    /**
+     * 每10分钟记录一次命中率
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void logStats() {
+
+        caches.forEach((entityClass, cache) -> log.info("实体缓存{}: {}", entityClass.getSimpleName(), cache.stats()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,295 @@
+package com.paul.common.base;
+
+import com.paul.common.exception.CustomException;
+import com.paul.common.util.SqlUtils;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import static com.paul.common.constant.SqlConstant.DOT;
+
+/**
+ * 实体类元数据, 每个实体类只解析一次: 属性名, 转义后的字段名(如: `start_date`), 以及属性的取值函数
+ * 取值函数优先通过LambdaMetafactory生成, 调用开销与直接调用getter相同, 避免了Field.get的反射开销
+ * 实体类需满足BaseEntity中的规定, 属性包括实体类本身和其父类(BaseEntity)中的属性
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/20 15:36
+ */
+@Getter
+public class EntityMeta {
+
+    /**
+     * 已解析的实体类元数据
+     */
+    private static final ConcurrentMap<Class<?>, EntityMeta> METAS = new ConcurrentHashMap<>();
+
+    /**
+     * 实体类
+     */
+    private final Class<?> entityClass;
+
+    /**
+     * 默认表名, 实体类名去掉Entity后转下划线, 如: TestUserEntity --> test_user
+     */
+    private final String tableName;
+
+    /**
+     * 属性名, 如: startDate
+     */
+    private final List<String> properties;
+
+    /**
+     * 转义后的字段名, 与属性名一一对应, 如: `start_date`
+     */
+    private final List<String> columns;
+
+    /**
+     * 查询的全部字段, 以英文逗号隔开, 如: `id`, `start_date`
+     */
+    private final String selectColumns;
+
+    /**
+     * 属性的取值函数, 与属性名一一对应
+     */
+    private final List<Function<Object, Object>> getters;
+
+    /**
+     * 属性, 与属性名一一对应, 用于复制实体
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<Field> fields;
+
+    /**
+     * 获得实体类的元数据, 没有则解析
+     *
+     * @param entityClass 实体类
+     * @return com.paul.common.base.EntityMeta
+     */
+    public static EntityMeta of(Class<?> entityClass) {
+
+        return METAS.computeIfAbsent(entityClass, EntityMeta::new);
+    }
+
+    private EntityMeta(Class<?> entityClass) {
+
+        this.entityClass = entityClass;
+        String className = entityClass.getSimpleName();
+        className = className.substring(0, 1).toLowerCase() + className.substring(1);
+        tableName = SqlUtils.toUnderline(className.substring(0, className.lastIndexOf("Entity")))
+            .toLowerCase();
+        List<String> properties = new ArrayList<>();
+        List<String> columns = new ArrayList<>();
+        List<Function<Object, Object>> getters = new ArrayList<>();
+        List<Field> accessible = new ArrayList<>();
+        // 先是实体类本身的属性, 然后是父类(BaseEntity)的属性, 与之前BaseDao.Provider中的顺序一致
+        List<Field> fields = new ArrayList<>();
+        Collections.addAll(fields, entityClass.getDeclaredFields());
+        Collections.addAll(fields, entityClass.getSuperclass().getDeclaredFields());
+        for (Field field : fields) {
+            if (Modifier.isStatic(field.getModifiers()) ||
+                Objects.equals("serialVersionUID", field.getName())) {
+                continue;
+            }
+            properties.add(field.getName());
+            columns.add(DOT + SqlUtils.toUnderline(field.getName()) + DOT);
+            getters.add(createGetter(entityClass, field));
+            field.setAccessible(true);
+            accessible.add(field);
+        }
+        this.properties = Collections.unmodifiableList(properties);
+        this.columns = Collections.unmodifiableList(columns);
+        this.getters = Collections.unmodifiableList(getters);
+        this.fields = Collections.unmodifiableList(accessible);
+        this.selectColumns = String.join(", ", columns);
+    }
+
+    /**
+     * 属性数量
+     *
+     * @return int
+     */
+    public int size() {
+
+        return properties.size();
+    }
+
+    /**
+     * 获得实体的某个属性值
+     *
+     * @param entity 实体
+     * @param index  属性下标
+     * @return java.lang.Object
+     */
+    public Object get(Object entity, int index) {
+
+        return getters.get(index).apply(entity);
+    }
+
+    /**
+     * 获得实体的某个属性值
+     *
+     * @param entity   实体
+     * @param property 属性名
+     * @return java.lang.Object
+     */
+    public Object get(Object entity, String property) {
+
+        int index = properties.indexOf(property);
+        if (index < 0) {
+            throw new CustomException(entityClass.getSimpleName() + "中没有属性: " + property);
+        }
+        return get(entity, index);
+    }
+
+    /**
+     * 获得实体中哪些属性不为NULL, 第i位为1代表第i个属性不为NULL
+     *
+     * @param entity 实体
+     * @return java.lang.Long 实体为NULL或属性超过64个时返回NULL
+     */
+    public Long nullMask(Object entity) {
+
+        if (entity == null || getters.size() > Long.SIZE) {
+            return null;
+        }
+        long mask = 0L;
+        for (int i = 0; i < getters.size(); i++) {
+            if (getters.get(i).apply(entity) != null) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 复制实体, 属性值为浅复制, 但Date会复制一份, 用于缓存中的实体不被调用方修改
+     *
+     * @param entity 实体
+     * @param <E>    实体类型
+     * @return E 实体为NULL时返回NULL
+     */
+    public <E> E copy(E entity) {
+
+        if (entity == null) {
+            return null;
+        }
+        try {
+            @SuppressWarnings("unchecked") E copy = (E) entity.getClass().newInstance();
+            for (Field field : fields) {
+                Object value = field.get(entity);
+                field.set(copy, value instanceof Date ? new Date(((Date) value).getTime()) : value);
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new CustomException("复制" + entityClass.getSimpleName() + "失败! ", e);
+        }
+    }
+
+    /**
+     * 生成属性的取值函数, 优先使用getter生成的Lambda, 其次是getter的MethodHandle, 最后是属性的MethodHandle
+     *
+     * @param entityClass 实体类
+     * @param field       属性
+     * @return java.util.function.Function<java.lang.Object, java.lang.Object>
+     */
+    private static Function<Object, Object> createGetter(Class<?> entityClass, Field field) {
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Method getter = findGetter(entityClass, field);
+        try {
+            if (getter == null) {
+                field.setAccessible(true);
+                return toFunction(lookup.unreflectGetter(field));
+            }
+            MethodHandle handle = lookup.unreflect(getter);
+            // 生成的Lambda类由当前类的类加载器加载, 若看不到实体类(如devtools的RestartClassLoader), 则不能用Lambda
+            if (!isVisible(getter.getDeclaringClass())) {
+                return toFunction(handle);
+            }
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class), MethodType.methodType(Object.class,
+                    Object.class), handle, handle.type().wrap());
+            @SuppressWarnings("unchecked") Function<Object, Object> function =
+                (Function<Object, Object>) site.getTarget().invokeExact();
+            return function;
+        } catch (Throwable e) {
+            throw new CustomException(
+                "生成" + entityClass.getSimpleName() + "." + field.getName() + "的取值函数失败! ", e);
+        }
+    }
+
+    /**
+     * 查找属性的getter, 找不到则返回NULL
+     *
+     * @param entityClass 实体类
+     * @param field       属性
+     * @return java.lang.reflect.Method
+     */
+    private static Method findGetter(Class<?> entityClass, Field field) {
+
+        String name = field.getName();
+        String suffix = name.substring(0, 1).toUpperCase() + name.substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                Method method = entityClass.getMethod(prefix + suffix);
+                if (method.getReturnType() != void.class) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) {
+                // 继续查找下一个前缀
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 当前类的类加载器能否加载到该类
+     *
+     * @param clazz 类
+     * @return boolean
+     */
+    private static boolean isVisible(Class<?> clazz) {
+
+        try {
+            return Class.forName(clazz.getName(), false, EntityMeta.class.getClassLoader()) ==
+                   clazz;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 将MethodHandle包装为取值函数
+     *
+     * @param handle MethodHandle, 参数为实体, 返回值为属性值
+     * @return java.util.function.Function<java.lang.Object, java.lang.Object>
+     */
+    private static Function<Object, Object> toFunction(MethodHandle handle) {
+
+        MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return entity -> {
+            try {
+                return generic.invokeExact(entity);
+            } catch (Throwable e) {
+                throw new CustomException("获取属性值失败! ", e);
+            }
+        };
+    }
+}
\ No newline at end of file
@@ -22,4 +22,9 @@ public interface WebConstant {
      * 响应内容类型为HTML
      */
     String TEXT_HTML_UTF8 = "text/html; charset=UTF-8";
+
+    /**
+     * 响应内容类型为NDJSON, 每行一个JSON对象, 用于流式输出大量数据
+     */
+    String APPLICATION_NDJSON_UTF8 = "application/x-ndjson; charset=UTF-8";
 }
\ No newline at end of file
@@ -0,0 +1,356 @@
+package com.paul.common.util;
+
+import com.paul.common.util.SqlUtils.AndEnum;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.paul.common.constant.SqlConstant.*;
+import static com.paul.common.constant.StringConstant.COMMA;
+import static com.paul.common.constant.StringConstant.COMMA_SPACE;
+
+/**
+ * 参数化的查询条件, 与SqlUtils.condition用法一致, 区别在于条件值不会拼接进SQL,
+ * 而是生成#{_c0}这样的占位符, 条件值放入参数Map中, 执行时作为预编译语句的参数绑定.
+ * 这样无论条件值是什么, 同样形状的条件生成的SQL都相同(如: 3个ID的IN条件), 可以被MyBatis,
+ * Druid的PreparedStatement缓存和Druid的SQL合并统计复用.
+ * 在BaseDao的Provider中使用时, 参数Map需通过CacheableProvider.sqlParams交给MyBatis.
+ * 多个条件之间用AND连接, 条件值为空时与SqlUtils.condition一样忽略该条件.
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/21 10:26
+ */
+public class Criteria {
+
+    /**
+     * 占位符参数名前缀, 不能与Mapper方法的参数名重复
+     */
+    private static final String PARAM_PREFIX = "_c";
+
+    /**
+     * 字段的表别名前缀, 可为NULL
+     */
+    private final String prefix;
+
+    /**
+     * WHERE条件, 不含WHERE关键字
+     */
+    private final StringBuilder where = new StringBuilder();
+
+    /**
+     * 分页语句, 游标分页时包括排序语句
+     */
+    private String limit = "";
+
+    /**
+     * 占位符对应的参数值
+     */
+    private final Map<String, Object> params = new HashMap<>();
+
+    public Criteria() {
+
+        this(null);
+    }
+
+    public Criteria(String prefix) {
+
+        this.prefix = prefix;
+    }
+
+    /**
+     * 追加条件
+     *
+     * @param column 字段名
+     * @param type   类型, 同SqlUtils.condition, 其中IN_SQL的SQL语句会原样拼接, 只能传可信的SQL
+     * @param value  字段值
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria condition(String column, AndEnum type, Object value) {
+
+        column = SqlUtils.addPrefix(prefix) + SqlUtils.addDot(column);
+        switch (type) {
+            case IN_IDS:
+                if (!StringUtils.isEmpty(value)) {
+                    StringBuilder in = new StringBuilder("(");
+                    for (String id : value.toString().split(COMMA)) {
+                        in.append(bind(id.trim())).append(COMMA_SPACE);
+                    }
+                    and(column + IN + StringUtils.removeLastTwoChar(in).append(")"));
+                }
+                break;
+            case IN_SQL:
+                if (!StringUtils.isEmpty(value)) {
+                    and(column + IN + "(" + value.toString() + ")");
+                }
+                break;
+            case LIKE:
+                if (!StringUtils.isEmpty(value)) {
+                    and(column + LIKE + bind("%" + value + "%"));
+                }
+                break;
+            case EQUAL:
+                if (!StringUtils.isEmpty(value)) {
+                    and(column + " = " + bind(value));
+                }
+                break;
+            case UNEQUAL:
+                if (!StringUtils.isEmpty(value)) {
+                    and(column + " != " + bind(value));
+                }
+                break;
+            case IS_NULL:
+                and(column + " IS NULL");
+                break;
+            case NOT_NULL:
+                and(column + " IS NOT NULL");
+                break;
+            default:
+        }
+        return this;
+    }
+
+    /**
+     * 追加一个不含参数的条件, 只能传常量条件, 如: `del_flag` = 0
+     *
+     * @param condition 条件
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria and(String condition) {
+
+        if (where.length() > 0) {
+            where.append(AND);
+        }
+        where.append(condition);
+        return this;
+    }
+
+    /**
+     * 某字段等于条件
+     *
+     * @param column 字段名
+     * @param value  值
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria equal(String column, Object value) {
+
+        return condition(column, AndEnum.EQUAL, value);
+    }
+
+    /**
+     * 某字段不等条件
+     *
+     * @param column 字段名
+     * @param value  值
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria unequal(String column, Object value) {
+
+        return condition(column, AndEnum.UNEQUAL, value);
+    }
+
+    /**
+     * LIKE条件
+     *
+     * @param column 字段名
+     * @param value  值
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria like(String column, Object value) {
+
+        return condition(column, AndEnum.LIKE, value);
+    }
+
+    /**
+     * 小于等于条件
+     *
+     * @param column 字段名
+     * @param value  值, 为空时忽略该条件
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria lessEqual(String column, Object value) {
+
+        if (StringUtils.isEmpty(value)) {
+            return this;
+        }
+        return and(SqlUtils.addPrefix(prefix) + SqlUtils.addDot(column) + " <= " + bind(value));
+    }
+
+    /**
+     * IN条件, 每个值一个占位符, 值的数量相同时生成的SQL相同
+     *
+     * @param column 字段名
+     * @param values 值, 为空时忽略该条件
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria in(String column, Collection<?> values) {
+
+        if (values == null || values.isEmpty()) {
+            return this;
+        }
+        StringBuilder in = new StringBuilder("(");
+        for (Object value : values) {
+            in.append(bind(value)).append(COMMA_SPACE);
+        }
+        return and(SqlUtils.addPrefix(prefix) + SqlUtils.addDot(column) + IN +
+            StringUtils.removeLastTwoChar(in).append(")"));
+    }
+
+    /**
+     * 某字段为空条件
+     *
+     * @param column 字段名
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria isNull(String column) {
+
+        return condition(column, AndEnum.IS_NULL, null);
+    }
+
+    /**
+     * 某字段不为空条件
+     *
+     * @param column 字段名
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria notNull(String column) {
+
+        return condition(column, AndEnum.NOT_NULL, null);
+    }
+
+    /**
+     * ID值条件
+     *
+     * @param id ID值
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria equalId(Object id) {
+
+        return equal("id", id);
+    }
+
+    /**
+     * 多个ID值条件
+     *
+     * @param ids ID值, 英文逗号隔开
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria inIds(Object ids) {
+
+        return condition("id", AndEnum.IN_IDS, ids);
+    }
+
+    /**
+     * 未删除条件, 常量条件, 不生成占位符
+     *
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria notDeleted() {
+
+        return and(SqlUtils.notDeleted(prefix));
+    }
+
+    /**
+     * MySQL分页, limit和offset都有值时才分页, 分页参数同样使用占位符
+     *
+     * @param p 参数
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria page(P p) {
+
+        Integer limit = p.getLimit();
+        Integer offset = p.getOffset();
+        if (limit != null && offset != null && limit > 0 && offset >= 0) {
+            this.limit = LIMIT + bind(offset) + COMMA_SPACE + bind(limit);
+        }
+        return this;
+    }
+
+    /**
+     * MySQL游标分页, 追加(排序字段, 主键)大于游标的条件, 并按(排序字段, 主键)排序
+     * 配合(del_flag, 排序字段)的索引, 每一页都只是一次索引范围查询, 不会扫描前面的行
+     * 排序字段可以为NULL: MySQL升序时NULL在最前,
+     * 游标的排序字段值为NULL时, 下一页是排序字段为NULL且主键更大的行, 及排序字段不为NULL的全部行
+     *
+     * @param p      参数, 必须是游标分页
+     * @param column 排序字段名, 必须是可信的字段名
+     * @return com.paul.common.util.Criteria
+     */
+    public Criteria seek(P p, String column) {
+
+        if (!p.isSeek()) {
+            return this;
+        }
+        String id = SqlUtils.addPrefix(prefix) + SqlUtils.addDot("id");
+        column = SqlUtils.addPrefix(prefix) + SqlUtils.addDot(column);
+        boolean byId = column.equals(id);
+        if (p.getSeekId() != null) {
+            if (byId) {
+                and(id + " > " + bind(p.getSeekId()));
+            } else if (p.getSeekValue() == null) {
+                and("((" + column + " IS NULL" + AND + id + " > " + bind(p.getSeekId()) + ")" + OR +
+                    column + " IS NOT NULL)");
+            } else {
+                and("(" + column + " > " + bind(p.getSeekValue()) + OR + "(" + column + " = " +
+                    bind(p.getSeekValue()) + AND + id + " > " + bind(p.getSeekId()) + "))");
+            }
+        }
+        limit = ORDER_BY + (byId ? id : (column + COMMA_SPACE + id)) + LIMIT +
+                bind(p.getLimit());
+        return this;
+    }
+
+    /**
+     * 获得WHERE条件, 不含WHERE关键字, 没有条件时为1 = 1
+     *
+     * @return java.lang.String
+     */
+    public String getWhere() {
+
+        return where.length() == 0 ? TRUE : where.toString();
+    }
+
+    /**
+     * 获得分页语句, 游标分页时包括排序语句, 不分页时为空字符串
+     *
+     * @return java.lang.String
+     */
+    public String getLimit() {
+
+        return limit;
+    }
+
+    /**
+     * 获得占位符对应的参数值
+     *
+     * @return java.util.Map<java.lang.String, java.lang.Object>
+     */
+    public Map<String, Object> getParams() {
+
+        return params;
+    }
+
+    /**
+     * 条件的形状, 即WHERE条件加分页语句, 形状相同时生成的SQL相同, 可作为SQL的缓存键
+     *
+     * @return java.lang.String
+     */
+    @Override
+    public String toString() {
+
+        return getWhere() + limit;
+    }
+
+    /**
+     * 绑定一个参数值, 返回其占位符
+     *
+     * @param value 参数值
+     * @return java.lang.String 如: #{_c0}
+     */
+    private String bind(Object value) {
+
+        String name = PARAM_PREFIX + params.size();
+        params.put(name, value);
+        return "#{" + name + "}";
+    }
+}
\ No newline at end of file
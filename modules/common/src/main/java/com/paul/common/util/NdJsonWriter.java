@@ -0,0 +1,85 @@
+package com.paul.common.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.paul.common.exception.CustomException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import static com.paul.common.constant.DateConstant.DEFAULT_DATE_PATTERN;
+import static com.paul.common.constant.WebConstant.APPLICATION_NDJSON_UTF8;
+
+/**
+ * NDJSON响应输出, 每个对象输出为一行JSON, 配合游标查询流式输出大量数据
+ * 每输出FLUSH_ROWS行刷新一次, 响应为分块传输, 客户端可边接收边处理, 服务端内存占用与数据量无关
+ * 日期格式与全局FastJson配置一致
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/22 9:41
+ */
+public class NdJsonWriter implements Consumer<Object>, AutoCloseable {
+
+    /**
+     * 每输出多少行刷新一次
+     */
+    private static final int FLUSH_ROWS = 500;
+
+    /**
+     * 输出
+     */
+    private final Writer writer;
+
+    /**
+     * 已输出的行数
+     */
+    private int rows;
+
+    public NdJsonWriter(HttpServletResponse resp) throws IOException {
+
+        resp.setContentType(APPLICATION_NDJSON_UTF8);
+        writer = new BufferedWriter(
+            new OutputStreamWriter(resp.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 输出一行
+     *
+     * @param object 对象
+     */
+    @Override
+    public void accept(Object object) {
+
+        try {
+            writer.write(JSON.toJSONStringWithDateFormat(object, DEFAULT_DATE_PATTERN,
+                SerializerFeature.DisableCircularReferenceDetect));
+            writer.write('\n');
+            if (++rows % FLUSH_ROWS == 0) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new CustomException("输出NDJSON失败! ", e);
+        }
+    }
+
+    /**
+     * 已输出的行数
+     *
+     * @return int
+     */
+    public int getRows() {
+
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        writer.flush();
+    }
+}
\ No newline at end of file
@@ -1,13 +1,21 @@
 package com.paul.common.util;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.paul.common.exception.CustomException;
 import lombok.Getter;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 参数, 除了继承自HashMap<String, Object>(方便编码), 还有分页参数(方便分页)
+ * 分页有两种模式:
+ * 1. 页码分页(LIMIT offset, limit), 页码越大越慢, 因为MySQL要扫描并丢弃前面所有行
+ * 2. 游标分页(seek), 使用上一页最后一行的(排序字段, 主键)作为游标, 每一页都是索引上的一次范围查询, 与页码无关
  *
  * @author paul paulandcode@gmail.com
  * @since 2019/3/26 12:53
@@ -29,6 +37,26 @@ public class P extends HashMap<String, Object> {
      */
     private Integer limit;
 
+    /**
+     * 是否为游标分页
+     */
+    private boolean seek;
+
+    /**
+     * 游标分页的排序属性(驼峰), 为NULL时由Service决定, 默认为id
+     */
+    private String seekProperty;
+
+    /**
+     * 游标分页时上一页最后一行的排序属性值, 第一页为NULL
+     */
+    private Object seekValue;
+
+    /**
+     * 游标分页时上一页最后一行的主键, 第一页为NULL
+     */
+    private Object seekId;
+
     public P() {
 
     }
@@ -52,6 +80,66 @@ public class P extends HashMap<String, Object> {
         super.putAll(map);
     }
 
+    /**
+     * 游标分页
+     *
+     * @param cursor 上一页返回的游标, 第一页传NULL或空字符串
+     * @param limit  每页条数
+     * @return com.paul.common.util.P
+     */
+    public static P seek(String cursor, Integer limit) {
+
+        P p = new P();
+        if (limit == null || limit < 1) {
+            p.throwPageParamsException();
+        }
+        p.seek = true;
+        p.limit = limit;
+        if (!StringUtils.isEmpty(cursor)) {
+            try {
+                JSONArray values = JSON.parseArray(
+                    new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+                p.seekProperty = values.getString(0);
+                p.seekValue = Boolean.TRUE.equals(values.getBoolean(1)) ?
+                    new Date(values.getLongValue(2)) : values.get(2);
+                p.seekId = values.get(3);
+            } catch (RuntimeException e) {
+                throw new CustomException("分页游标有误! ", e);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * 生成游标分页的游标, 内容为上一页最后一行的排序属性及主键, 对前端来说是不透明的字符串
+     *
+     * @param property 排序属性
+     * @param value    排序属性值
+     * @param id       主键
+     * @return java.lang.String
+     */
+    public static String encodeCursor(String property, Object value, Object id) {
+
+        boolean date = value instanceof Date;
+        Object[] values = {property, date, date ? ((Date) value).getTime() : value, id};
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(JSON.toJSONString(values).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 设置游标分页的排序属性, 前提是之前没有指定过(游标中已包含排序属性)
+     *
+     * @param seekProperty 排序属性(驼峰)
+     * @return com.paul.common.util.P
+     */
+    public P defaultSeekProperty(String seekProperty) {
+
+        if (this.seekProperty == null) {
+            this.seekProperty = seekProperty;
+        }
+        return this;
+    }
+
     /**
      * 移除指定参数.
      *
@@ -145,6 +145,17 @@ public class R extends HashMap<String, Object> {
         return put("count", count);
     }
 
+    /**
+     * 放入游标分页的下一页游标, 为NULL时代表没有下一页
+     *
+     * @param cursor 下一页游标
+     * @return com.paul.common.util.R
+     */
+    public R cursor(String cursor) {
+
+        return put("cursor", cursor);
+    }
+
     /**
      * 构造函数设为私有的, 默认成功.
      */
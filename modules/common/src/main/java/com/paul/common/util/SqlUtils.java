@@ -207,7 +207,7 @@ public interface SqlUtils {
                 .replace("`", "").replace(COMMA, "}, #'{'" +
                     argName + "[{0}].") + "})");
         for (int i = 0; i < size; i++) {
-            sb.append(mf.format(new Object[]{i})).append(COMMA);
+            sb.append(mf.format(new Object[]{i})).append(COMMA_SPACE);
         }
         return StringUtils.removeLastTwoChar(sb).toString();
     }
@@ -277,6 +277,8 @@ public interface SqlUtils {
 
     /**
      * 在Where语句后面追加条件
+     * 注意: 字段值会直接拼接进SQL, 每个不同的值都会生成不同的SQL, 无法复用预编译语句,
+     * 值来自用户输入时也有SQL注入的风险, 这种情况请使用com.paul.common.util.Criteria
      *
      * @param prefix 前缀
      * @param column 字段名
@@ -483,7 +485,7 @@ public interface SqlUtils {
      */
     static String inIds(String ids) {
 
-        return inIds("id", ids);
+        return inIds(null, ids);
     }
 
     /**
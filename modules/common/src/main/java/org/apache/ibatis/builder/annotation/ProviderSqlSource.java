@@ -1,5 +1,6 @@
 package org.apache.ibatis.builder.annotation;
 
+import com.paul.common.base.CacheableProvider;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.SqlSourceBuilder;
 import org.apache.ibatis.mapping.BoundSql;
@@ -10,9 +11,12 @@ import org.apache.ibatis.session.Configuration;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 修改行: 54~72 (注: 该版本为MyBatis3.4.6)
@@ -21,12 +25,33 @@ import java.util.Objects;
  * 这里的type = Provider.class指向的是内部类BaseDao.Provider.class
  * 但是如果BaseDao的子接口TestDao也有一个内部类, 则这里的type = Provider.class优先指向这个内部类
  * 这样做的目的: 任何Java注解里不能有变量, 但是不同的Dao子接口, 其表名和字段名等一定是不同的(即变量), 这样做就间接赋予了Java注解里可以有变量的功能
+ * <p>
+ * 另外修改了getBoundSql和invokeProviderMethod (原版每次执行都会newInstance一个Provider, 并重新生成和解析SQL):
+ * 1. Provider实例按类型注册, 只创建一次, 所以Provider类必须是无状态的(初始化后不再修改属性)
+ * 2. 若Provider实现了CacheableProvider, 则按(Mapper方法, 参数类型, 缓存键)缓存解析后的SqlSource,
+ * 缓存键为NULL时仍每次动态生成SQL, Provider给出的占位符参数会作为BoundSql的额外参数绑定
  *
  * @author paul paulandcode@gmail.com
  * @since 2019/3/28 20:04
  */
 public class ProviderSqlSource implements SqlSource {
 
+    /**
+     * 每个Mapper方法最多缓存的SqlSource数量, 超过后不再缓存, 防止缓存键过多导致内存泄漏
+     */
+    private static final int MAX_CACHED_SQL_SOURCES = 256;
+
+    /**
+     * Provider实例注册表, 每种Provider类只实例化一次
+     */
+    private static final ConcurrentMap<Class<?>, Object> PROVIDER_INSTANCES =
+        new ConcurrentHashMap<>();
+
+    /**
+     * 当前Mapper方法已解析的SqlSource, 键为: 参数类型 + Provider返回的缓存键
+     */
+    private final ConcurrentMap<Object, SqlSource> sqlSourceCache = new ConcurrentHashMap<>();
+
     private final Configuration configuration;
 
     private final SqlSourceBuilder sqlSourceParser;
@@ -134,40 +159,106 @@ public class ProviderSqlSource implements SqlSource {
     @Override
     public BoundSql getBoundSql(Object parameterObject) {
 
-        SqlSource sqlSource = createSqlSource(parameterObject);
-        return sqlSource.getBoundSql(parameterObject);
+        Object[] args = extractProviderMethodArguments(parameterObject);
+        CacheableProvider provider = getCacheableProvider();
+        try {
+            return getBoundSql(parameterObject, args, provider);
+        } finally {
+            if (provider != null) {
+                provider.sqlEnd(providerMethod.getName(), args);
+            }
+        }
     }
 
-    private SqlSource createSqlSource(Object parameterObject) {
+    /**
+     * 生成BoundSql, 同一条语句中Provider的各个回调使用同一组参数, 可以共用按参数构建的状态
+     *
+     * @param parameterObject MyBatis的参数对象
+     * @param args            Provider方法的参数
+     * @param provider        可缓存SQL的Provider, 可为NULL
+     * @return org.apache.ibatis.mapping.BoundSql
+     */
+    private BoundSql getBoundSql(Object parameterObject, Object[] args,
+        CacheableProvider provider) {
 
-        try {
-            int bindParameterCount =
-                providerMethodParameterTypes.length - (providerContext == null ? 0 : 1);
-            String sql;
-            if (providerMethodParameterTypes.length == 0) {
-                sql = invokeProviderMethod();
-            } else if (bindParameterCount == 0) {
-                sql = invokeProviderMethod(providerContext);
-            } else if (bindParameterCount == 1 &&
-                       (parameterObject == null || providerMethodParameterTypes[
-                           (providerContextIndex == null || providerContextIndex == 1) ? 0 : 1]
-                           .isAssignableFrom(parameterObject.getClass()))) {
-                sql = invokeProviderMethod(extractProviderMethodArguments(parameterObject));
-            } else if (parameterObject instanceof Map) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> params = (Map<String, Object>) parameterObject;
-                sql = invokeProviderMethod(
-                    extractProviderMethodArguments(params, providerMethodArgumentNames));
-            } else {
-                throw new BuilderException("Error invoking SqlProvider method ("
-                                           + providerType.getName() + "." + providerMethod.getName()
-                                           + "). Cannot invoke a method that holds "
-                                           + (bindParameterCount == 1 ? "named argument(@Param)" :
-                    "multiple arguments")
-                                           +
-                                           " using a specifying parameterObject. In this case, " +
-                                           "please specify a 'java.util.Map' object.");
+        SqlSource sqlSource;
+        Object cacheKey = provider == null ? null :
+            provider.sqlCacheKey(providerMethod.getName(), args);
+        if (cacheKey == null) {
+            sqlSource = createSqlSource(parameterObject, args);
+        } else {
+            Object key = Arrays.asList(
+                parameterObject == null ? Object.class : parameterObject.getClass(), cacheKey);
+            sqlSource = sqlSourceCache.get(key);
+            if (sqlSource == null) {
+                sqlSource = createSqlSource(parameterObject, args);
+                if (sqlSourceCache.size() < MAX_CACHED_SQL_SOURCES) {
+                    sqlSourceCache.putIfAbsent(key, sqlSource);
+                }
             }
+        }
+        BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
+        if (provider != null) {
+            // 绑定Provider生成的占位符参数, 如Criteria生成的#{_c0}
+            provider.sqlParams(providerMethod.getName(), args)
+                .forEach(boundSql::setAdditionalParameter);
+        }
+        return boundSql;
+    }
+
+    /**
+     * 获得可缓存SQL的Provider实例
+     *
+     * @return com.paul.common.base.CacheableProvider 静态方法或未实现CacheableProvider时返回NULL
+     */
+    private CacheableProvider getCacheableProvider() {
+
+        if (Modifier.isStatic(providerMethod.getModifiers())) {
+            return null;
+        }
+        Object provider = getProviderInstance();
+        return provider instanceof CacheableProvider ? (CacheableProvider) provider : null;
+    }
+
+    /**
+     * 按照Provider方法的参数列表, 从MyBatis的参数对象中提取参数
+     *
+     * @param parameterObject MyBatis的参数对象
+     * @return java.lang.Object[]
+     */
+    private Object[] extractProviderMethodArguments(Object parameterObject) {
+
+        int bindParameterCount =
+            providerMethodParameterTypes.length - (providerContext == null ? 0 : 1);
+        if (providerMethodParameterTypes.length == 0) {
+            return new Object[0];
+        } else if (bindParameterCount == 0) {
+            return new Object[]{providerContext};
+        } else if (bindParameterCount == 1 &&
+                   (parameterObject == null || providerMethodParameterTypes[
+                       (providerContextIndex == null || providerContextIndex == 1) ? 0 : 1]
+                       .isAssignableFrom(parameterObject.getClass()))) {
+            return extractProviderMethodArgument(parameterObject);
+        } else if (parameterObject instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> params = (Map<String, Object>) parameterObject;
+            return extractProviderMethodArguments(params, providerMethodArgumentNames);
+        } else {
+            throw new BuilderException("Error invoking SqlProvider method ("
+                                       + providerType.getName() + "." + providerMethod.getName()
+                                       + "). Cannot invoke a method that holds "
+                                       + (bindParameterCount == 1 ? "named argument(@Param)" :
+                "multiple arguments")
+                                       +
+                                       " using a specifying parameterObject. In this case, " +
+                                       "please specify a 'java.util.Map' object.");
+        }
+    }
+
+    private SqlSource createSqlSource(Object parameterObject, Object[] args) {
+
+        try {
+            String sql = invokeProviderMethod(args);
             Class<?> parameterType =
                 parameterObject == null ? Object.class : parameterObject.getClass();
             return sqlSourceParser.parse(replacePlaceholder(sql), parameterType, new HashMap<>(0));
@@ -180,7 +271,7 @@ public class ProviderSqlSource implements SqlSource {
         }
     }
 
-    private Object[] extractProviderMethodArguments(Object parameterObject) {
+    private Object[] extractProviderMethodArgument(Object parameterObject) {
 
         if (providerContext != null) {
             Object[] args = new Object[2];
@@ -210,12 +301,30 @@ public class ProviderSqlSource implements SqlSource {
 
         Object targetObject = null;
         if (!Modifier.isStatic(providerMethod.getModifiers())) {
-            targetObject = providerType.newInstance();
+            targetObject = getProviderInstance();
         }
         CharSequence sql = (CharSequence) providerMethod.invoke(targetObject, args);
         return sql != null ? sql.toString() : null;
     }
 
+    /**
+     * 从注册表中获得Provider实例, 没有则创建
+     *
+     * @return java.lang.Object
+     */
+    private Object getProviderInstance() {
+
+        return PROVIDER_INSTANCES.computeIfAbsent(providerType, type -> {
+            try {
+                return type.newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new BuilderException(
+                    "Error creating SqlProvider instance (" + type.getName() + ").  Cause: " + e,
+                    e);
+            }
+        });
+    }
+
     private String replacePlaceholder(String sql) {
 
         return PropertyParser.parse(sql, configuration.getVariables());
@@ -0,0 +1,68 @@
+package com.paul.web.module.word.algorithm;
+
+import com.paul.common.util.Criteria;
+import com.paul.web.module.word.entity.WordEntity;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * 使用单词状态的算法的公共部分: 每个单词保存下次背诵日期due_day, 到期(due_day <= 今日)即需要背诵
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/30 10:15
+ */
+public abstract class DueDayAlgorithm implements SchedulingAlgorithm {
+
+    /**
+     * 条件为due_day <= 今日, 可以使用(del_flag, due_day)索引
+     *
+     * @param criteria 条件
+     * @param day      日期
+     * @return com.paul.common.util.Criteria
+     */
+    @Override
+    public Criteria due(Criteria criteria, LocalDate day) {
+
+        return criteria.lessEqual("due_day", day.toString());
+    }
+
+    @Override
+    public boolean isStateful() {
+
+        return true;
+    }
+
+    @Override
+    public String getDayColumn() {
+
+        return "due_day";
+    }
+
+    @Override
+    public LocalDate dayOf(WordEntity word) {
+
+        return ReviewStates.toLocalDate(word.getDueDay());
+    }
+
+    /**
+     * 只预测下一次背诵, 已过期的单词都算在今日
+     *
+     * @param counts 下次背诵日期 -> 单词数量
+     * @param today  今日
+     * @param days   天数
+     * @return int[]
+     */
+    @Override
+    public int[] forecast(NavigableMap<LocalDate, Integer> counts, LocalDate today, int days) {
+
+        int[] result = new int[days];
+        for (Map.Entry<LocalDate, Integer> entry : counts.headMap(today.plusDays(days), false).entrySet()) {
+            int day = (int) Math.max(0, ChronoUnit.DAYS.between(today, entry.getKey()));
+            result[day] += entry.getValue();
+        }
+        return result;
+    }
+}
\ No newline at end of file
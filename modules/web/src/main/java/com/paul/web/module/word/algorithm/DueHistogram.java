@@ -0,0 +1,84 @@
+package com.paul.web.module.word.algorithm;
+
+import java.time.LocalDate;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 按日期分组的单词数量缓存, 用于预测之后每天需要背诵的单词数量
+ * 第一次使用时查询一次数据库, 之后新增和删除单词时增量修改, 每日顺延或切换算法等大量修改时整体失效, 下次使用时重新查询
+ * 统计与日期无关, 所以跨天也不需要失效
+ * 查询数据库时不加锁, 查询期间有修改或失效时不保存查询结果, 下次使用时重新查询
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/30 10:40
+ */
+public class DueHistogram {
+
+    /**
+     * 日期 -> 单词数量, 未加载或已失效时为NULL
+     */
+    private NavigableMap<LocalDate, Integer> counts;
+
+    /**
+     * 修改次数, 每次修改或失效加一, 用于判断查询期间是否有修改
+     */
+    private long generation;
+
+    /**
+     * 读取统计, 未加载时先加载, 查询期间有修改时本次使用查询结果, 但不保存
+     *
+     * @param loader 从数据库加载
+     * @param reader 读取统计, 不能修改
+     * @param <T>    读取结果的类型
+     * @return T
+     */
+    public <T> T read(Supplier<NavigableMap<LocalDate, Integer>> loader,
+        Function<NavigableMap<LocalDate, Integer>, T> reader) {
+
+        long start;
+        synchronized (this) {
+            if (counts != null) {
+                return reader.apply(counts);
+            }
+            start = generation;
+        }
+        NavigableMap<LocalDate, Integer> loaded = new TreeMap<>(loader.get());
+        synchronized (this) {
+            if (counts == null && generation == start) {
+                counts = loaded;
+            }
+            return reader.apply(counts != null ? counts : loaded);
+        }
+    }
+
+    /**
+     * 增量修改某日的单词数量, 未加载时不需要修改
+     *
+     * @param day   日期, 为NULL时忽略
+     * @param delta 数量变化
+     */
+    public synchronized void add(LocalDate day, int delta) {
+
+        if (day == null) {
+            return;
+        }
+        // 未加载时也要计数, 正在进行的查询可能没有包含这次修改
+        generation++;
+        if (counts == null) {
+            return;
+        }
+        counts.merge(day, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    /**
+     * 整体失效
+     */
+    public synchronized void invalidate() {
+
+        counts = null;
+        generation++;
+    }
+}
\ No newline at end of file
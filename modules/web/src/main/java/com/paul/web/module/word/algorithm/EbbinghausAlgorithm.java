@@ -0,0 +1,90 @@
+package com.paul.web.module.word.algorithm;
+
+import com.paul.common.util.Criteria;
+import com.paul.web.module.word.entity.WordEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import static com.paul.web.module.word.constant.WordConstant.REVIEW_INTERVALS;
+
+/**
+ * 艾宾浩斯记忆曲线(默认): 单词在计划开始后的第0, 1, 2, 4, 7, 15, 31, 107天背诵
+ * 不使用单词状态, 没背完的单词由每日顺延改为第二天重新开始
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/28 10:40
+ */
+@Component("ebbinghaus")
+public class EbbinghausAlgorithm implements SchedulingAlgorithm {
+
+    /**
+     * 条件为start_day IN (8个日期), 可以使用(del_flag, start_day)索引, 相当于8次索引等值查找
+     *
+     * @param criteria 条件
+     * @param day      日期
+     * @return com.paul.common.util.Criteria
+     */
+    @Override
+    public Criteria due(Criteria criteria, LocalDate day) {
+
+        List<String> days = new ArrayList<>(REVIEW_INTERVALS.length);
+        for (int interval : REVIEW_INTERVALS) {
+            days.add(day.minusDays(interval).toString());
+        }
+        return criteria.in("start_day", days);
+    }
+
+    @Override
+    public boolean isStateful() {
+
+        return false;
+    }
+
+    @Override
+    public void schedule(ReviewStates states) {
+
+    }
+
+    @Override
+    public String getDayColumn() {
+
+        return "start_day";
+    }
+
+    @Override
+    public LocalDate dayOf(WordEntity word) {
+
+        return ReviewStates.toLocalDate(word.getStartDate());
+    }
+
+    /**
+     * 每个计划开始日期的单词, 会在之后的第0, 1, 2, 4...天各背诵一次, 即按REVIEW_INTERVALS做卷积
+     *
+     * @param counts 计划开始日期 -> 单词数量
+     * @param today  今日
+     * @param days   天数
+     * @return int[]
+     */
+    @Override
+    public int[] forecast(NavigableMap<LocalDate, Integer> counts, LocalDate today, int days) {
+
+        int[] result = new int[days];
+        LocalDate from = today.minusDays(REVIEW_INTERVALS[REVIEW_INTERVALS.length - 1]);
+        for (Map.Entry<LocalDate, Integer> entry : counts.subMap(from, true, today.plusDays(days), false).entrySet()) {
+            int offset = (int) ChronoUnit.DAYS.between(today, entry.getKey());
+            for (int interval : REVIEW_INTERVALS) {
+                int day = offset + interval;
+                if (day >= 0 && day < days) {
+                    result[day] += entry.getValue();
+                }
+            }
+        }
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.paul.web.module.word.algorithm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * FSRS(v4)算法: 每个单词有记忆稳定性S(天)和难度D(1到10), 经过t天后记住的概率为 R = (1 + t / 9S) ^ -1
+ * 每次背诵后按评分和当时的R更新S和D, 下次间隔取R下降到目标记住概率的天数
+ * 参数为FSRS v4的默认参数
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/28 11:20
+ */
+@Component("fsrs")
+public class FsrsAlgorithm extends DueDayAlgorithm {
+
+    /**
+     * FSRS v4默认参数w0到w16
+     */
+    private static final double[] W = {0.4, 0.6, 2.4, 5.8, 4.93, 0.94, 0.86, 0.01, 1.49, 0.14, 0.94, 2.18, 0.05,
+        0.34, 1.26, 0.29, 2.61};
+
+    /**
+     * 最大间隔天数
+     */
+    private static final int MAX_INTERVAL = 36500;
+
+    /**
+     * 目标记住概率
+     */
+    @Value("${spring.word.fsrs.retention:0.9}")
+    private double retention = 0.9;
+
+    @Override
+    public void schedule(ReviewStates states) {
+
+        int size = states.getSize();
+        int[] grades = states.getGrades();
+        double[] stability = states.getStability();
+        double[] difficulty = states.getDifficulty();
+        int[] reps = states.getReps();
+        int[] lapses = states.getLapses();
+        int[] elapsedDays = states.getElapsedDays();
+        int[] intervals = states.getIntervals();
+        // R = (1 + t / 9S) ^ -1 = retention 时, t = 9S(1 / retention - 1)
+        double intervalFactor = 9 * (1 / retention - 1);
+        for (int i = 0; i < size; i++) {
+            int g = grades[i];
+            double s = stability[i];
+            double d = difficulty[i];
+            if (s <= 0) {
+                // 第一次背诵
+                s = W[g - 1];
+                d = clampDifficulty(W[4] - (g - 3) * W[5]);
+            } else {
+                double r = 1 / (1 + elapsedDays[i] / (9 * s));
+                if (g == GRADE_AGAIN) {
+                    s = W[11] * Math.pow(d, -W[12]) * (Math.pow(s + 1, W[13]) - 1) * Math.exp(W[14] * (1 - r));
+                } else {
+                    double hardPenalty = g == GRADE_HARD ? W[15] : 1;
+                    s = s * (Math.exp(W[8]) * (11 - d) * Math.pow(s, -W[9]) * (Math.exp(W[10] * (1 - r)) - 1) *
+                        hardPenalty + 1);
+                }
+                // 难度向初始难度均值回归
+                d = clampDifficulty(W[7] * W[4] + (1 - W[7]) * (d - W[6] * (g - 3)));
+            }
+            stability[i] = s;
+            difficulty[i] = d;
+            if (g == GRADE_AGAIN) {
+                reps[i] = 0;
+                lapses[i]++;
+            } else {
+                reps[i]++;
+            }
+            intervals[i] = (int) Math.min(MAX_INTERVAL, Math.max(1, Math.round(s * intervalFactor)));
+        }
+    }
+
+    private static double clampDifficulty(double d) {
+
+        return Math.min(10, Math.max(1, d));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+package com.paul.web.module.word.algorithm;
+
+import com.paul.web.module.word.entity.WordEntity;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 一批单词的背诵状态, 每个字段一个基本类型数组(而不是每个单词一个对象), 算法按下标循环计算,
+ * 内存连续, 没有装箱和对象分配
+ * 写入数据库时按下标分块, 每块复制为一个新的ReviewStates(见slice), 见WordDao.updateStates
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/28 10:20
+ */
+@Getter
+public class ReviewStates {
+
+    /**
+     * 评分日期, 即今日
+     */
+    private final LocalDate today;
+
+    /**
+     * 单词数量
+     */
+    private int size;
+
+    /**
+     * 单词ID
+     */
+    private final String[] ids;
+
+    /**
+     * 今日评分, 见SchedulingAlgorithm.GRADE_*
+     */
+    private final int[] grades;
+
+    /**
+     * 难易系数(SM-2)
+     */
+    private final double[] ease;
+
+    /**
+     * 记忆稳定性, 单位为天(FSRS)
+     */
+    private final double[] stability;
+
+    /**
+     * 难度, 1到10(FSRS)
+     */
+    private final double[] difficulty;
+
+    /**
+     * 连续记住的次数
+     */
+    private final int[] reps;
+
+    /**
+     * 忘记的次数
+     */
+    private final int[] lapses;
+
+    /**
+     * 距上次背诵的天数, 没背过时为0
+     */
+    private final int[] elapsedDays;
+
+    /**
+     * 输入为上次的间隔天数, 计算后为下次背诵的间隔天数
+     */
+    private final int[] intervals;
+
+    public ReviewStates(LocalDate today, int capacity) {
+
+        this.today = today;
+        this.ids = new String[capacity];
+        this.grades = new int[capacity];
+        this.ease = new double[capacity];
+        this.stability = new double[capacity];
+        this.difficulty = new double[capacity];
+        this.reps = new int[capacity];
+        this.lapses = new int[capacity];
+        this.elapsedDays = new int[capacity];
+        this.intervals = new int[capacity];
+    }
+
+    private ReviewStates(ReviewStates source, int from, int to) {
+
+        this.today = source.today;
+        this.size = to - from;
+        this.ids = Arrays.copyOfRange(source.ids, from, to);
+        this.grades = Arrays.copyOfRange(source.grades, from, to);
+        this.ease = Arrays.copyOfRange(source.ease, from, to);
+        this.stability = Arrays.copyOfRange(source.stability, from, to);
+        this.difficulty = Arrays.copyOfRange(source.difficulty, from, to);
+        this.reps = Arrays.copyOfRange(source.reps, from, to);
+        this.lapses = Arrays.copyOfRange(source.lapses, from, to);
+        this.elapsedDays = Arrays.copyOfRange(source.elapsedDays, from, to);
+        this.intervals = Arrays.copyOfRange(source.intervals, from, to);
+    }
+
+    /**
+     * 复制[from, to)范围内的单词状态, 下标从0开始, 用于分块写入数据库
+     * 每块的SQL只与块的大小有关, 不同位置的块共用一条缓存的SQL
+     *
+     * @param from 开始下标(包含)
+     * @param to   结束下标(不包含)
+     * @return com.paul.web.module.word.algorithm.ReviewStates
+     */
+    public ReviewStates slice(int from, int to) {
+
+        return new ReviewStates(this, from, to);
+    }
+
+    /**
+     * 加入一个单词
+     *
+     * @param word  单词
+     * @param grade 今日评分
+     */
+    public void add(WordEntity word, int grade) {
+
+        int i = size++;
+        ids[i] = String.valueOf(word.getId());
+        grades[i] = grade;
+        ease[i] = word.getEase() == null ? 0 : word.getEase();
+        stability[i] = word.getStability() == null ? 0 : word.getStability();
+        difficulty[i] = word.getDifficulty() == null ? 0 : word.getDifficulty();
+        reps[i] = word.getReps() == null ? 0 : word.getReps();
+        lapses[i] = word.getLapses() == null ? 0 : word.getLapses();
+        LocalDate lastDay = toLocalDate(word.getLastDay());
+        LocalDate dueDay = toLocalDate(word.getDueDay());
+        elapsedDays[i] = lastDay == null ? 0 : (int) ChronoUnit.DAYS.between(lastDay, today);
+        intervals[i] = lastDay == null || dueDay == null ? 0 : (int) ChronoUnit.DAYS.between(lastDay, dueDay);
+    }
+
+    /**
+     * 日期转为LocalDate, 兼容java.sql.Date
+     *
+     * @param date 日期
+     * @return java.time.LocalDate
+     */
+    public static LocalDate toLocalDate(Date date) {
+
+        if (date == null) {
+            return null;
+        }
+        if (date instanceof java.sql.Date) {
+            return ((java.sql.Date) date).toLocalDate();
+        }
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
\ No newline at end of file
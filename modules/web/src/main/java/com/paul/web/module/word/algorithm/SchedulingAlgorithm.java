@@ -0,0 +1,82 @@
+package com.paul.web.module.word.algorithm;
+
+import com.paul.common.util.Criteria;
+import com.paul.web.module.word.entity.WordEntity;
+
+import java.time.LocalDate;
+import java.util.NavigableMap;
+
+/**
+ * 间隔重复算法, 决定哪些单词某日需要背诵, 以及每日顺延时如何根据当日结果计算下次背诵日期
+ * 通过spring.word.algorithm选择, 值为实现类的Bean名称: ebbinghaus(默认), sm2, fsrs
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/28 10:05
+ */
+public interface SchedulingAlgorithm {
+
+    /**
+     * 评分: 忘记(没背完)
+     */
+    int GRADE_AGAIN = 1;
+
+    /**
+     * 评分: 背完了, 但中途忘记过
+     */
+    int GRADE_HARD = 2;
+
+    /**
+     * 评分: 背完了, 没有忘记过
+     */
+    int GRADE_GOOD = 3;
+
+    /**
+     * 追加某日需要背诵的单词的条件, 条件要能走索引
+     *
+     * @param criteria 条件
+     * @param day      日期
+     * @return com.paul.common.util.Criteria
+     */
+    Criteria due(Criteria criteria, LocalDate day);
+
+    /**
+     * 是否使用每个单词的状态(ease, stability等)
+     * 不使用状态的算法(如固定的艾宾浩斯间隔)每日顺延时只把没背完的单词重新开始, 不调用schedule
+     *
+     * @return boolean
+     */
+    boolean isStateful();
+
+    /**
+     * 根据当日的评分批量更新单词状态, 并计算下次背诵间隔, 结果直接写回states的数组
+     * 实现中只对数组做简单循环, 不创建对象, 不查询数据库
+     *
+     * @param states 单词状态
+     */
+    void schedule(ReviewStates states);
+
+    /**
+     * 预测用的日期字段, 按该字段分组统计单词数量, 见WordDao.countByDay
+     *
+     * @return java.lang.String 字段名, 如: start_day
+     */
+    String getDayColumn();
+
+    /**
+     * 单词在预测用的日期字段上的值, 用于新增和删除单词时增量修改统计
+     *
+     * @param word 单词
+     * @return java.time.LocalDate
+     */
+    LocalDate dayOf(WordEntity word);
+
+    /**
+     * 根据按日期字段分组的单词数量, 计算从今日开始之后每天需要背诵的单词数量
+     *
+     * @param counts 日期字段的值 -> 单词数量
+     * @param today  今日
+     * @param days   天数
+     * @return int[] 下标为距今日的天数
+     */
+    int[] forecast(NavigableMap<LocalDate, Integer> counts, LocalDate today, int days);
+}
\ No newline at end of file
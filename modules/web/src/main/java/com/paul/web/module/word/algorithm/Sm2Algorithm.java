@@ -0,0 +1,56 @@
+package com.paul.web.module.word.algorithm;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * SM-2算法: 记住时间隔依次为1天, 6天, 之后每次乘以难易系数; 忘记时从1天重新开始
+ * 难易系数初始为2.5, 最小为1.3, 按评分调整
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/28 11:00
+ */
+@Component("sm2")
+public class Sm2Algorithm extends DueDayAlgorithm {
+
+    /**
+     * 初始难易系数
+     */
+    private static final double INITIAL_EASE = 2.5;
+
+    /**
+     * 最小难易系数
+     */
+    private static final double MIN_EASE = 1.3;
+
+    /**
+     * 评分对应的SM-2回答质量(0到5), 下标为评分, 小于3为忘记
+     */
+    private static final int[] QUALITIES = {0, 2, 3, 4};
+
+    @Override
+    public void schedule(ReviewStates states) {
+
+        int size = states.getSize();
+        int[] grades = states.getGrades();
+        double[] ease = states.getEase();
+        int[] reps = states.getReps();
+        int[] lapses = states.getLapses();
+        int[] intervals = states.getIntervals();
+        for (int i = 0; i < size; i++) {
+            int q = QUALITIES[grades[i]];
+            double ef = ease[i] <= 0 ? INITIAL_EASE : ease[i];
+            if (q < 3) {
+                // 忘记: 从头开始, 难易系数不变
+                reps[i] = 0;
+                lapses[i]++;
+                intervals[i] = 1;
+            } else {
+                reps[i]++;
+                intervals[i] = reps[i] == 1 ? 1 : reps[i] == 2 ? 6 :
+                    (int) Math.max(1, Math.round(Math.max(intervals[i], 1) * ef));
+                ef += 0.1 - (5 - q) * (0.08 + (5 - q) * 0.02);
+            }
+            ease[i] = Math.max(MIN_EASE, ef);
+        }
+    }
+}
\ No newline at end of file
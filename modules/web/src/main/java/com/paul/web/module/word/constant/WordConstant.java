@@ -0,0 +1,16 @@
+package com.paul.web.module.word.constant;
+
+/**
+ * 单词常量
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/23 10:05
+ */
+public interface WordConstant {
+
+    /**
+     * 艾宾浩斯记忆曲线, 单词在计划开始后的第几天需要背诵, 即背诵日期与start_day相差的天数
+     * 默认的艾宾浩斯算法(EbbinghausAlgorithm)查询今日单词时以此为准, 不要修改
+     */
+    int[] REVIEW_INTERVALS = {0, 1, 2, 4, 7, 15, 31, 107};
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.paul.web.module.word.controller;
+
+import com.paul.common.base.BaseController;
+import com.paul.common.util.R;
+import com.paul.web.module.word.entity.DeckEntity;
+import com.paul.web.module.word.service.DeckService;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 牌组
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 14:30
+ */
+@RestController
+@RequestMapping("deck")
+public class DeckController extends BaseController<DeckEntity, DeckService> {
+
+    /**
+     * 把单词加入牌组
+     *
+     * @param id      牌组ID
+     * @param wordIds 单词ID列表
+     * @return com.paul.common.util.R data为牌组的单词数量
+     */
+    @PostMapping("words/{id}")
+    public R addWords(@PathVariable String id, @RequestBody List<String> wordIds) {
+
+        return service.addWords(id, wordIds);
+    }
+
+    /**
+     * 把单词移出牌组
+     *
+     * @param id      牌组ID
+     * @param wordIds 单词ID, 以英文逗号隔开
+     * @return com.paul.common.util.R data为牌组的单词数量
+     */
+    @DeleteMapping("words/{id}/{wordIds}")
+    public R removeWords(@PathVariable String id, @PathVariable String wordIds) {
+
+        return service.removeWords(id, wordIds);
+    }
+}
\ No newline at end of file
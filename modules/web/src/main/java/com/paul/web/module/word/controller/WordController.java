@@ -1,13 +1,28 @@
 package com.paul.web.module.word.controller;
 
 import com.paul.common.base.BaseController;
+import com.paul.common.util.DateUtils;
+import com.paul.common.util.NdJsonWriter;
+import com.paul.common.util.P;
 import com.paul.common.util.R;
+import com.paul.web.module.word.entity.ReviewAnswerBatch;
 import com.paul.web.module.word.entity.WordEntity;
 import com.paul.web.module.word.service.WordService;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Date;
+
+import static com.paul.common.constant.DateConstant.DAY_DATE_PATTERN;
 
 /**
  * 单词
@@ -30,4 +45,111 @@ public class WordController extends BaseController<WordEntity, WordService> {
 
         return service.next(know);
     }
+
+    /**
+     * 预测之后每天需要背诵的单词数量
+     *
+     * @param days 天数, 默认30天
+     * @return com.paul.common.util.R
+     */
+    @GetMapping("forecast")
+    public R forecast(@RequestParam(defaultValue = "30") int days) {
+
+        return service.forecast(days);
+    }
+
+    /**
+     * 搜索单词, 翻译和备注
+     *
+     * @param q     搜索内容, 多个词都要出现
+     * @param limit 最多返回的结果数, 默认20, 不超过100
+     * @return com.paul.common.util.R
+     */
+    @GetMapping("search")
+    public R search(@RequestParam String q, @RequestParam(defaultValue = "20") int limit) {
+
+        return service.search(q, limit);
+    }
+
+    /**
+     * 前缀补全, 用于录入单词时提示已有的单词
+     *
+     * @param prefix 前缀, 不区分大小写
+     * @param limit  最多返回的单词数, 默认10, 不超过50
+     * @return com.paul.common.util.R
+     */
+    @GetMapping("suggest")
+    public R suggest(@RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+
+        return service.suggest(prefix, limit);
+    }
+
+    /**
+     * 批量导入单词, 立即返回导入进度, 之后用import/{id}查询
+     *
+     * @param file   上传的文件(CSV, TSV或Anki导出的纯文本), UTF-8编码
+     * @param format 格式: csv, tsv, anki, 默认按扩展名判断
+     * @return com.paul.common.util.R
+     */
+    @PostMapping("import")
+    public R importWords(@RequestParam("file") MultipartFile file, @RequestParam(required = false) String format) {
+
+        return service.importWords(file, format);
+    }
+
+    /**
+     * 查询导入进度
+     *
+     * @param id 导入ID
+     * @return com.paul.common.util.R
+     */
+    @GetMapping("import/{id}")
+    public R importProgress(@PathVariable String id) {
+
+        return service.importProgress(id);
+    }
+
+    /**
+     * 批量回答, 客户端可以缓存回答后一次提交, 重试时批次ID不变
+     * 如: {"batchId": "...", "answers": [{"wordId": "1", "know": 1, "clientTimestamp": 1563955200000}]}
+     *
+     * @param batch 批量回答
+     * @return com.paul.common.util.R 回答后的状态, 同next
+     */
+    @PostMapping("answers")
+    public R answers(@RequestBody ReviewAnswerBatch batch) {
+
+        return service.answers(batch);
+    }
+
+    /**
+     * 选择要背诵的牌组
+     *
+     * @param expression 牌组表达式, 如: (cet4 | cet6) & !已掌握, 为空时背诵全部今日单词
+     * @return com.paul.common.util.R 选择后的状态, 同next
+     */
+    @PutMapping("decks")
+    public R selectDecks(@RequestParam(required = false) String expression) {
+
+        return service.selectDecks(expression);
+    }
+
+    /**
+     * 流式导出某日需要背诵的单词, 响应为NDJSON
+     *
+     * @param date 日期, 如: 2019-07-22, 默认今日
+     * @param resp 响应
+     * @throws java.io.IOException 写响应失败
+     */
+    @GetMapping("stream/extend")
+    public void streamObjectsExtend(@RequestParam(required = false) String date,
+        HttpServletResponse resp) throws IOException {
+
+        if (date == null) {
+            date = DateUtils.format(new Date(), DAY_DATE_PATTERN);
+        }
+        try (NdJsonWriter writer = new NdJsonWriter(resp)) {
+            service.streamObjectsExtend(new P("date", date), writer);
+        }
+    }
 }
\ No newline at end of file
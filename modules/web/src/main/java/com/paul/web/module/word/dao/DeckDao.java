@@ -0,0 +1,59 @@
+package com.paul.web.module.word.dao;
+
+import com.paul.web.module.word.entity.DeckEntity;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+import static com.paul.common.constant.SqlConstant.*;
+
+/**
+ * 牌组
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 09:40
+ */
+@Mapper
+public interface DeckDao extends com.paul.common.base.BaseDao<DeckEntity> {
+
+    /**
+     * 查询全部未删除的牌组, 用于加载牌组索引(DeckIndex)
+     *
+     * @return java.util.List<com.paul.web.module.word.entity.DeckEntity> 只有ID和名称
+     */
+    @Select({
+        SELECT,
+        "`id`, `name`",
+        FROM,
+        "`deck`",
+        WHERE,
+        "`del_flag` = 0"
+    })
+    List<DeckEntity> listDecks();
+
+    /**
+     * 按名称查询未删除的牌组
+     *
+     * @param name 名称
+     * @return com.paul.web.module.word.entity.DeckEntity 只有ID
+     */
+    @Select({
+        SELECT,
+        "`id`",
+        FROM,
+        "`deck`",
+        WHERE,
+        "`del_flag` = 0 AND ",
+        "`name` = #{name}"
+    })
+    DeckEntity getObjectByName(String name);
+
+    class Provider extends com.paul.common.base.BaseDao.Provider<DeckEntity> {
+
+        {
+            // 逗号后不能有空格, 否则生成的占位符属性名中会带空格
+            insertBatchColumns = "`id`,`name`";
+        }
+    }
+}
\ No newline at end of file
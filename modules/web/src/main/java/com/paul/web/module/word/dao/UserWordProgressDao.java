@@ -0,0 +1,113 @@
+package com.paul.web.module.word.dao;
+
+import com.paul.common.base.CacheableProvider;
+import com.paul.common.util.SqlUtils;
+import com.paul.web.module.word.entity.UserWordProgressEntity;
+import org.apache.ibatis.annotations.InsertProvider;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+
+import static com.paul.common.constant.SqlConstant.*;
+
+/**
+ * 用户今日的单词进度, 主键为(会话键, 单词ID), 每个用户的进度互不影响
+ * 表中只有今日的进度, 每日顺延时清空
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/5 10:25
+ */
+@Mapper
+public interface UserWordProgressDao {
+
+    /**
+     * 批量写入进度, 已有的进度覆盖, 一条多行INSERT ... ON DUPLICATE KEY UPDATE语句
+     *
+     * @param list 进度
+     */
+    @InsertProvider(type = Provider.class, method = "upsertBatch")
+    void upsertBatch(@Param("list") List<UserWordProgressEntity> list);
+
+    /**
+     * 查询某个用户今日的进度, 按主键前缀查询
+     *
+     * @param userKey 会话键
+     * @return java.util.List<com.paul.web.module.word.entity.UserWordProgressEntity>
+     */
+    @Select({
+        SELECT,
+        "`word_id`, `schedule`",
+        FROM,
+        "`user_word_progress`",
+        WHERE,
+        "`user_key` = #{userKey}"
+    })
+    List<UserWordProgressEntity> listByUser(String userKey);
+
+    /**
+     * 查询今日有用户背完的单词ID, 每日顺延时据此评分, 可以只扫描(schedule, word_id)索引
+     *
+     * @return java.util.List<java.lang.String>
+     */
+    @Select({
+        SELECT,
+        "DISTINCT `word_id`",
+        FROM,
+        "`user_word_progress`",
+        WHERE,
+        "`schedule` = 3"
+    })
+    List<String> listDoneWordIds();
+
+    /**
+     * 查询今日有用户背过但没背完的单词ID, 每日顺延时据此评分, 可以只扫描(schedule, word_id)索引
+     *
+     * @return java.util.List<java.lang.String>
+     */
+    @Select({
+        SELECT,
+        "DISTINCT `word_id`",
+        FROM,
+        "`user_word_progress`",
+        WHERE,
+        "`schedule` <> 3"
+    })
+    List<String> listUnfinishedWordIds();
+
+    /**
+     * 清空全部进度, 每日顺延时执行, 不逐行删除
+     */
+    @Update("TRUNCATE TABLE `user_word_progress`")
+    void truncate();
+
+    class Provider implements CacheableProvider {
+
+        /**
+         * 批量写入的字段
+         */
+        static final String UPSERT_BATCH_COLUMNS = "`user_key`,`word_id`,`schedule`";
+
+        public String upsertBatch(@Param("list") List<UserWordProgressEntity> list) {
+
+            return INSERT_INTO + "`user_word_progress`(" + UPSERT_BATCH_COLUMNS + ")" + VALUES +
+                SqlUtils.columnsToValueColumnsBatch(UPSERT_BATCH_COLUMNS, list.size()) +
+                " ON DUPLICATE KEY UPDATE `schedule` = VALUES(`schedule`)";
+        }
+
+        /**
+         * 批量写入的SQL只与条数有关
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return java.lang.Object
+         */
+        @Override
+        public Object sqlCacheKey(String method, Object[] args) {
+
+            return "upsertBatch".equals(method) ? ((List<?>) args[0]).size() : null;
+        }
+    }
+}
\ No newline at end of file
@@ -1,19 +1,32 @@
 package com.paul.web.module.word.dao;
 
 import com.paul.common.base.BaseDao;
+import com.paul.common.exception.CustomException;
+import com.paul.common.util.Criteria;
 import com.paul.common.util.P;
+import com.paul.web.module.word.algorithm.EbbinghausAlgorithm;
+import com.paul.web.module.word.algorithm.ReviewStates;
+import com.paul.web.module.word.algorithm.SchedulingAlgorithm;
 import com.paul.web.module.word.entity.WordEntity;
 import com.paul.web.module.word.entity.WordEntityExtend;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.SelectProvider;
+import org.apache.ibatis.annotations.UpdateProvider;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.jdbc.SQL;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
 import static com.paul.common.constant.SqlConstant.*;
-import static com.paul.common.util.SqlUtils.notDeleted;
+import static com.paul.common.constant.StringConstant.COMMA_SPACE;
 
 /**
  * 单词
@@ -30,15 +43,7 @@ public interface WordDao extends com.paul.common.base.BaseDao<WordEntity> {
      * @param p 参数: date:日期
      * @return java.util.List<java.util.Map < java.lang.String, java.lang.Integer>>
      */
-    @Select({
-        SELECT + "`schedule`, count(`schedule`) count",
-        FROM + "`word`",
-        WHERE + "`del_flag` = 0",
-        AND +
-            "timestampdiff(day, date_format(`start_date`, '%Y-%m-%d'), #{date}) in (0, 1, 2, 4, 7, " +
-            "15, 31, 107)",
-        GROUP_BY + "`schedule`"
-    })
+    @SelectProvider(type = BaseDao.Provider.class, method = "count")
     List<Map<String, Object>> count(P p);
 
     /**
@@ -50,6 +55,16 @@ public interface WordDao extends com.paul.common.base.BaseDao<WordEntity> {
     @SelectProvider(type = BaseDao.Provider.class, method = "listObjectsExtend")
     List<WordEntityExtend> listObjectsExtend(P p);
 
+    /**
+     * 流式查询拓展的列表, SQL与listObjectsExtend相同, 逐行从数据库读取
+     *
+     * @param p 参数: date:日期
+     * @return org.apache.ibatis.cursor.Cursor<com.paul.web.module.word.entity.WordEntityExtend>
+     */
+    @SelectProvider(type = BaseDao.Provider.class, method = "listObjectsExtend")
+    @Options(fetchSize = Integer.MIN_VALUE, resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<WordEntityExtend> cursorObjectsExtend(P p);
+
     @Select({
         SELECT,
         "`id`",
@@ -61,10 +76,82 @@ public interface WordDao extends com.paul.common.base.BaseDao<WordEntity> {
     })
     WordEntity getObjectByWord(String word);
 
+    /**
+     * 查询全部未删除的单词, 用于加载单词索引(WordIndex), 可以只扫描(del_flag, word)索引
+     *
+     * @return java.util.List<java.lang.String>
+     */
+    @Select({
+        SELECT,
+        "`word`",
+        FROM,
+        "`word`",
+        WHERE,
+        "`del_flag` = 0"
+    })
+    List<String> listWords();
+
+    /**
+     * 流式遍历全部未删除单词的搜索字段, 用于加载搜索索引(SearchIndex), 不会把结果全部读入内存
+     *
+     * @param handler 每个单词的处理
+     */
+    @Select({
+        SELECT,
+        "`id`, `word`, `translation`, `remark`",
+        FROM,
+        "`word`",
+        WHERE,
+        "`del_flag` = 0"
+    })
+    @Options(fetchSize = Integer.MIN_VALUE, resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(WordEntity.class)
+    void scanSearchFields(ResultHandler<WordEntity> handler);
+
+    /**
+     * 按日期字段分组统计未删除的单词数量, 可以只扫描(del_flag, 日期字段)索引
+     *
+     * @param column 日期字段, 由间隔重复算法决定, 不是用户输入
+     * @return java.util.List<java.util.Map < java.lang.String, java.lang.Object>> day: 日期, count: 数量
+     */
+    @SelectProvider(type = BaseDao.Provider.class, method = "countByDay")
+    List<Map<String, Object>> countByDay(@Param("column") String column);
+
+    /**
+     * 批量更新单词状态, 见Provider.updateStates
+     *
+     * @param states 单词状态, 一块, 见ReviewStates.slice
+     */
+    @UpdateProvider(type = BaseDao.Provider.class, method = "updateStates")
+    void updateStates(@Param("states") ReviewStates states);
+
     class Provider extends com.paul.common.base.BaseDao.Provider<WordEntity> {
 
+        /**
+         * 默认的间隔重复算法
+         */
+        private static final SchedulingAlgorithm EBBINGHAUS = new EbbinghausAlgorithm();
+
+        {
+            // 批量导入时插入的字段, 其他字段使用数据库默认值; 逗号后不能有空格, 否则生成的占位符属性名中会带空格
+            insertBatchColumns = "`id`,`word`,`sound`,`translation`,`schedule`,`start_date`,`due_day`,`remark`,`del_flag`";
+        }
+
+        public String count(P p) {
+
+            return SELECT + "`schedule`, count(`schedule`) count" + FROM + tableName + WHERE +
+                getCriteria("count", new Object[]{p}).getWhere() + GROUP_BY + "`schedule`";
+        }
+
+        /**
+         * 查询某日需要背诵的单词, 条件见SchedulingAlgorithm.due, 都可以走索引, 不会因为对字段使用函数而全表扫描
+         *
+         * @param p 参数: date:日期, algorithm:间隔重复算法
+         * @return java.lang.String
+         */
         public String listObjectsExtend(P p) {
 
+            String where = getCriteria("listObjectsExtend", new Object[]{p}).getWhere();
             return new SQL() {{
 
                 SELECT("`word`, " +
@@ -73,16 +160,111 @@ public interface WordDao extends com.paul.common.base.BaseDao<WordEntity> {
                     " `schedule`, " +
                     " `start_date`, " +
                     " `id`, " +
-                    " `remark`" +
-                    ", timestampdiff(day, date_format(`start_date`, '%Y-%m-%d'), " +
-                    "#{date}) AS dayCount");
+                    " `remark`, " +
+                    " `ease`, " +
+                    " `stability`, " +
+                    " `difficulty`, " +
+                    " `reps`, " +
+                    " `lapses`, " +
+                    " `last_day`, " +
+                    " `due_day`" +
+                    ", datediff(#{date}, `start_day`) AS dayCount");
                 FROM(tableName);
-                WHERE(notDeleted());
-                WHERE(
-                    "timestampdiff(day, date_format(`start_date`, '%Y-%m-%d'), #{date}) in (0, 1," +
-                        " 2, 4, 7, 15, 31, 107)");
+                WHERE(where);
                 ORDER_BY("`start_date` DESC");
             }}.toString();
         }
+
+        public String countByDay(@Param("column") String column) {
+
+            String day = "`" + column + "`";
+            return SELECT + day + " AS `day`, count(*) AS `count`" + FROM + tableName + WHERE +
+                new Criteria().notDeleted().notNull(column).getWhere() + GROUP_BY + day;
+        }
+
+        /**
+         * 批量更新单词状态, 每个字段一个CASE: SET `ease` = CASE `id` WHEN ? THEN ? ... END, ... WHERE `id` IN (...)
+         * 一条语句更新一块单词, 下次背诵日期为今日加上间隔天数
+         *
+         * @param states 单词状态, 一块, 下标从0开始
+         * @return java.lang.String
+         */
+        public String updateStates(@Param("states") ReviewStates states) {
+
+            int size = states.getSize();
+            StringBuilder sql = new StringBuilder(UPDATE).append(tableName).append(SET);
+            appendCase(sql, "ease", "ease", size).append(COMMA_SPACE);
+            appendCase(sql, "stability", "stability", size).append(COMMA_SPACE);
+            appendCase(sql, "difficulty", "difficulty", size).append(COMMA_SPACE);
+            appendCase(sql, "reps", "reps", size).append(COMMA_SPACE);
+            appendCase(sql, "lapses", "lapses", size).append(COMMA_SPACE);
+            sql.append("`last_day` = #{states.today}").append(COMMA_SPACE)
+                .append("`due_day` = date_add(#{states.today}, INTERVAL ");
+            appendCase(sql, null, "intervals", size).append(" DAY)")
+                .append(WHERE).append("`id` IN (");
+            for (int i = 0; i < size; i++) {
+                sql.append(i == 0 ? "" : COMMA_SPACE).append("#{states.ids[").append(i).append("]}");
+            }
+            return sql.append(")").toString();
+        }
+
+        @Override
+        public Object sqlCacheKey(String method, Object[] args) {
+
+            if ("updateStates".equals(method)) {
+                // SQL只与块的大小有关, 不同位置的块共用一条SQL
+                return sqlCache ? ((ReviewStates) args[0]).getSize() : null;
+            }
+            return super.sqlCacheKey(method, args);
+        }
+
+        /**
+         * 查询某日需要背诵的单词的条件由间隔重复算法决定, 参数中没有算法时使用默认的艾宾浩斯算法
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return com.paul.common.util.Criteria
+         */
+        @Override
+        protected Criteria buildCriteria(String method, Object[] args) {
+
+            switch (method) {
+                case "count":
+                case "listObjectsExtend":
+                    P p = (P) args[0];
+                    Object date = p.get("date");
+                    if (date == null) {
+                        throw new CustomException("日期不能为空! ");
+                    }
+                    Object algorithm = p.get("algorithm");
+                    return (algorithm instanceof SchedulingAlgorithm ? (SchedulingAlgorithm) algorithm : EBBINGHAUS)
+                        .due(new Criteria().notDeleted(), LocalDate.parse(date.toString()));
+                default:
+                    return super.buildCriteria(method, args);
+            }
+        }
+
+        /**
+         * 追加一个按单词ID取值的CASE
+         *
+         * @param sql    SQL
+         * @param column 字段名, 为NULL时只追加CASE
+         * @param array  ReviewStates中的数组名
+         * @param size   单词数量
+         * @return java.lang.StringBuilder
+         */
+        private static StringBuilder appendCase(StringBuilder sql, String column, String array,
+            int size) {
+
+            if (column != null) {
+                sql.append('`').append(column).append("` = ");
+            }
+            sql.append("CASE `id`");
+            for (int i = 0; i < size; i++) {
+                sql.append(" WHEN #{states.ids[").append(i).append("]} THEN #{states.").append(array)
+                    .append("[").append(i).append("]}");
+            }
+            return sql.append(" END");
+        }
     }
 }
\ No newline at end of file
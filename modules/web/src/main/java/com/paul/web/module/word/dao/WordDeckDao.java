@@ -0,0 +1,155 @@
+package com.paul.web.module.word.dao;
+
+import com.paul.common.base.CacheableProvider;
+import com.paul.web.module.word.entity.WordDeckEntity;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.DeleteProvider;
+import org.apache.ibatis.annotations.InsertProvider;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectProvider;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
+
+import static com.paul.common.constant.SqlConstant.*;
+import static com.paul.common.constant.StringConstant.COMMA_SPACE;
+
+/**
+ * 单词所属的牌组, 主键为(牌组ID, 单词ID)
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 09:45
+ */
+@Mapper
+public interface WordDeckDao {
+
+    /**
+     * 把单词加入牌组, 已在牌组中的单词忽略, 一条多行INSERT IGNORE语句
+     *
+     * @param deckId  牌组ID
+     * @param wordIds 单词ID
+     */
+    @InsertProvider(type = Provider.class, method = "insertBatch")
+    void insertBatch(@Param("deckId") String deckId, @Param("wordIds") List<String> wordIds);
+
+    /**
+     * 把单词移出牌组
+     *
+     * @param deckId  牌组ID
+     * @param wordIds 单词ID
+     */
+    @DeleteProvider(type = Provider.class, method = "deleteBatch")
+    void deleteBatch(@Param("deckId") String deckId, @Param("wordIds") List<String> wordIds);
+
+    /**
+     * 查询存在且未删除的单词ID, 加入牌组前过滤掉不存在的单词
+     *
+     * @param wordIds 单词ID
+     * @return java.util.List<java.lang.String>
+     */
+    @SelectProvider(type = Provider.class, method = "listWordIds")
+    List<String> listWordIds(@Param("wordIds") List<String> wordIds);
+
+    /**
+     * 把单词移出全部牌组, 删除单词时执行, 走idx_word_id索引
+     *
+     * @param wordIds 单词ID
+     */
+    @DeleteProvider(type = Provider.class, method = "deleteByWords")
+    void deleteByWords(@Param("wordIds") List<String> wordIds);
+
+    /**
+     * 删除牌组的全部单词, 删除牌组时执行
+     *
+     * @param deckId 牌组ID
+     */
+    @Delete({
+        DELETE_FROM,
+        "`word_deck`",
+        WHERE,
+        "`deck_id` = #{deckId}"
+    })
+    void deleteByDeck(String deckId);
+
+    /**
+     * 流式遍历全部关联, 用于加载牌组索引(DeckIndex), 不会把结果全部读入内存
+     *
+     * @param handler 每个关联的处理
+     */
+    @Select({
+        SELECT,
+        "`deck_id`, `word_id`",
+        FROM,
+        "`word_deck`"
+    })
+    @Options(fetchSize = Integer.MIN_VALUE, resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(WordDeckEntity.class)
+    void scan(ResultHandler<WordDeckEntity> handler);
+
+    class Provider implements CacheableProvider {
+
+        public String insertBatch(@Param("deckId") String deckId, @Param("wordIds") List<String> wordIds) {
+
+            StringBuilder sql = new StringBuilder("INSERT IGNORE INTO `word_deck`(`deck_id`, `word_id`)")
+                .append(VALUES);
+            for (int i = 0; i < wordIds.size(); i++) {
+                sql.append(i == 0 ? "" : COMMA_SPACE).append("(#{deckId}, #{wordIds[").append(i).append("]})");
+            }
+            return sql.toString();
+        }
+
+        public String deleteBatch(@Param("deckId") String deckId, @Param("wordIds") List<String> wordIds) {
+
+            StringBuilder sql = new StringBuilder(DELETE_FROM).append("`word_deck`").append(WHERE)
+                .append("`deck_id` = #{deckId} AND `word_id` IN (");
+            return appendWordIds(sql, wordIds).toString();
+        }
+
+        public String listWordIds(@Param("wordIds") List<String> wordIds) {
+
+            StringBuilder sql = new StringBuilder(SELECT).append("`id`").append(FROM).append("`word`").append(WHERE)
+                .append("`del_flag` = 0 AND `id` IN (");
+            return appendWordIds(sql, wordIds).toString();
+        }
+
+        public String deleteByWords(@Param("wordIds") List<String> wordIds) {
+
+            StringBuilder sql = new StringBuilder(DELETE_FROM).append("`word_deck`").append(WHERE)
+                .append("`word_id` IN (");
+            return appendWordIds(sql, wordIds).toString();
+        }
+
+        /**
+         * SQL只与单词数量有关
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return java.lang.Object
+         */
+        @Override
+        public Object sqlCacheKey(String method, Object[] args) {
+
+            return ((List<?>) args[args.length - 1]).size();
+        }
+
+        /**
+         * 追加单词ID的占位符和右括号
+         *
+         * @param sql     SQL, 以左括号结尾
+         * @param wordIds 单词ID
+         * @return java.lang.StringBuilder
+         */
+        private static StringBuilder appendWordIds(StringBuilder sql, List<String> wordIds) {
+
+            for (int i = 0; i < wordIds.size(); i++) {
+                sql.append(i == 0 ? "" : COMMA_SPACE).append("#{wordIds[").append(i).append("]}");
+            }
+            return sql.append(")");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.paul.web.module.word.dao;
+
+import com.paul.common.base.CacheableProvider;
+import com.paul.common.util.SqlUtils;
+import com.paul.web.module.word.entity.WordReviewLogEntity;
+import org.apache.ibatis.annotations.InsertProvider;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+
+import static com.paul.common.constant.SqlConstant.*;
+
+/**
+ * 背诵记录, 表按天分区(RANGE COLUMNS(`review_day`)), 只批量插入
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/29 09:50
+ */
+@Mapper
+public interface WordReviewLogDao {
+
+    /**
+     * 批量插入, 一条多行INSERT语句
+     *
+     * @param list 背诵记录
+     */
+    @InsertProvider(type = Provider.class, method = "insertBatch")
+    void insertBatch(@Param("list") List<WordReviewLogEntity> list);
+
+    /**
+     * 查询已有的分区名, 不含pmax
+     *
+     * @return java.util.List<java.lang.String>
+     */
+    @Select({
+        SELECT,
+        "`partition_name`",
+        FROM,
+        "`information_schema`.`partitions`",
+        WHERE,
+        "`table_schema` = database() AND `table_name` = 'word_review_log' AND `partition_name` <> 'pmax'"
+    })
+    List<String> listPartitions();
+
+    /**
+     * 从pmax中拆分出一个按天的分区, 分区名和日期由程序生成, 不是用户输入
+     *
+     * @param name  分区名, 如: p20190729
+     * @param until 分区上界(不含), 如: 2019-07-30
+     */
+    @Update({
+        "ALTER TABLE `word_review_log` REORGANIZE PARTITION `pmax` INTO (",
+        "PARTITION `${name}` VALUES LESS THAN ('${until}'),",
+        "PARTITION `pmax` VALUES LESS THAN (MAXVALUE))"
+    })
+    void addPartition(@Param("name") String name, @Param("until") String until);
+
+    class Provider implements CacheableProvider {
+
+        /**
+         * 批量插入的字段
+         */
+        static final String INSERT_BATCH_COLUMNS =
+            "`word_id`,`user_key`,`know`,`schedule`,`review_time`,`review_day`";
+
+        public String insertBatch(@Param("list") List<WordReviewLogEntity> list) {
+
+            return INSERT_INTO + "`word_review_log`(" + INSERT_BATCH_COLUMNS + ")" + VALUES +
+                SqlUtils.columnsToValueColumnsBatch(INSERT_BATCH_COLUMNS, list.size());
+        }
+
+        /**
+         * 批量插入的SQL只与条数有关
+         *
+         * @param method Provider方法名
+         * @param args   Provider方法的参数
+         * @return java.lang.Object
+         */
+        @Override
+        public Object sqlCacheKey(String method, Object[] args) {
+
+            return "insertBatch".equals(method) ? ((List<?>) args[0]).size() : null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.paul.web.module.word.entity;
+
+import com.paul.common.base.BaseEntity;
+import com.paul.common.base.CachedEntity;
+import lombok.Data;
+
+/**
+ * 牌组, 用于给单词分组, 一个单词可以属于多个牌组, 见WordDeckEntity
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 09:30
+ */
+@Data
+@CachedEntity(maximumSize = 1000)
+public class DeckEntity extends BaseEntity {
+
+    private static final long serialVersionUID = 3190452842158231785L;
+
+    /**
+     * 名称, 不能重复, 不能包含空白和运算符(!&|()), 用于牌组表达式, 见DeckExpression
+     */
+    private String name;
+}
\ No newline at end of file
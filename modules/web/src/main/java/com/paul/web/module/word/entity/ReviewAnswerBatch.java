@@ -0,0 +1,58 @@
+package com.paul.web.module.word.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量提交的回答, 客户端可以先缓存回答, 每隔几秒或恢复网络后一次提交
+ * 重试时batchId不变, 已处理过的批次不会重复处理
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/24 16:20
+ */
+@Data
+public class ReviewAnswerBatch implements Serializable {
+
+    private static final long serialVersionUID = 3471028846155262873L;
+
+    /**
+     * 批次ID, 由客户端生成, 如UUID
+     */
+    private String batchId;
+
+    /**
+     * 回答第一个单词时的队列版本, 与服务端不一致时整批拒绝, 为空时不校验
+     */
+    private Long version;
+
+    /**
+     * 按回答顺序排列的回答
+     */
+    private List<Answer> answers;
+
+    /**
+     * 一次回答
+     */
+    @Data
+    public static class Answer implements Serializable {
+
+        private static final long serialVersionUID = -2185406233310905154L;
+
+        /**
+         * 单词ID, 必须是回答时的当前单词
+         */
+        private Object wordId;
+
+        /**
+         * 1: 认识, 0: 不认识
+         */
+        private Integer know;
+
+        /**
+         * 客户端回答时间(毫秒), 有值时按此时间排序
+         */
+        private Long clientTimestamp;
+    }
+}
\ No newline at end of file
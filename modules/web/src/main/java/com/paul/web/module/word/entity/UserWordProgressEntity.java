@@ -0,0 +1,33 @@
+package com.paul.web.module.word.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 用户今日的单词进度, 每个用户的每个单词一行, 由ScheduleWriteBehind延迟写入, 每日顺延时清空
+ * 不继承BaseEntity: 进度表只有这三个字段, 主键为(会话键, 单词ID), 见UserWordProgressDao
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/5 10:20
+ */
+@Data
+public class UserWordProgressEntity implements Serializable {
+
+    private static final long serialVersionUID = 5310853524736904127L;
+
+    /**
+     * 背诵会话键, 登录用户为用户ID
+     */
+    private String userKey;
+
+    /**
+     * 单词ID
+     */
+    private String wordId;
+
+    /**
+     * 进度, 见ReviewSession.SCHEDULE_*
+     */
+    private Integer schedule;
+}
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.paul.web.module.word.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 单词所属的牌组
+ * 不继承BaseEntity: 关联表只有两个字段, 删除时直接删除, 见WordDeckDao
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 09:35
+ */
+@Data
+public class WordDeckEntity implements Serializable {
+
+    private static final long serialVersionUID = -4419728300914718503L;
+
+    /**
+     * 牌组ID
+     */
+    private String deckId;
+
+    /**
+     * 单词ID
+     */
+    private String wordId;
+}
\ No newline at end of file
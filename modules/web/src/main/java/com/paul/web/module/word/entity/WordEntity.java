@@ -1,17 +1,20 @@
 package com.paul.web.module.word.entity;
 
 import com.paul.common.base.BaseEntity;
+import com.paul.common.base.CachedEntity;
 import lombok.Data;
 
 import java.util.Date;
 
 /**
  * 单词
+ * 使用实体缓存, 直接调用WordDao修改单词(如每日顺延, 进度延迟写入)后需移出缓存
  *
  * @author paulandcode paulandcode@gmail.com
  * @since 19-6-27 下午2:01
  */
 @Data
+@CachedEntity
 public class WordEntity extends BaseEntity {
 
     private static final long serialVersionUID = -568639849174256641L;
@@ -32,7 +35,9 @@ public class WordEntity extends BaseEntity {
     private String translation;
 
     /**
-     * 改字段在数据库中永远为0, 不会更新, 只会在内存里的todayWords中更新
+     * 回答时先在内存里各用户的背诵会话(ReviewSession)中更新, 并记录在背诵日志(ReviewJournal)中,
+     * 再由ScheduleWriteBehind延迟批量写入各用户的进度表(user_word_progress), 每日顺延时清空
+     * word表中的该字段是各用户共用的, 不记录进度, 始终为0; 查询今日单词时由该用户的进度填充
      * 进度: 0(未背诵), 1(已背诵1遍), 2(已背诵2遍), 3(已背诵3遍, 今日无需再背诵),
      * 4(不认识: 只要一次背诵时忘记, 则变为不认识状态)
      */
@@ -44,6 +49,42 @@ public class WordEntity extends BaseEntity {
      */
     private Date startDate;
 
+    /**
+     * 以下为间隔重复算法(SchedulingAlgorithm)的单词状态, 默认的艾宾浩斯算法不使用, 只在每日顺延时批量更新
+     * 难易系数(SM-2), 初始为2.5
+     */
+    private Double ease;
+
+    /**
+     * 记忆稳定性, 单位为天(FSRS), 没背过时为0
+     */
+    private Double stability;
+
+    /**
+     * 难度, 1到10(FSRS), 没背过时为0
+     */
+    private Double difficulty;
+
+    /**
+     * 连续记住的次数
+     */
+    private Integer reps;
+
+    /**
+     * 忘记的次数
+     */
+    private Integer lapses;
+
+    /**
+     * 上次背诵日期
+     */
+    private Date lastDay;
+
+    /**
+     * 下次背诵日期, 初始为计划开始日期
+     */
+    private Date dueDay;
+
     @Override
     public String toString() {
 
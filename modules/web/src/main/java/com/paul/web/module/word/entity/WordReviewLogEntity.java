@@ -0,0 +1,49 @@
+package com.paul.web.module.word.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 背诵记录, 每次回答一条, 只插入不修改, 用于分析记忆效果和调整间隔
+ * 不继承BaseEntity: 记录表没有更新人, 删除标志等字段, 按天分区, 见WordReviewLogDao
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/29 09:40
+ */
+@Data
+public class WordReviewLogEntity implements Serializable {
+
+    private static final long serialVersionUID = 6083913624573085160L;
+
+    /**
+     * 单词ID
+     */
+    private String wordId;
+
+    /**
+     * 背诵会话键, 登录用户为用户ID
+     */
+    private String userKey;
+
+    /**
+     * 1: 认识, 0: 不认识
+     */
+    private Integer know;
+
+    /**
+     * 回答后的进度
+     */
+    private Integer schedule;
+
+    /**
+     * 回答时间
+     */
+    private Date reviewTime;
+
+    /**
+     * 回答日期, 分区字段
+     */
+    private Date reviewDay;
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.paul.web.module.word.entity;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 单词搜索结果, 按得分从高到低排序, 见SearchIndex
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/1 10:20
+ */
+@Data
+public class WordSearchHit implements Serializable {
+
+    private static final long serialVersionUID = -2381958372409418826L;
+
+    /**
+     * 单词ID
+     */
+    private String id;
+
+    /**
+     * 单词
+     */
+    private String word;
+
+    /**
+     * 翻译
+     */
+    private String translation;
+
+    /**
+     * 得分
+     */
+    private double score;
+
+    public WordSearchHit(String id, String word, String translation, double score) {
+
+        this.id = id;
+        this.word = word;
+        this.translation = translation;
+        this.score = score;
+    }
+}
\ No newline at end of file
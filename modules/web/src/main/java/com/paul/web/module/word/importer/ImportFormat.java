@@ -0,0 +1,59 @@
+package com.paul.web.module.word.importer;
+
+import com.paul.common.exception.CustomException;
+
+import java.util.Locale;
+
+/**
+ * 导入文件格式
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/31 09:30
+ */
+public enum ImportFormat {
+
+    // 逗号分隔, 字段可用双引号包围, 双引号内的双引号写两次
+    CSV(','),
+    // 制表符分隔
+    TSV('\t'),
+    // Anki导出的纯文本笔记: 以#开头的行是文件头(如#separator:tab, #html:true, #guid column:1), 默认制表符分隔
+    ANKI('\t');
+
+    /**
+     * 默认分隔符
+     */
+    private final char separator;
+
+    ImportFormat(char separator) {
+
+        this.separator = separator;
+    }
+
+    public char getSeparator() {
+
+        return separator;
+    }
+
+    /**
+     * 获得导入格式, 没有指定时按文件扩展名判断: .csv为CSV, .tsv为TSV, 其他(如Anki导出的.txt)为ANKI
+     *
+     * @param format   格式名, 不区分大小写, 可为NULL
+     * @param fileName 文件名, 可为NULL
+     * @return com.paul.web.module.word.importer.ImportFormat
+     */
+    public static ImportFormat of(String format, String fileName) {
+
+        if (format != null && !format.trim().isEmpty()) {
+            try {
+                return valueOf(format.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new CustomException("不支持的导入格式: " + format + ", 可选: csv, tsv, anki");
+            }
+        }
+        String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        return name.endsWith(".tsv") ? TSV : ANKI;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.paul.web.module.word.importer;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.paul.common.constant.DateConstant.DEFAULT_DATE_PATTERN;
+
+/**
+ * 导入进度, 解析线程和插入线程同时修改, 计数都是原子的, 查询进度时直接序列化
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/31 10:30
+ */
+@Getter
+public class ImportProgress {
+
+    /**
+     * 最多保留的错误信息条数
+     */
+    private static final int MAX_ERRORS = 20;
+
+    /**
+     * 状态: 等待
+     */
+    public static final String WAITING = "waiting";
+
+    /**
+     * 状态: 导入中
+     */
+    public static final String RUNNING = "running";
+
+    /**
+     * 状态: 已完成
+     */
+    public static final String DONE = "done";
+
+    /**
+     * 状态: 失败, 已插入的单词不会回滚
+     */
+    public static final String FAILED = "failed";
+
+    /**
+     * 导入ID
+     */
+    private final String id;
+
+    /**
+     * 文件名
+     */
+    private final String fileName;
+
+    /**
+     * 格式
+     */
+    private final ImportFormat format;
+
+    /**
+     * 文件字节数
+     */
+    private final long totalBytes;
+
+    /**
+     * 状态
+     */
+    private volatile String state = WAITING;
+
+    /**
+     * 已读取的字节数
+     */
+    private volatile long readBytes;
+
+    /**
+     * 已读取的记录数
+     */
+    private volatile long rows;
+
+    /**
+     * 已插入的单词数
+     */
+    private final AtomicLong inserted = new AtomicLong();
+
+    /**
+     * 已存在或文件中重复的单词数
+     */
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * 缺少单词或翻译, 或字段过长的记录数
+     */
+    private final AtomicLong invalid = new AtomicLong();
+
+    /**
+     * 插入失败的单词数
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * 开始时间
+     */
+    @JSONField(format = DEFAULT_DATE_PATTERN)
+    private volatile Date startTime;
+
+    /**
+     * 结束时间
+     */
+    @JSONField(format = DEFAULT_DATE_PATTERN)
+    private volatile Date endTime;
+
+    /**
+     * 前几条错误信息
+     */
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    public ImportProgress(String id, String fileName, ImportFormat format, long totalBytes) {
+
+        this.id = id;
+        this.fileName = fileName;
+        this.format = format;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * 开始导入
+     */
+    void start() {
+
+        startTime = new Date();
+        state = RUNNING;
+    }
+
+    /**
+     * 结束导入
+     *
+     * @param state 状态: 已完成或失败
+     */
+    void finish(String state) {
+
+        endTime = new Date();
+        this.state = state;
+    }
+
+    /**
+     * 记录读取进度
+     *
+     * @param rows      已读取的记录数
+     * @param readBytes 已读取的字节数
+     */
+    void read(long rows, long readBytes) {
+
+        this.rows = rows;
+        this.readBytes = readBytes;
+    }
+
+    /**
+     * 记录错误信息, 只保留前几条
+     *
+     * @param error 错误信息
+     */
+    void error(String error) {
+
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    /**
+     * 是否已结束
+     *
+     * @return boolean
+     */
+    @JSONField(serialize = false)
+    public boolean isFinished() {
+
+        return DONE.equals(state) || FAILED.equals(state);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,361 @@
+package com.paul.web.module.word.importer;
+
+import com.paul.common.exception.CustomException;
+import com.paul.common.util.IDUtils;
+import com.paul.web.module.word.entity.WordEntity;
+import com.paul.web.module.word.index.WordIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 批量导入单词
+ * 上传的文件先保存为临时文件, 由解析线程流式读取(WordRecordReader), 用单词索引(WordIndex)去掉已存在和文件中重复的单词,
+ * 按行数和语句大小分块, 交给有界的插入线程池用多行INSERT插入; 线程池队列满时由解析线程自己插入, 解析不会远远超过插入,
+ * 内存中最多只有几块单词, 与文件大小无关. 某块插入失败时释放该块占用的单词并记录错误, 不影响其他块
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/31 11:00
+ */
+@Slf4j
+@Component
+public class WordImporter {
+
+    /**
+     * 最多保留的导入进度数量, 超过时移除最早结束的
+     */
+    private static final int MAX_JOBS = 100;
+
+    /**
+     * 每行除字符串字段外的估计字节数: 占位符参数, ID和日期
+     */
+    private static final int ROW_OVERHEAD = 128;
+
+    @Autowired
+    private WordIndex index;
+
+    /**
+     * 同时进行的导入数量, 更多的导入排队等待
+     */
+    @Value("${spring.word.import.jobs:2}")
+    private int jobThreads;
+
+    /**
+     * 插入线程数
+     */
+    @Value("${spring.word.import.threads:4}")
+    private int insertThreads;
+
+    /**
+     * 每条INSERT语句最多插入的行数
+     */
+    @Value("${spring.word.import.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * 每条INSERT语句的最大KB数
+     */
+    @Value("${spring.word.import.max-packet-kb:1024}")
+    private int maxPacketKb;
+
+    /**
+     * 导入进度, 键为导入ID
+     */
+    private final Map<String, ImportProgress> jobs = new LinkedHashMap<>();
+
+    /**
+     * 解析线程
+     */
+    private ExecutorService jobExecutor;
+
+    /**
+     * 插入线程
+     */
+    private ThreadPoolExecutor insertExecutor;
+
+    /**
+     * 创建线程池
+     */
+    @PostConstruct
+    public void start() {
+
+        AtomicInteger jobCount = new AtomicInteger();
+        jobExecutor = Executors.newFixedThreadPool(jobThreads, runnable -> {
+            Thread thread = new Thread(runnable, "word-import-" + jobCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger insertCount = new AtomicInteger();
+        insertExecutor = new ThreadPoolExecutor(insertThreads, insertThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(insertThreads), runnable -> {
+            Thread thread = new Thread(runnable, "word-import-insert-" + insertCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 提交导入, 文件保存为临时文件后立即返回, 之后用导入ID查询进度
+     *
+     * @param file   上传的文件, UTF-8编码
+     * @param format 格式, 为NULL时按扩展名判断
+     * @param writer 插入一块单词, 由调用方写入数据库并维护相关统计
+     * @return com.paul.web.module.word.importer.ImportProgress
+     */
+    public ImportProgress submit(MultipartFile file, String format, Consumer<List<WordEntity>> writer) {
+
+        if (file == null || file.isEmpty()) {
+            throw new CustomException("导入文件不能为空! ");
+        }
+        ImportFormat importFormat = ImportFormat.of(format, file.getOriginalFilename());
+        File temp;
+        try {
+            temp = File.createTempFile("word-import-", ".tmp");
+            file.transferTo(temp);
+        } catch (IOException e) {
+            throw new CustomException("保存导入文件失败! ", e);
+        }
+        ImportProgress progress =
+            new ImportProgress(IDUtils.getId(), file.getOriginalFilename(), importFormat, temp.length());
+        synchronized (jobs) {
+            removeFinished();
+            jobs.put(progress.getId(), progress);
+        }
+        jobExecutor.execute(() -> run(progress, temp, writer));
+        return progress;
+    }
+
+    /**
+     * 查询导入进度
+     *
+     * @param id 导入ID
+     * @return com.paul.web.module.word.importer.ImportProgress 不存在时为NULL
+     */
+    public ImportProgress get(String id) {
+
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * 停止线程池, 正在进行的导入会中断
+     */
+    @PreDestroy
+    public void close() {
+
+        jobExecutor.shutdownNow();
+        insertExecutor.shutdown();
+    }
+
+    /**
+     * 解析文件并分块插入, 等待全部块插入后结束
+     *
+     * @param progress 导入进度
+     * @param file     临时文件
+     * @param writer   插入一块单词
+     */
+    private void run(ImportProgress progress, File file, Consumer<List<WordEntity>> writer) {
+
+        progress.start();
+        List<Future<?>> pending = new ArrayList<>();
+        List<WordEntity> chunk = new ArrayList<>(batchSize);
+        int maxBytes = maxPacketKb * 1024;
+        try (CountingInputStream in = new CountingInputStream(new FileInputStream(file));
+             WordRecordReader reader = new WordRecordReader(
+                 new InputStreamReader(in, StandardCharsets.UTF_8), progress.getFormat())) {
+            int bytes = 0;
+            long rows = 0;
+            WordEntity entity;
+            while ((entity = reader.next()) != null) {
+                rows++;
+                String error = validate(entity);
+                if (error != null) {
+                    progress.getInvalid().incrementAndGet();
+                    progress.error("第" + reader.getRecordLine() + "行: " + error);
+                } else if (!index.reserve(entity.getWord())) {
+                    progress.getDuplicates().incrementAndGet();
+                } else {
+                    int rowBytes = ROW_OVERHEAD + length(entity.getWord()) + length(entity.getSound()) +
+                        length(entity.getTranslation()) + length(entity.getRemark());
+                    if (!chunk.isEmpty() && (chunk.size() >= batchSize || bytes + rowBytes > maxBytes)) {
+                        pending.add(submitChunk(chunk, writer, progress));
+                        chunk = new ArrayList<>(batchSize);
+                        bytes = 0;
+                    }
+                    prepare(entity);
+                    chunk.add(entity);
+                    bytes += rowBytes;
+                }
+                if ((rows & 1023) == 0) {
+                    progress.read(rows, in.count);
+                    pending.removeIf(Future::isDone);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pending.add(submitChunk(chunk, writer, progress));
+                chunk = new ArrayList<>();
+            }
+            progress.read(rows, in.count);
+            for (Future<?> future : pending) {
+                future.get();
+            }
+            progress.finish(ImportProgress.DONE);
+            log.info("导入单词: {}, 记录: {}条, 插入: {}个, 重复: {}个, 无效: {}条, 失败: {}个", progress.getFileName(),
+                rows, progress.getInserted(), progress.getDuplicates(), progress.getInvalid(), progress.getFailed());
+        } catch (IOException | RuntimeException | ExecutionException e) {
+            progress.error("导入失败: " + e.getMessage());
+            progress.finish(ImportProgress.FAILED);
+            log.error("导入单词失败: " + progress.getFileName(), e);
+        } catch (InterruptedException e) {
+            progress.finish(ImportProgress.FAILED);
+            Thread.currentThread().interrupt();
+        } finally {
+            // 中途失败时, 还没提交的单词不会插入, 释放占用
+            chunk.forEach(entity -> index.release(entity.getWord()));
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 提交一块单词, 线程池队列满时由当前线程插入
+     *
+     * @param chunk    单词
+     * @param writer   插入一块单词
+     * @param progress 导入进度
+     * @return java.util.concurrent.Future<?>
+     */
+    private Future<?> submitChunk(List<WordEntity> chunk, Consumer<List<WordEntity>> writer,
+        ImportProgress progress) {
+
+        return insertExecutor.submit(() -> {
+            try {
+                writer.accept(chunk);
+                progress.getInserted().addAndGet(chunk.size());
+            } catch (RuntimeException e) {
+                chunk.forEach(entity -> index.release(entity.getWord()));
+                progress.getFailed().addAndGet(chunk.size());
+                progress.error("插入失败: " + chunk.size() + "个, 第一个单词: " + chunk.get(0).getWord() +
+                    ", 原因: " + e.getMessage());
+                log.error("导入单词时插入失败: " + chunk.size() + "个", e);
+            }
+        });
+    }
+
+    /**
+     * 校验单词, 长度与word表的字段长度一致
+     *
+     * @param entity 单词
+     * @return java.lang.String 错误信息, 没有错误时为NULL
+     */
+    private static String validate(WordEntity entity) {
+
+        if (entity.getWord() == null) {
+            return "单词不能为空";
+        }
+        if (entity.getTranslation() == null) {
+            return "翻译不能为空: " + entity.getWord();
+        }
+        if (entity.getWord().length() > 100 || (entity.getSound() != null && entity.getSound().length() > 100) ||
+            entity.getTranslation().length() > 255 ||
+            (entity.getRemark() != null && entity.getRemark().length() > 255)) {
+            return "字段过长: " + entity.getWord();
+        }
+        return null;
+    }
+
+    /**
+     * 设置批量插入的默认值, 与新增单个单词一致: 计划开始时间为明天
+     *
+     * @param entity 单词
+     */
+    public static void prepare(WordEntity entity) {
+
+        Date startDate = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        entity.setId(IDUtils.getId());
+        entity.setSchedule(0);
+        entity.setStartDate(startDate);
+        entity.setDueDay(startDate);
+        entity.setDelFlag(false);
+    }
+
+    private static int length(String value) {
+
+        return value == null ? 0 : value.length() * 3;
+    }
+
+    /**
+     * 移除已结束的最早的导入进度, 调用方需持有jobs的锁
+     */
+    private void removeFinished() {
+
+        Iterator<ImportProgress> iterator = jobs.values().iterator();
+        while (jobs.size() >= MAX_JOBS && iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 统计已读取字节数的输入流, 用于导入进度
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
\ No newline at end of file
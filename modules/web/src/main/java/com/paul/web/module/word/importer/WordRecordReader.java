@@ -0,0 +1,400 @@
+package com.paul.web.module.word.importer;
+
+import com.paul.web.module.word.entity.WordEntity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 流式读取导入文件, 每次读取一条记录并转为单词, 内存占用与文件大小无关
+ * 三种格式用同一个解析: 字段以分隔符隔开, 以双引号开头的字段可以包含分隔符和换行, 双引号内的双引号写两次
+ * 第一条记录中有单词列名(word或单词)时作为表头, 按列名对应字段; 否则按顺序: 单词, 翻译, 音标, 备注
+ * Anki格式还会读取文件头: separator(分隔符), html(是否去掉HTML标签), columns(表头), guid/notetype/deck/tags column(跳过的列)
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/31 09:50
+ */
+public class WordRecordReader implements Closeable {
+
+    /**
+     * 单词的字段下标
+     */
+    private static final int WORD = 0, SOUND = 1, TRANSLATION = 2, REMARK = 3;
+
+    /**
+     * 没有表头时各列对应的字段
+     */
+    private static final int[] DEFAULT_ORDER = {WORD, TRANSLATION, SOUND, REMARK};
+
+    /**
+     * HTML中的换行标签, 替换为空格
+     */
+    private static final Pattern HTML_BREAK = Pattern.compile("(?i)<br\\s*/?>|</div>|</p>");
+
+    /**
+     * 其他HTML标签, 直接去掉
+     */
+    private static final Pattern HTML_TAG = Pattern.compile("<[^>]*>");
+
+    private final Reader reader;
+
+    private final ImportFormat format;
+
+    /**
+     * 读取缓冲区
+     */
+    private final char[] buffer = new char[8192];
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * 回退的一个字符, 没有时为-2
+     */
+    private int pushback = -2;
+
+    /**
+     * 当前字段
+     */
+    private final StringBuilder field = new StringBuilder();
+
+    private char separator;
+
+    /**
+     * 是否去掉HTML标签
+     */
+    private boolean html;
+
+    /**
+     * 跳过的列(从0开始)
+     */
+    private final Set<Integer> skipped = new HashSet<>();
+
+    /**
+     * 表头中各列对应的字段, 没有表头时为NULL
+     */
+    private int[] header;
+
+    /**
+     * 是否已读到第一条记录
+     */
+    private boolean started;
+
+    /**
+     * 当前行号
+     */
+    private long line = 1;
+
+    /**
+     * 当前记录开始的行号
+     */
+    private long recordLine;
+
+    public WordRecordReader(Reader reader, ImportFormat format) {
+
+        this.reader = reader;
+        this.format = format;
+        this.separator = format.getSeparator();
+        this.html = format == ImportFormat.ANKI;
+    }
+
+    /**
+     * 读取下一个单词, 跳过空行和表头, 字段未校验
+     *
+     * @return com.paul.web.module.word.entity.WordEntity 读完时为NULL
+     * @throws java.io.IOException 读取失败
+     */
+    public WordEntity next() throws IOException {
+
+        List<String> fields;
+        while ((fields = readRecord()) != null) {
+            if (fields.stream().allMatch(value -> value.trim().isEmpty())) {
+                continue;
+            }
+            if (!started) {
+                started = true;
+                if (header == null && (header = parseHeader(fields)) != null) {
+                    continue;
+                }
+            }
+            return toEntity(fields);
+        }
+        return null;
+    }
+
+    /**
+     * 当前记录开始的行号, 用于错误信息
+     *
+     * @return long
+     */
+    public long getRecordLine() {
+
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        reader.close();
+    }
+
+    /**
+     * 读取一条记录的全部字段, Anki文件头返回空列表
+     *
+     * @return java.util.List<java.lang.String> 读完时为NULL
+     * @throws java.io.IOException 读取失败
+     */
+    private List<String> readRecord() throws IOException {
+
+        int c = read();
+        if (c == '\uFEFF' && !started && line == 1) {
+            // 跳过UTF-8的BOM, 如Excel保存的CSV
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>(4);
+        if (format == ImportFormat.ANKI && !started && c == '#') {
+            parseDirective(readLine());
+            return fields;
+        }
+        field.setLength(0);
+        boolean quoted = false;
+        boolean inQuotes = false;
+        while (c != -1) {
+            if (inQuotes) {
+                if (c == '"') {
+                    int n = read();
+                    if (n != '"') {
+                        inQuotes = false;
+                        c = n;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            } else if (c == '"' && !quoted && field.length() == 0) {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+                quoted = false;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && (c = read()) != '\n') {
+                    pushback = c;
+                }
+                line++;
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * 读取到行尾, 用于Anki文件头
+     *
+     * @return java.lang.String
+     * @throws java.io.IOException 读取失败
+     */
+    private String readLine() throws IOException {
+
+        field.setLength(0);
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        line++;
+        return field.toString();
+    }
+
+    /**
+     * 解析Anki文件头, 如: separator:tab, html:true, columns:Front	Back, guid column:1
+     *
+     * @param directive 去掉#后的一行
+     */
+    private void parseDirective(String directive) {
+
+        int colon = directive.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+        String key = directive.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        String value = directive.substring(colon + 1);
+        switch (key) {
+            case "separator":
+                separator = parseSeparator(value.trim());
+                break;
+            case "html":
+                html = Boolean.parseBoolean(value.trim());
+                break;
+            case "columns":
+                header = parseHeader(Arrays.asList(value.split(Pattern.quote(String.valueOf(separator)), -1)));
+                break;
+            default:
+                if (key.endsWith(" column")) {
+                    try {
+                        skipped.add(Integer.parseInt(value.trim()) - 1);
+                    } catch (NumberFormatException ignored) {
+                        // 无法识别的文件头, 忽略
+                    }
+                }
+        }
+    }
+
+    /**
+     * 解析Anki的分隔符: 名称或单个字符
+     *
+     * @param value 分隔符
+     * @return char
+     */
+    private char parseSeparator(String value) {
+
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "tab":
+                return '\t';
+            case "comma":
+                return ',';
+            case "semicolon":
+                return ';';
+            case "space":
+                return ' ';
+            case "pipe":
+                return '|';
+            case "colon":
+                return ':';
+            default:
+                return value.isEmpty() ? separator : value.charAt(0);
+        }
+    }
+
+    /**
+     * 解析表头, 列名不区分大小写
+     *
+     * @param names 列名
+     * @return int[] 各列对应的字段, 不认识的列为-1; 没有单词列时不是表头, 返回NULL
+     */
+    private static int[] parseHeader(List<String> names) {
+
+        int[] columns = new int[names.size()];
+        boolean hasWord = false;
+        for (int i = 0; i < columns.length; i++) {
+            switch (names.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "word":
+                case "单词":
+                case "front":
+                    columns[i] = WORD;
+                    hasWord = true;
+                    break;
+                case "sound":
+                case "phonetic":
+                case "音标":
+                    columns[i] = SOUND;
+                    break;
+                case "translation":
+                case "meaning":
+                case "翻译":
+                case "back":
+                    columns[i] = TRANSLATION;
+                    break;
+                case "remark":
+                case "备注":
+                    columns[i] = REMARK;
+                    break;
+                default:
+                    columns[i] = -1;
+            }
+        }
+        return hasWord ? columns : null;
+    }
+
+    /**
+     * 按表头或默认顺序把字段转为单词, 空字段为NULL
+     *
+     * @param fields 字段
+     * @return com.paul.web.module.word.entity.WordEntity
+     */
+    private WordEntity toEntity(List<String> fields) {
+
+        String[] values = new String[4];
+        int k = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (skipped.contains(i)) {
+                continue;
+            }
+            int target = header != null ? (i < header.length ? header[i] : -1) :
+                (k < DEFAULT_ORDER.length ? DEFAULT_ORDER[k] : -1);
+            k++;
+            if (target >= 0 && values[target] == null) {
+                values[target] = clean(fields.get(i));
+            }
+        }
+        WordEntity entity = new WordEntity();
+        entity.setWord(values[WORD]);
+        entity.setSound(values[SOUND]);
+        entity.setTranslation(values[TRANSLATION]);
+        entity.setRemark(values[REMARK]);
+        return entity;
+    }
+
+    /**
+     * 去掉首尾空白, 需要时去掉HTML标签并转换常用实体
+     *
+     * @param value 字段
+     * @return java.lang.String 空字段为NULL
+     */
+    private String clean(String value) {
+
+        if (html && value.indexOf('<') >= 0) {
+            value = HTML_TAG.matcher(HTML_BREAK.matcher(value).replaceAll(" ")).replaceAll("");
+        }
+        if (html && value.indexOf('&') >= 0) {
+            value = value.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">")
+                .replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&");
+        }
+        value = value.trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 读取一个字符
+     *
+     * @return int 读完时为-1
+     * @throws java.io.IOException 读取失败
+     */
+    private int read() throws IOException {
+
+        if (pushback != -2) {
+            int c = pushback;
+            pushback = -2;
+            return c;
+        }
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package com.paul.web.module.word.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器, 判断不存在时一定不存在, 判断存在时可能误判
+ * 位数组用AtomicLongArray, 并发添加时用CAS置位, 不会丢失; 不支持删除, 删除后由WordIndex按需重建
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/30 15:20
+ */
+public class BloomFilter {
+
+    /**
+     * 位数组
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * 位数
+     */
+    private final long bitSize;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int hashCount;
+
+    /**
+     * 预计的元素数量, 超过后误判率升高
+     */
+    private final int capacity;
+
+    /**
+     * 创建布隆过滤器
+     *
+     * @param capacity 预计的元素数量
+     * @param fpp      预计数量下的误判率, 如0.01
+     */
+    public BloomFilter(int capacity, double fpp) {
+
+        this.capacity = Math.max(capacity, 1);
+        long m = (long) Math.ceil(-this.capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min((m + 63) >>> 6, Integer.MAX_VALUE >>> 1);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / this.capacity * Math.log(2)));
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param value 元素
+     */
+    public void put(String value) {
+
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(h1, h2, i);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old;
+            do {
+                old = bits.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    /**
+     * 元素是否可能存在
+     *
+     * @param value 元素
+     * @return boolean false: 一定不存在, true: 可能存在
+     */
+    public boolean mightContain(String value) {
+
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(h1, h2, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * 第i个哈希函数的位下标, 用两个哈希值组合出多个哈希函数: h1 + i * h2
+     *
+     * @param h1 哈希值1
+     * @param h2 哈希值2
+     * @param i  第几个哈希函数
+     * @return long
+     */
+    private long index(int h1, int h2, int i) {
+
+        int combined = h1 + i * h2;
+        return (combined < 0 ? ~combined : combined) % bitSize;
+    }
+
+    /**
+     * 64位哈希: UTF-8字节的FNV-1a, 再用MurmurHash3的fmix64打散
+     *
+     * @param value 元素
+     * @return long
+     */
+    private static long hash(String value) {
+
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
\ No newline at end of file
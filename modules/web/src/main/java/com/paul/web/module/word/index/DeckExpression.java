@@ -0,0 +1,197 @@
+package com.paul.web.module.word.index;
+
+import com.paul.common.exception.CustomException;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 牌组表达式, 用牌组名称和运算符组合牌组, 如: (cet4 | cet6) & !已掌握
+ * 运算符: !(非), &(与), |(或), 优先级从高到低, 可以用括号; 牌组名称不能包含空白和运算符
+ * 求值时每个牌组是一个位图, 非运算相对于给定的全集(如今日单词)
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 11:00
+ */
+public final class DeckExpression {
+
+    /**
+     * 运算符和括号
+     */
+    private static final String OPERATORS = "!&|()";
+
+    /**
+     * 表达式原文
+     */
+    private final String text;
+
+    /**
+     * 语法树
+     */
+    private final Node root;
+
+    /**
+     * 引用的牌组名称
+     */
+    private final Set<String> names = new LinkedHashSet<>();
+
+    /**
+     * 解析时的位置
+     */
+    private int position;
+
+    private DeckExpression(String text) {
+
+        this.text = text;
+        this.root = parseOr();
+        skipBlank();
+        if (position < text.length()) {
+            throw error("多余的字符");
+        }
+    }
+
+    /**
+     * 解析表达式
+     *
+     * @param text 表达式
+     * @return com.paul.web.module.word.index.DeckExpression
+     */
+    public static DeckExpression parse(String text) {
+
+        return new DeckExpression(text);
+    }
+
+    /**
+     * 是否是合法的牌组名称: 不为空, 不包含空白和运算符
+     *
+     * @param name 牌组名称
+     * @return boolean
+     */
+    public static boolean isName(String name) {
+
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!isNameChar(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 引用的牌组名称
+     *
+     * @return java.util.Set<java.lang.String>
+     */
+    public Set<String> getNames() {
+
+        return names;
+    }
+
+    /**
+     * 求值
+     *
+     * @param decks    牌组名称对应的位图, 不存在的牌组为空位图
+     * @param universe 全集, 结果是它的子集
+     * @return com.paul.web.module.word.index.RoaringBitmap
+     */
+    public RoaringBitmap evaluate(Function<String, RoaringBitmap> decks, RoaringBitmap universe) {
+
+        return RoaringBitmap.and(root.evaluate(decks, universe), universe);
+    }
+
+    @Override
+    public String toString() {
+
+        return text;
+    }
+
+    private Node parseOr() {
+
+        Node left = parseAnd();
+        while (accept('|')) {
+            Node l = left;
+            Node r = parseAnd();
+            left = (decks, universe) -> RoaringBitmap.or(l.evaluate(decks, universe), r.evaluate(decks, universe));
+        }
+        return left;
+    }
+
+    private Node parseAnd() {
+
+        Node left = parseNot();
+        while (accept('&')) {
+            Node l = left;
+            Node r = parseNot();
+            left = (decks, universe) -> RoaringBitmap.and(l.evaluate(decks, universe), r.evaluate(decks, universe));
+        }
+        return left;
+    }
+
+    private Node parseNot() {
+
+        if (accept('!')) {
+            Node operand = parseNot();
+            return (decks, universe) -> RoaringBitmap.andNot(universe, operand.evaluate(decks, universe));
+        }
+        if (accept('(')) {
+            Node inner = parseOr();
+            if (!accept(')')) {
+                throw error("缺少右括号");
+            }
+            return inner;
+        }
+        skipBlank();
+        int start = position;
+        while (position < text.length() && isNameChar(text.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw error("缺少牌组名称");
+        }
+        String name = text.substring(start, position);
+        names.add(name);
+        return (decks, universe) -> decks.apply(name);
+    }
+
+    /**
+     * 跳过空白后, 下一个字符是c时跳过它
+     */
+    private boolean accept(char c) {
+
+        skipBlank();
+        if (position < text.length() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipBlank() {
+
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private CustomException error(String message) {
+
+        return new CustomException("牌组表达式错误: " + message + ", 位置: " + (position + 1) + ", 表达式: " + text);
+    }
+
+    private static boolean isNameChar(char c) {
+
+        return !Character.isWhitespace(c) && OPERATORS.indexOf(c) < 0;
+    }
+
+    /**
+     * 语法树节点
+     */
+    private interface Node {
+
+        RoaringBitmap evaluate(Function<String, RoaringBitmap> decks, RoaringBitmap universe);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,307 @@
+package com.paul.web.module.word.index;
+
+import com.paul.common.exception.CustomException;
+import com.paul.web.module.word.dao.DeckDao;
+import com.paul.web.module.word.dao.WordDeckDao;
+import com.paul.web.module.word.entity.WordEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 牌组索引, 每个牌组的单词是一个压缩位图(RoaringBitmap), 启动时从word_deck表加载, 之后随牌组的修改同步更新
+ * 位图中存放的是单词的整数编号: 32位的单词ID在内存中映射为从0开始连续分配的整数, 只在本进程内有效, 不写入数据库
+ * 只有加入过牌组的单词才分配编号, 单词删除后编号被回收, 分配新编号时优先复用
+ * 所以编号的范围与牌组中的单词数量有关, 不会随删除和筛选一直增长
+ * 按牌组表达式筛选今日单词时, 用今日单词的编号作为全集, 在内存中求值并取交集, 不需要多表关联查询
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 11:30
+ */
+@Slf4j
+@Component
+public class DeckIndex {
+
+    /**
+     * 空位图, 不存在的牌组
+     */
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    @Autowired
+    private DeckDao deckDao;
+
+    @Autowired
+    private WordDeckDao wordDeckDao;
+
+    /**
+     * 单词ID到整数编号
+     */
+    private final Map<String, Integer> numbers = new HashMap<>();
+
+    /**
+     * 已回收的整数编号, 分配时优先复用
+     */
+    private final Deque<Integer> freeNumbers = new ArrayDeque<>();
+
+    /**
+     * 下一个整数编号, 没有回收的编号时才使用
+     */
+    private int nextNumber;
+
+    /**
+     * 读写锁, 位图, 牌组名称和整数编号由它保护, 筛选时加读锁, 修改牌组时加写锁
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 牌组名称到牌组ID
+     */
+    private final Map<String, String> deckIds = new HashMap<>();
+
+    /**
+     * 牌组ID到牌组名称
+     */
+    private final Map<String, String> names = new HashMap<>();
+
+    /**
+     * 牌组ID到牌组的单词
+     */
+    private final Map<String, RoaringBitmap> bitmaps = new HashMap<>();
+
+    /**
+     * 加载全部牌组和单词
+     */
+    @PostConstruct
+    public void load() {
+
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            deckDao.listDecks().forEach(deck -> putDeck(deck.getId(), deck.getName()));
+            int[] count = {0};
+            wordDeckDao.scan(context -> {
+                RoaringBitmap bitmap = bitmaps.get(context.getResultObject().getDeckId());
+                // 已删除的牌组不加载
+                if (bitmap != null) {
+                    bitmap.add(number(context.getResultObject().getWordId()));
+                    count[0]++;
+                }
+            });
+            long bytes = bitmaps.values().stream().mapToLong(RoaringBitmap::bytes).sum();
+            log.info("加载牌组索引: {}个牌组, {}个单词, {}字节, 耗时: {}ms", bitmaps.size(), count[0], bytes,
+                System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 新增或重命名牌组
+     *
+     * @param deckId 牌组ID
+     * @param name   名称
+     */
+    public void putDeck(String deckId, String name) {
+
+        lock.writeLock().lock();
+        try {
+            String old = names.put(deckId, name);
+            if (old != null) {
+                deckIds.remove(old);
+            }
+            deckIds.put(name, deckId);
+            bitmaps.computeIfAbsent(deckId, id -> new RoaringBitmap());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除牌组
+     *
+     * @param deckId 牌组ID
+     */
+    public void removeDeck(String deckId) {
+
+        lock.writeLock().lock();
+        try {
+            String name = names.remove(deckId);
+            if (name != null) {
+                deckIds.remove(name);
+            }
+            bitmaps.remove(deckId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把单词加入牌组
+     *
+     * @param deckId  牌组ID
+     * @param wordIds 单词ID
+     */
+    public void addWords(String deckId, Collection<String> wordIds) {
+
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap bitmap = bitmaps.get(deckId);
+            if (bitmap != null) {
+                wordIds.forEach(wordId -> bitmap.add(number(wordId)));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把单词移出牌组
+     *
+     * @param deckId  牌组ID
+     * @param wordIds 单词ID
+     */
+    public void removeWords(String deckId, Collection<String> wordIds) {
+
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap bitmap = bitmaps.get(deckId);
+            if (bitmap != null) {
+                wordIds.forEach(wordId -> {
+                    Integer number = numbers.get(wordId);
+                    if (number != null) {
+                        bitmap.remove(number);
+                    }
+                });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除单词: 移出全部牌组, 并回收整数编号
+     *
+     * @param wordIds 已删除的单词ID
+     */
+    public void deleteWords(Collection<String> wordIds) {
+
+        lock.writeLock().lock();
+        try {
+            for (String wordId : wordIds) {
+                Integer number = numbers.remove(wordId);
+                if (number != null) {
+                    bitmaps.values().forEach(bitmap -> bitmap.remove(number));
+                    freeNumbers.push(number);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 牌组的单词数量
+     *
+     * @param deckId 牌组ID
+     * @return int
+     */
+    public int size(String deckId) {
+
+        lock.readLock().lock();
+        try {
+            return bitmaps.getOrDefault(deckId, EMPTY).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 解析牌组表达式, 并检查引用的牌组都存在
+     *
+     * @param expression 牌组表达式
+     * @return com.paul.web.module.word.index.DeckExpression
+     */
+    public DeckExpression parse(String expression) {
+
+        DeckExpression parsed = DeckExpression.parse(expression);
+        lock.readLock().lock();
+        try {
+            for (String name : parsed.getNames()) {
+                if (!deckIds.containsKey(name)) {
+                    throw new CustomException("牌组不存在: " + name);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return parsed;
+    }
+
+    /**
+     * 筛选属于牌组表达式的单词, 保持原来的顺序; 表达式中已被删除的牌组按空牌组计算
+     * 没有编号的单词不属于任何牌组, 不为它们分配编号, 而是用一个还未分配的编号代表它们求值一次
+     *
+     * @param words      单词, 如今日单词
+     * @param expression 牌组表达式
+     * @param <T>        单词类型
+     * @return java.util.List<T>
+     */
+    public <T extends WordEntity> List<T> filter(List<T> words, DeckExpression expression) {
+
+        int[] wordNumbers = new int[words.size()];
+        RoaringBitmap matched;
+        int unassigned;
+        // 编号只在写锁下分配和回收, 读锁内编号与位图一致
+        lock.readLock().lock();
+        try {
+            unassigned = nextNumber;
+            for (int i = 0; i < wordNumbers.length; i++) {
+                wordNumbers[i] = numbers.getOrDefault(words.get(i).getId(), unassigned);
+            }
+            // 从小到大加入时总是追加到数组块的末尾, 不需要移动元素; 未分配的编号最大, 最后加入
+            int[] sorted = wordNumbers.clone();
+            Arrays.sort(sorted);
+            RoaringBitmap universe = new RoaringBitmap();
+            for (int number : sorted) {
+                universe.add(number);
+            }
+            matched = expression.evaluate(name -> {
+                String deckId = deckIds.get(name);
+                return deckId == null ? EMPTY : bitmaps.get(deckId);
+            }, universe);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<T> result = new ArrayList<>(wordNumbers.length);
+        for (int i = 0; i < wordNumbers.length; i++) {
+            if (matched.contains(wordNumbers[i])) {
+                result.add(words.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 单词ID的整数编号, 没有时分配一个, 优先复用已回收的编号; 调用时必须持有写锁
+     *
+     * @param wordId 单词ID
+     * @return int
+     */
+    private int number(String wordId) {
+
+        return numbers.computeIfAbsent(wordId,
+            id -> freeNumbers.isEmpty() ? nextNumber++ : freeNumbers.pop());
+    }
+}
\ No newline at end of file
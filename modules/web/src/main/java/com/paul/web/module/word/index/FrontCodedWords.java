@@ -0,0 +1,273 @@
+package com.paul.web.module.word.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 不可变的有序单词表, 前缀压缩(front coding)存储在一个字节数组中
+ * 每16个单词为一块, 块的第一个单词完整存储(长度 + UTF-8字节), 其余单词只存与前一个单词相同的前缀长度和剩余字节,
+ * 长度都是变长整数; 有序的单词前缀大多相同, 每个单词平均只占几个字节
+ * 前缀查询: 二分查找块的第一个单词, 再从该块开始顺序解码, 只解码十几个单词, 与单词总数无关
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/2 09:40
+ */
+public final class FrontCodedWords {
+
+    /**
+     * 每块的单词数
+     */
+    private static final int BLOCK = 16;
+
+    /**
+     * 空单词表
+     */
+    public static final FrontCodedWords EMPTY = build(Collections.emptyIterator());
+
+    /**
+     * 前缀压缩后的单词
+     */
+    private final byte[] data;
+
+    /**
+     * 每块在data中的开始位置
+     */
+    private final int[] blocks;
+
+    /**
+     * 单词数
+     */
+    private final int size;
+
+    private FrontCodedWords(byte[] data, int[] blocks, int size) {
+
+        this.data = data;
+        this.blocks = blocks;
+        this.size = size;
+    }
+
+    /**
+     * 构建单词表
+     *
+     * @param sorted 按String.compareTo从小到大排序且不重复的单词
+     * @return com.paul.web.module.word.index.FrontCodedWords
+     */
+    public static FrontCodedWords build(Iterator<String> sorted) {
+
+        byte[] data = new byte[1024];
+        int[] blocks = new int[16];
+        int position = 0;
+        int size = 0;
+        byte[] previous = new byte[0];
+        while (sorted.hasNext()) {
+            byte[] bytes = sorted.next().getBytes(StandardCharsets.UTF_8);
+            if (data.length - position < bytes.length + 10) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, position + bytes.length + 10));
+            }
+            if (size % BLOCK == 0) {
+                if (size / BLOCK == blocks.length) {
+                    blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                }
+                blocks[size / BLOCK] = position;
+                position = writeVarint(data, position, bytes.length);
+                System.arraycopy(bytes, 0, data, position, bytes.length);
+                position += bytes.length;
+            } else {
+                int common = 0;
+                int max = Math.min(previous.length, bytes.length);
+                while (common < max && previous[common] == bytes[common]) {
+                    common++;
+                }
+                position = writeVarint(data, position, common);
+                position = writeVarint(data, position, bytes.length - common);
+                System.arraycopy(bytes, common, data, position, bytes.length - common);
+                position += bytes.length - common;
+            }
+            previous = bytes;
+            size++;
+        }
+        return new FrontCodedWords(Arrays.copyOf(data, position),
+            Arrays.copyOf(blocks, (size + BLOCK - 1) / BLOCK), size);
+    }
+
+    /**
+     * 单词数
+     *
+     * @return int
+     */
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * 占用的字节数(不含对象头)
+     *
+     * @return long
+     */
+    public long bytes() {
+
+        return data.length + blocks.length * 4L;
+    }
+
+    /**
+     * 是否包含某个单词
+     *
+     * @param word 单词
+     * @return boolean
+     */
+    public boolean contains(String word) {
+
+        boolean[] found = {false};
+        scan(word, s -> {
+            found[0] = s.equals(word);
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * 查询以prefix开头的单词, 按顺序加入out
+     *
+     * @param prefix 前缀
+     * @param limit  out最多有多少个单词
+     * @param skip   跳过的单词, 如已删除的单词
+     * @param out    结果
+     */
+    public void prefix(String prefix, int limit, Predicate<String> skip, List<String> out) {
+
+        if (out.size() >= limit) {
+            return;
+        }
+        scan(prefix, word -> {
+            if (!word.startsWith(prefix)) {
+                return false;
+            }
+            if (!skip.test(word)) {
+                out.add(word);
+            }
+            return out.size() < limit;
+        });
+    }
+
+    /**
+     * 按顺序遍历全部单词, 用于合并后重建
+     *
+     * @param consumer 每个单词的处理
+     */
+    public void forEach(Consumer<String> consumer) {
+
+        scanFrom(0, word -> {
+            consumer.accept(word);
+            return true;
+        });
+    }
+
+    /**
+     * 从第一个不小于from的单词开始按顺序遍历
+     *
+     * @param from    开始的单词
+     * @param visitor 返回false时停止
+     */
+    private void scan(String from, Predicate<String> visitor) {
+
+        if (size == 0) {
+            return;
+        }
+        // 最后一个第一个单词小于from的块, 没有时从第一块开始
+        int low = 0;
+        int high = blocks.length - 1;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (head(mid).compareTo(from) < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        scanFrom(block, word -> word.compareTo(from) < 0 || visitor.test(word));
+    }
+
+    /**
+     * 从某块开始顺序解码
+     *
+     * @param block   块号
+     * @param visitor 返回false时停止
+     */
+    private void scanFrom(int block, Predicate<String> visitor) {
+
+        byte[] current = new byte[64];
+        int length = 0;
+        int position = blocks[block];
+        for (int i = block * BLOCK; i < size; i++) {
+            int common = 0;
+            if (i % BLOCK != 0) {
+                common = readVarint(position);
+                position += varintSize(common);
+            }
+            int suffix = readVarint(position);
+            position += varintSize(suffix);
+            length = common + suffix;
+            if (current.length < length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, length));
+            }
+            System.arraycopy(data, position, current, common, suffix);
+            position += suffix;
+            if (!visitor.test(new String(current, 0, length, StandardCharsets.UTF_8))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 解码某块的第一个单词
+     *
+     * @param block 块号
+     * @return java.lang.String
+     */
+    private String head(int block) {
+
+        int position = blocks[block];
+        int length = readVarint(position);
+        return new String(data, position + varintSize(length), length, StandardCharsets.UTF_8);
+    }
+
+    private int readVarint(int position) {
+
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int varintSize(int value) {
+
+        int n = 1;
+        while ((value >>>= 7) != 0) {
+            n++;
+        }
+        return n;
+    }
+
+    private static int writeVarint(byte[] data, int position, int value) {
+
+        while ((value & ~0x7f) != 0) {
+            data[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,536 @@
+package com.paul.web.module.word.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 压缩位图(Roaring), 存放非负整数集合
+ * 按高16位分块, 每块存放低16位: 不超过4096个时为有序的char数组(每个2字节), 超过时为65536位的位图(固定8KB),
+ * 稀疏和稠密的集合都很省内存; 交集, 并集和差集按块合并, 同一块内是数组归并或按long计算
+ * 不是线程安全的, 由调用方加锁; 运算返回新的位图, 不修改参数
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 10:10
+ */
+public final class RoaringBitmap {
+
+    /**
+     * 数组块的最大元素数, 超过时改为位图块, 此时两种块都是8KB
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    /**
+     * 每块的高16位, 从小到大
+     */
+    private char[] keys = new char[4];
+
+    /**
+     * 每块的低16位
+     */
+    private Container[] containers = new Container[4];
+
+    /**
+     * 块数
+     */
+    private int size;
+
+    /**
+     * 加入一个数
+     *
+     * @param value 非负整数
+     */
+    public void add(int value) {
+
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) value);
+        } else {
+            insert(-i - 1, key, new ArrayContainer().add((char) value));
+        }
+    }
+
+    /**
+     * 移除一个数
+     *
+     * @param value 非负整数
+     */
+    public void remove(int value) {
+
+        int i = find((char) (value >>> 16));
+        if (i >= 0) {
+            Container container = containers[i].remove((char) value);
+            if (container.cardinality == 0) {
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+                containers[--size] = null;
+            } else {
+                containers[i] = container;
+            }
+        }
+    }
+
+    /**
+     * 是否包含某个数
+     *
+     * @param value 非负整数
+     * @return boolean
+     */
+    public boolean contains(int value) {
+
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /**
+     * 元素个数
+     *
+     * @return int
+     */
+    public int cardinality() {
+
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * 按从小到大遍历
+     *
+     * @param consumer 每个数的处理
+     */
+    public void forEach(IntConsumer consumer) {
+
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * 交集
+     *
+     * @param a 位图
+     * @param b 位图
+     * @return com.paul.web.module.word.index.RoaringBitmap
+     */
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i++].and(b.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 并集
+     *
+     * @param a 位图
+     * @param b 位图
+     * @return com.paul.web.module.word.index.RoaringBitmap
+     */
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.containers[i++].copy());
+            } else if (i == a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.containers[j++].copy());
+            } else {
+                result.append(a.keys[i], a.containers[i++].or(b.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 差集, 在a中但不在b中
+     *
+     * @param a 位图
+     * @param b 位图
+     * @return com.paul.web.module.word.index.RoaringBitmap
+     */
+    public static RoaringBitmap andNot(RoaringBitmap a, RoaringBitmap b) {
+
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                result.append(a.keys[i], a.containers[i].andNot(b.containers[j]));
+            } else {
+                result.append(a.keys[i], a.containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 占用的字节数(不含对象头)
+     *
+     * @return long
+     */
+    public long bytes() {
+
+        long bytes = keys.length * 2L + containers.length * 4L;
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            bytes += container instanceof BitmapContainer ? 8192 : ((ArrayContainer) container).values.length * 2;
+        }
+        return bytes;
+    }
+
+    private int find(char key) {
+
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int i, char key, Container container) {
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    /**
+     * 在末尾追加一块, 空块不追加, 用于按顺序生成运算结果
+     */
+    private void append(char key, Container container) {
+
+        if (container.cardinality > 0) {
+            insert(size, key, container);
+        }
+    }
+
+    /**
+     * 一块中的低16位
+     */
+    private abstract static class Container {
+
+        int cardinality;
+
+        /**
+         * 加入, 元素过多时可能返回另一种块
+         */
+        abstract Container add(char value);
+
+        /**
+         * 移除, 元素变少时可能返回另一种块
+         */
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract void forEach(int high, IntConsumer consumer);
+    }
+
+    /**
+     * 有序数组块
+     */
+    private static final class ArrayContainer extends Container {
+
+        char[] values;
+
+        ArrayContainer() {
+
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(cardinality * 2, 4), ARRAY_MAX));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container and(Container other) {
+
+            if (other instanceof BitmapContainer) {
+                return other.and(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[Math.min(cardinality, array.cardinality)];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < array.cardinality) {
+                if (values[i] < array.values[j]) {
+                    i++;
+                } else if (values[i] > array.values[j]) {
+                    j++;
+                } else {
+                    result[n++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container or(Container other) {
+
+            if (other instanceof BitmapContainer || cardinality + other.cardinality > ARRAY_MAX) {
+                return toBitmap().or(other);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[n++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[n++] = array.values[j++];
+                } else {
+                    result[n++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container andNot(Container other) {
+
+            char[] result = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[n++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container copy() {
+
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(high | values[i]);
+            }
+        }
+
+        BitmapContainer toBitmap() {
+
+            BitmapContainer bitmap = new BitmapContainer(new long[1024]);
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+
+    /**
+     * 位图块, 1024个long
+     */
+    private static final class BitmapContainer extends Container {
+
+        final long[] words;
+
+        BitmapContainer(long[] words) {
+
+            this.words = words;
+        }
+
+        @Override
+        Container add(char value) {
+
+            long before = words[value >>> 6];
+            words[value >>> 6] = before | (1L << value);
+            if (before != words[value >>> 6]) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+
+            long before = words[value >>> 6];
+            words[value >>> 6] = before & ~(1L << value);
+            if (before != words[value >>> 6]) {
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container and(Container other) {
+
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                char[] result = new char[array.cardinality];
+                int n = 0;
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (contains(array.values[i])) {
+                        result[n++] = array.values[i];
+                    }
+                }
+                return new ArrayContainer(result, n);
+            }
+            long[] result = new long[1024];
+            long[] otherWords = ((BitmapContainer) other).words;
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] & otherWords[i];
+            }
+            return new BitmapContainer(result).shrink();
+        }
+
+        @Override
+        Container or(Container other) {
+
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < 1024; i++) {
+                    result[i] |= otherWords[i];
+                }
+            }
+            return new BitmapContainer(result).shrink();
+        }
+
+        @Override
+        Container andNot(Container other) {
+
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < 1024; i++) {
+                    result[i] &= ~otherWords[i];
+                }
+            }
+            return new BitmapContainer(result).shrink();
+        }
+
+        @Override
+        Container copy() {
+
+            BitmapContainer copy = new BitmapContainer(words.clone());
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+
+            for (int i = 0; i < 1024; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(high | (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * 重新统计元素个数, 不超过4096个时改为数组块
+         */
+        Container shrink() {
+
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            cardinality = count;
+            return count <= ARRAY_MAX ? toArray() : this;
+        }
+
+        ArrayContainer toArray() {
+
+            char[] values = new char[cardinality];
+            int[] n = {0};
+            forEach(0, value -> values[n[0]++] = (char) value);
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,528 @@
+package com.paul.web.module.word.index;
+
+import com.paul.web.module.word.dao.WordDao;
+import com.paul.web.module.word.entity.WordEntity;
+import com.paul.web.module.word.entity.WordSearchHit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 单词搜索的倒排索引, 搜索单词, 翻译和备注, 代替不能走索引的LIKE '%x%'
+ * 分词: 英文等按字母和数字切分并转为小写; 中文按字切分出单字和相邻两个字, 搜索时两个字以上只用相邻两个字, 不依赖词典
+ * 每个单词有一个从0递增的文档号, 每个(字段, 词)的倒排表是递增的文档号数组, 新增只需追加; 修改为删除后重新追加,
+ * 删除只做标记, 被删除的文档号较多时再从倒排表中清理, 并把剩余的文档按原顺序重新连续编号,
+ * 所以占用的内存只与单词数量有关, 不会随修改次数增长
+ * 搜索: 多个词都要出现(AND), 得分为各个词的idf乘以出现的最高字段权重(单词3, 翻译2, 备注1), 单词完全相同或前缀相同时加分;
+ * 从最少出现的词的倒排表开始, 按单词, 翻译, 备注的顺序计算, 前几名已不可能被超过时提前结束, 常见词也不用遍历全部
+ * 读写锁: 搜索共享读锁, 修改持有写锁, 修改都很短
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/1 10:40
+ */
+@Slf4j
+@Component
+public class SearchIndex {
+
+    /**
+     * 字段: 单词, 翻译, 备注
+     */
+    private static final int WORD = 0, TRANSLATION = 1, REMARK = 2;
+
+    /**
+     * 倒排表键的字段前缀
+     */
+    private static final char[] FIELD_KEYS = {'w', 't', 'r'};
+
+    /**
+     * 字段权重, 从高到低
+     */
+    private static final double[] FIELD_WEIGHTS = {3, 2, 1};
+
+    /**
+     * 单词与搜索内容完全相同时的加分
+     */
+    private static final double EXACT_BOOST = 10;
+
+    /**
+     * 单词以搜索内容开头时的加分
+     */
+    private static final double PREFIX_BOOST = 2;
+
+    /**
+     * 最多返回的结果数
+     */
+    private static final int MAX_LIMIT = 100;
+
+    /**
+     * 被删除的文档号至少有多少个时才清理
+     */
+    private static final int COMPACT_MIN = 10000;
+
+    @Autowired
+    private WordDao dao;
+
+    /**
+     * 是否使用搜索索引
+     */
+    @Value("${spring.word.search.enabled:true}")
+    private boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 文档号 -> 文档, 删除后为NULL, 清理时替换为只有未删除文档的列表
+     */
+    private List<Doc> docs = new ArrayList<>();
+
+    /**
+     * 单词ID -> 文档号
+     */
+    private final Map<String, Integer> docIds = new HashMap<>();
+
+    /**
+     * 倒排表, 键为字段前缀加词
+     */
+    private final Map<String, IntList> postings = new HashMap<>();
+
+    /**
+     * 被删除但还在倒排表中的文档号数量
+     */
+    private int deleted;
+
+    /**
+     * 是否已加载
+     */
+    private volatile boolean loaded;
+
+    /**
+     * 在后台线程中加载, 百万单词需要十几秒, 不阻塞启动, 加载完成前搜索不可用
+     */
+    @PostConstruct
+    public void start() {
+
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::load, "search-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 加载全部未删除的单词, 加载期间的修改等待加载结束
+     */
+    public void load() {
+
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            dao.scanSearchFields(context -> addDoc(context.getResultObject()));
+            loaded = true;
+            log.info("加载搜索索引: {}个单词, {}个词, 耗时: {}ms", docIds.size(), postings.size(),
+                System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("加载搜索索引失败, 搜索不可用", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 是否可以搜索
+     *
+     * @return boolean
+     */
+    public boolean isLoaded() {
+
+        return loaded;
+    }
+
+    /**
+     * 新增或替换单词, 单词, 翻译和备注需要是完整的值
+     *
+     * @param entity 单词
+     */
+    public void put(WordEntity entity) {
+
+        if (!enabled || entity.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            addDoc(entity);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除单词
+     *
+     * @param id 单词ID
+     */
+    public void remove(Object id) {
+
+        if (!enabled || id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeDoc(String.valueOf(id));
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索
+     *
+     * @param query 搜索内容
+     * @param limit 最多返回的结果数, 不超过100
+     * @return java.util.List<com.paul.web.module.word.entity.WordSearchHit> 按得分从高到低
+     */
+    public List<WordSearchHit> search(String query, int limit) {
+
+        Set<String> tokens = new LinkedHashSet<>();
+        tokenize(query, true, tokens::add);
+        limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String normalized = WordIndex.normalize(query);
+        lock.readLock().lock();
+        try {
+            Term[] terms = new Term[tokens.size()];
+            int i = 0;
+            for (String token : tokens) {
+                Term term = new Term(token);
+                if (term.df == 0) {
+                    return new ArrayList<>();
+                }
+                term.idf = Math.log(1 + (double) docIds.size() / term.df);
+                terms[i++] = term;
+            }
+            Arrays.sort(terms, Comparator.comparingInt(term -> term.df));
+            return collect(terms, normalized, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从最少出现的词开始, 按字段权重从高到低计算得分, 保留得分最高的几个
+     *
+     * @param terms      搜索的词, 按出现次数从少到多
+     * @param normalized 规范化的搜索内容, 用于单词完全相同或前缀相同时加分
+     * @param limit      最多返回的结果数
+     * @return java.util.List<com.paul.web.module.word.entity.WordSearchHit>
+     */
+    private List<WordSearchHit> collect(Term[] terms, String normalized, int limit) {
+
+        Term rarest = terms[0];
+        // 其他词最多能加的分
+        double rest = 0;
+        for (int i = 1; i < terms.length; i++) {
+            rest += terms[i].idf * FIELD_WEIGHTS[WORD];
+        }
+        // 堆顶是当前最差的结果: 得分最低, 得分相同时文档号最大
+        PriorityQueue<double[]> heap = new PriorityQueue<>(limit + 1,
+            Comparator.<double[]>comparingDouble(hit -> hit[0]).thenComparing(hit -> -hit[1]));
+        for (int field = WORD; field <= REMARK; field++) {
+            IntList list = rarest.lists[field];
+            if (list == null) {
+                continue;
+            }
+            double bound = rarest.idf * FIELD_WEIGHTS[field] + rest + (field == WORD ? EXACT_BOOST : 0);
+            for (int k = 0; k < list.size; k++) {
+                if (heap.size() >= limit && heap.peek()[0] >= bound) {
+                    break;
+                }
+                int doc = list.values[k];
+                Doc d = docs.get(doc);
+                if (d == null || rarest.weight(doc, field) > 0) {
+                    // 已删除, 或在更高权重的字段中出现过, 已计算
+                    continue;
+                }
+                double score = rarest.idf * FIELD_WEIGHTS[field];
+                for (int i = 1; i < terms.length && score > 0; i++) {
+                    double weight = terms[i].weight(doc, REMARK + 1);
+                    score = weight == 0 ? 0 : score + terms[i].idf * weight;
+                }
+                if (score == 0) {
+                    continue;
+                }
+                if (field == WORD && d.word != null) {
+                    String word = WordIndex.normalize(d.word);
+                    score += word.equals(normalized) ? EXACT_BOOST : word.startsWith(normalized) ? PREFIX_BOOST : 0;
+                }
+                if (heap.size() < limit) {
+                    heap.add(new double[]{score, doc});
+                } else if (score > heap.peek()[0]) {
+                    heap.poll();
+                    heap.add(new double[]{score, doc});
+                }
+            }
+        }
+        List<double[]> top = new ArrayList<>(heap);
+        top.sort(heap.comparator().reversed());
+        List<WordSearchHit> hits = new ArrayList<>(top.size());
+        for (double[] hit : top) {
+            Doc d = docs.get((int) hit[1]);
+            hits.add(new WordSearchHit(d.id, d.word, d.translation, hit[0]));
+        }
+        return hits;
+    }
+
+    /**
+     * 追加文档, 已有时先删除旧文档, 调用方需持有写锁
+     *
+     * @param entity 单词
+     */
+    private void addDoc(WordEntity entity) {
+
+        String id = String.valueOf(entity.getId());
+        removeDoc(id);
+        int doc = docs.size();
+        docs.add(new Doc(id, entity.getWord(), entity.getTranslation()));
+        docIds.put(id, doc);
+        index(doc, WORD, entity.getWord());
+        index(doc, TRANSLATION, entity.getTranslation());
+        index(doc, REMARK, entity.getRemark());
+    }
+
+    /**
+     * 把一个字段的词加入倒排表
+     *
+     * @param doc   文档号
+     * @param field 字段
+     * @param text  字段的值
+     */
+    private void index(int doc, int field, String text) {
+
+        tokenize(text, false, token ->
+            postings.computeIfAbsent(FIELD_KEYS[field] + token, key -> new IntList()).add(doc));
+    }
+
+    /**
+     * 标记文档已删除, 调用方需持有写锁
+     *
+     * @param id 单词ID
+     */
+    private void removeDoc(String id) {
+
+        Integer doc = docIds.remove(id);
+        if (doc != null) {
+            docs.set(doc, null);
+            deleted++;
+        }
+    }
+
+    /**
+     * 被删除的文档号较多时, 从倒排表中清理, 并把剩余的文档重新连续编号, 调用方需持有写锁
+     * 新文档号按原文档号的顺序分配, 倒排表替换后仍然是递增的
+     */
+    private void compactIfNeeded() {
+
+        if (deleted < Math.max(COMPACT_MIN, docIds.size() / 4)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // 原文档号 -> 新文档号, 已删除的为-1
+        int[] renumber = new int[docs.size()];
+        List<Doc> live = new ArrayList<>(docIds.size());
+        for (int doc = 0; doc < renumber.length; doc++) {
+            Doc d = docs.get(doc);
+            renumber[doc] = d == null ? -1 : live.size();
+            if (d != null) {
+                docIds.put(d.id, live.size());
+                live.add(d);
+            }
+        }
+        postings.values().removeIf(list -> list.renumber(renumber) == 0);
+        docs = live;
+        log.info("清理搜索索引: {}个已删除的文档号, 耗时: {}ms", deleted, System.currentTimeMillis() - start);
+        deleted = 0;
+    }
+
+    /**
+     * 分词, 词都转为小写
+     * 英文等: 连续的字母和数字为一个词; 中文: 连续的汉字切分出单字和相邻两个字,
+     * 搜索时两个字以上只用相邻两个字(都出现时基本就是包含这段文字), 只有一个字时用单字
+     *
+     * @param text     文字, 可为NULL
+     * @param query    是否为搜索内容
+     * @param consumer 每个词的处理
+     */
+    static void tokenize(String text, boolean query, Consumer<String> consumer) {
+
+        if (text == null) {
+            return;
+        }
+        String s = text.toLowerCase(Locale.ROOT);
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            int j = i + 1;
+            if (isHan(c)) {
+                while (j < n && isHan(s.charAt(j))) {
+                    j++;
+                }
+                for (int k = i; k < j; k++) {
+                    if (!query || j - i == 1) {
+                        consumer.accept(s.substring(k, k + 1));
+                    }
+                    if (k + 1 < j) {
+                        consumer.accept(s.substring(k, k + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                while (j < n && Character.isLetterOrDigit(s.charAt(j)) && !isHan(s.charAt(j))) {
+                    j++;
+                }
+                consumer.accept(s.substring(i, j));
+            }
+            i = j;
+        }
+    }
+
+    private static boolean isHan(char c) {
+
+        return c >= '\u2e80' && Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    /**
+     * 搜索的一个词在各字段的倒排表
+     */
+    private class Term {
+
+        /**
+         * 各字段的倒排表, 没有时为NULL
+         */
+        final IntList[] lists = new IntList[FIELD_KEYS.length];
+
+        /**
+         * 出现的次数(含已删除的文档号)
+         */
+        final int df;
+
+        double idf;
+
+        Term(String token) {
+
+            int count = 0;
+            for (int field = WORD; field <= REMARK; field++) {
+                lists[field] = postings.get(FIELD_KEYS[field] + token);
+                count += lists[field] == null ? 0 : lists[field].size;
+            }
+            df = count;
+        }
+
+        /**
+         * 在before之前的字段中出现时的最高权重
+         *
+         * @param doc    文档号
+         * @param before 字段上界(不含)
+         * @return double 没有出现时为0
+         */
+        double weight(int doc, int before) {
+
+            for (int field = WORD; field < before; field++) {
+                if (lists[field] != null && lists[field].contains(doc)) {
+                    return FIELD_WEIGHTS[field];
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 文档: 搜索结果中显示的内容
+     */
+    private static class Doc {
+
+        final String id;
+
+        final String word;
+
+        final String translation;
+
+        Doc(String id, String word, String translation) {
+
+            this.id = id;
+            this.word = word;
+            this.translation = translation;
+        }
+    }
+
+    /**
+     * 递增的文档号数组
+     */
+    private static class IntList {
+
+        int[] values = new int[2];
+
+        int size;
+
+        /**
+         * 追加文档号, 同一个文档的同一个词只追加一次
+         *
+         * @param value 文档号, 不小于已有的文档号
+         */
+        void add(int value) {
+
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size + (size >> 1) + 1);
+            }
+            values[size++] = value;
+        }
+
+        boolean contains(int value) {
+
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        /**
+         * 只保留未删除的文档号, 并换成新的文档号
+         *
+         * @param renumber 原文档号 -> 新文档号, 已删除的为-1, 新文档号与原文档号的顺序相同
+         * @return int 剩余数量
+         */
+        int renumber(int[] renumber) {
+
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                int value = renumber[values[i]];
+                if (value >= 0) {
+                    values[n++] = value;
+                }
+            }
+            size = n;
+            if (values.length > n * 2 + 2) {
+                values = Arrays.copyOf(values, n);
+            }
+            return n;
+        }
+    }
+}
\ No newline at end of file
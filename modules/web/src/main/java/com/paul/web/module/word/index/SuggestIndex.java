@@ -0,0 +1,326 @@
+package com.paul.web.module.word.index;
+
+import com.paul.web.module.word.dao.WordDao;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单词前缀补全和相似单词
+ * 单词(规范化后)存放在不可变的前缀压缩单词表(FrontCodedWords)和字典树(WordTrie)中, 新增和删除先记录在两个小的并发集合里,
+ * 查询时与单词表合并; 改动积累到一定数量后由后台线程合并成新的单词表和字典树, 整体替换, 查询不加锁
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/2 10:30
+ */
+@Slf4j
+@Component
+public class SuggestIndex {
+
+    /**
+     * 最多返回的单词数
+     */
+    private static final int MAX_LIMIT = 50;
+
+    /**
+     * 相似单词的最大编辑距离, 不超过4个字符的单词为1
+     */
+    private static final int MAX_DISTANCE = 2;
+
+    /**
+     * 最多返回的相似单词数
+     */
+    private static final int MAX_SIMILAR = 10;
+
+    @Autowired
+    private WordDao dao;
+
+    /**
+     * 是否使用前缀补全
+     */
+    @Value("${spring.word.suggest.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 改动积累到多少个时重建单词表
+     */
+    @Value("${spring.word.suggest.rebuild-size:2000}")
+    private int rebuildSize;
+
+    /**
+     * 当前的单词表, 字典树, 新增和删除, 重建时整体替换
+     */
+    private volatile Snapshot snapshot = new Snapshot(FrontCodedWords.EMPTY, WordTrie.build(Collections.emptySet()));
+
+    /**
+     * 重建期间的改动, 键为单词, 值为是否为新增, 只保留最后一次; 不在重建时为NULL, 由锁保护
+     */
+    private Map<String, Boolean> pending;
+
+    /**
+     * 是否已提交重建
+     */
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    /**
+     * 重建线程
+     */
+    private ExecutorService rebuilder;
+
+    /**
+     * 加载全部未删除的单词并启动重建线程
+     */
+    @PostConstruct
+    public void load() {
+
+        if (!enabled) {
+            return;
+        }
+        rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "suggest-index-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long start = System.currentTimeMillis();
+            TreeSet<String> words = new TreeSet<>();
+            dao.listWords().forEach(word -> words.add(WordIndex.normalize(word)));
+            Snapshot loaded = new Snapshot(FrontCodedWords.build(words.iterator()), WordTrie.build(words));
+            snapshot = loaded;
+            log.info("加载前缀补全: {}个单词, {}字节, 字典树: {}个节点, {}字节, 耗时: {}ms", loaded.words.size(),
+                loaded.words.bytes(), loaded.trie.nodes(), loaded.trie.bytes(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("加载前缀补全失败", e);
+        }
+    }
+
+    /**
+     * 停止重建线程
+     */
+    @PreDestroy
+    public void close() {
+
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * 新增单词
+     *
+     * @param word 单词
+     */
+    public void add(String word) {
+
+        if (!enabled || word == null) {
+            return;
+        }
+        change(WordIndex.normalize(word), true);
+    }
+
+    /**
+     * 删除单词
+     *
+     * @param word 单词
+     */
+    public void remove(String word) {
+
+        if (!enabled || word == null) {
+            return;
+        }
+        change(WordIndex.normalize(word), false);
+    }
+
+    /**
+     * 查询以prefix开头的单词, 按字母顺序
+     *
+     * @param prefix 前缀, 不区分大小写
+     * @param limit  最多返回的单词数, 不超过50
+     * @return java.util.List<java.lang.String>
+     */
+    public List<String> suggest(String prefix, int limit) {
+
+        String key = WordIndex.normalize(prefix);
+        limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<String> result = new ArrayList<>(limit);
+        if (key.isEmpty()) {
+            return result;
+        }
+        Snapshot current = snapshot;
+        List<String> base = new ArrayList<>(limit);
+        current.words.prefix(key, limit, current.removed::contains, base);
+        Iterator<String> added =
+            current.added.subSet(key, true, key + Character.MAX_VALUE, false).iterator();
+        // 合并两个有序列表
+        int i = 0;
+        String next = added.hasNext() ? added.next() : null;
+        while (result.size() < limit && (i < base.size() || next != null)) {
+            if (next == null || (i < base.size() && base.get(i).compareTo(next) <= 0)) {
+                String word = base.get(i++);
+                if (word.equals(next)) {
+                    next = added.hasNext() ? added.next() : null;
+                }
+                result.add(word);
+            } else {
+                result.add(next);
+                next = added.hasNext() ? added.next() : null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查询与word相似(编辑距离不超过2, 不超过4个字符的单词不超过1)的已有单词, 不包括word本身
+     * 按编辑距离从小到大, 同一距离按字母顺序
+     *
+     * @param word 单词, 不区分大小写
+     * @return java.util.List<java.lang.String> 未启用时为空
+     */
+    public List<String> similar(String word) {
+
+        String key = WordIndex.normalize(word);
+        List<String> result = new ArrayList<>();
+        if (!enabled || key.isEmpty()) {
+            return result;
+        }
+        int maxDistance = key.length() <= 4 ? 1 : MAX_DISTANCE;
+        Snapshot current = snapshot;
+        List<Set<String>> buckets = WordTrie.buckets(maxDistance);
+        current.trie.similar(key, maxDistance, current.removed::contains, buckets);
+        // 新增的单词不多, 逐个计算
+        for (String added : current.added) {
+            int distance = WordTrie.distance(added, key, maxDistance);
+            if (distance > 0 && distance <= maxDistance) {
+                buckets.get(distance).add(added);
+            }
+        }
+        for (Set<String> bucket : buckets) {
+            Iterator<String> iterator = bucket.iterator();
+            while (result.size() < MAX_SIMILAR && iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 记录新增或删除, 改动较多时提交重建
+     *
+     * @param key   规范化后的单词
+     * @param added 是否为新增
+     */
+    private void change(String key, boolean added) {
+
+        synchronized (this) {
+            apply(snapshot, key, added);
+            if (pending != null) {
+                pending.put(key, added);
+            }
+        }
+        Snapshot current = snapshot;
+        if (rebuilder != null && current.added.size() + current.removed.size() >= rebuildSize &&
+            rebuildScheduled.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * 在单词表的改动中记录新增或删除, 调用方需持有锁
+     *
+     * @param snapshot 单词表
+     * @param key      规范化后的单词
+     * @param added    是否为新增
+     */
+    private static void apply(Snapshot snapshot, String key, boolean added) {
+
+        if (added) {
+            snapshot.removed.remove(key);
+            if (!snapshot.words.contains(key)) {
+                snapshot.added.add(key);
+            }
+        } else if (!snapshot.added.remove(key) && snapshot.words.contains(key)) {
+            snapshot.removed.add(key);
+        }
+    }
+
+    /**
+     * 合并单词表和改动, 生成新的单词表和字典树后整体替换
+     * 构建时不持有锁(一百万单词要几秒), 期间的改动同时记录在pending中, 替换时在新的单词表上重放
+     */
+    private void rebuild() {
+
+        try {
+            long start = System.currentTimeMillis();
+            Snapshot current;
+            TreeSet<String> merged;
+            synchronized (this) {
+                current = snapshot;
+                merged = new TreeSet<>(current.added);
+                pending = new LinkedHashMap<>();
+            }
+            current.words.forEach(word -> {
+                if (!current.removed.contains(word)) {
+                    merged.add(word);
+                }
+            });
+            Snapshot rebuilt = new Snapshot(FrontCodedWords.build(merged.iterator()), WordTrie.build(merged));
+            synchronized (this) {
+                pending.forEach((key, added) -> apply(rebuilt, key, added));
+                snapshot = rebuilt;
+            }
+            log.info("重建前缀补全: {}个单词, {}字节, 字典树: {}个节点, {}字节, 耗时: {}ms", rebuilt.words.size(),
+                rebuilt.words.bytes(), rebuilt.trie.nodes(), rebuilt.trie.bytes(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("重建前缀补全失败", e);
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+            rebuildScheduled.set(false);
+        }
+    }
+
+    /**
+     * 单词表, 字典树和之后的改动
+     */
+    private static class Snapshot {
+
+        final FrontCodedWords words;
+
+        final WordTrie trie;
+
+        /**
+         * 单词表中没有的新增单词
+         */
+        final NavigableSet<String> added = new ConcurrentSkipListSet<>();
+
+        /**
+         * 单词表中已删除的单词
+         */
+        final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+        Snapshot(FrontCodedWords words, WordTrie trie) {
+
+            this.words = words;
+            this.trie = trie;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+package com.paul.web.module.word.index;
+
+import com.paul.web.module.word.dao.WordDao;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单词索引, 新增和修改单词时判断单词是否已存在, 常见情况下不用查询数据库
+ * 启动时加载全部未删除的单词, 之后随新增, 修改和删除维护: 先查布隆过滤器, 不存在时直接返回, 可能存在时再查单词集合
+ * 单词集合是准确的, 布隆过滤器只用来快速排除; 删除的单词留在布隆过滤器中, 只会增加误判, 删除较多或数量超过容量时重建
+ * 占用单词用reserve, 在锁内检查并加入集合, 并发新增同一个单词时只有一个成功, 新增失败时用release释放
+ * 单词统一去掉首尾空白并转为小写, 与数据库utf8mb4_general_ci排序规则下的比较一致(不区分大小写, 忽略末尾空格)
+ * 索引只在本进程内维护, 部署多个实例时应关闭(spring.word.index.enabled), 改为查询数据库
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/30 15:40
+ */
+@Slf4j
+@Component
+public class WordIndex {
+
+    /**
+     * 布隆过滤器的误判率
+     */
+    private static final double FPP = 0.01;
+
+    /**
+     * 布隆过滤器的最小容量
+     */
+    private static final int MIN_CAPACITY = 1 << 16;
+
+    @Autowired
+    private WordDao dao;
+
+    /**
+     * 是否使用单词索引, 关闭时每次查询数据库
+     */
+    @Value("${spring.word.index.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 全部未删除的单词, 已规范化
+     */
+    private final Set<String> words = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 布隆过滤器, 重建时整体替换
+     */
+    private volatile BloomFilter filter;
+
+    /**
+     * 上次重建后删除的单词数量
+     */
+    private int removed;
+
+    /**
+     * 是否已加载, 加载失败时查询数据库
+     */
+    private volatile boolean loaded;
+
+    /**
+     * 加载全部未删除的单词
+     */
+    @PostConstruct
+    public void load() {
+
+        if (!enabled) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            List<String> list = dao.listWords();
+            synchronized (this) {
+                list.forEach(word -> words.add(normalize(word)));
+                rebuild();
+            }
+            loaded = true;
+            log.info("加载单词索引: {}个, 耗时: {}ms", words.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("加载单词索引失败, 判断单词是否存在时改为查询数据库", e);
+        }
+    }
+
+    /**
+     * 单词是否已存在
+     *
+     * @param word 单词
+     * @return boolean
+     */
+    public boolean contains(String word) {
+
+        if (!loaded) {
+            return dao.getObjectByWord(word) != null;
+        }
+        String key = normalize(word);
+        return filter.mightContain(key) && words.contains(key);
+    }
+
+    /**
+     * 占用单词, 单词已存在时失败; 成功后若没有写入数据库, 需要调用release释放
+     *
+     * @param word 单词
+     * @return boolean 是否成功
+     */
+    public boolean reserve(String word) {
+
+        if (!loaded) {
+            return dao.getObjectByWord(word) == null;
+        }
+        String key = normalize(word);
+        synchronized (this) {
+            if (filter.mightContain(key) && words.contains(key)) {
+                return false;
+            }
+            words.add(key);
+            if (words.size() > filter.getCapacity()) {
+                rebuild();
+            } else {
+                filter.put(key);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 释放占用的单词, 用于新增失败
+     *
+     * @param word 单词
+     */
+    public void release(String word) {
+
+        remove(word);
+    }
+
+    /**
+     * 删除单词, 用于删除单词或修改单词后删除旧单词
+     *
+     * @param word 单词
+     */
+    public void remove(String word) {
+
+        if (!loaded || word == null) {
+            return;
+        }
+        synchronized (this) {
+            if (words.remove(normalize(word)) && ++removed > filter.getCapacity() / 4) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * 两个单词规范化后是否相同, 相同时修改单词不需要重新占用
+     *
+     * @param a 单词a
+     * @param b 单词b
+     * @return boolean
+     */
+    public static boolean same(String a, String b) {
+
+        return a == null ? b == null : b != null && normalize(a).equals(normalize(b));
+    }
+
+    /**
+     * 规范化单词: 去掉首尾空白并转为小写
+     *
+     * @param word 单词
+     * @return java.lang.String
+     */
+    public static String normalize(String word) {
+
+        return word == null ? "" : word.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 按当前单词数量重建布隆过滤器, 容量为数量的两倍, 调用方需持有锁
+     */
+    private void rebuild() {
+
+        BloomFilter rebuilt = new BloomFilter(Math.max(words.size() * 2, MIN_CAPACITY), FPP);
+        words.forEach(rebuilt::put);
+        filter = rebuilt;
+        removed = 0;
+    }
+}
\ No newline at end of file
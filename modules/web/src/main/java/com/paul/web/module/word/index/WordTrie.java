@@ -0,0 +1,394 @@
+package com.paul.web.module.word.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * 不可变的单词字典树, 用于查询编辑距离较小的相似单词
+ * 节点按先序存放在数组中: 节点的第一个子节点紧跟在它后面, 其余子节点用兄弟节点下标串起来, 每个节点约6字节
+ * 查询时沿字典树深度优先遍历, 每个节点计算一行编辑距离(相当于模拟Levenshtein自动机), 只计算对角线附近的几格,
+ * 一行都超过最大距离时不再进入子树
+ * 字典树的前几层几乎每个节点都在最大距离内, 所以把查询单词分成前后两半: 前一半最多maxDistance / 2个错误的在正向字典树中找,
+ * 其余的错误都在前一半, 后一半错误更少, 在反向(单词倒过来)字典树中从后一半开始找; 两次都只在开头几层放宽, 访问的节点很少
+ * 编辑距离为OSA距离: 插入, 删除, 替换和相邻两个字符交换都算一次
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/2 15:20
+ */
+public final class WordTrie {
+
+    /**
+     * 正向字典树
+     */
+    private final Trie forward;
+
+    /**
+     * 反向字典树, 单词倒过来存放
+     */
+    private final Trie backward;
+
+    private WordTrie(Trie forward, Trie backward) {
+
+        this.forward = forward;
+        this.backward = backward;
+    }
+
+    /**
+     * 构建字典树
+     *
+     * @param sorted 按String.compareTo从小到大排序且不重复的单词
+     * @return com.paul.web.module.word.index.WordTrie
+     */
+    public static WordTrie build(Collection<String> sorted) {
+
+        String[] reversed = new String[sorted.size()];
+        int i = 0;
+        for (String word : sorted) {
+            reversed[i++] = reverse(word);
+        }
+        Arrays.sort(reversed);
+        return new WordTrie(Trie.build(sorted), Trie.build(Arrays.asList(reversed)));
+    }
+
+    /**
+     * 节点数
+     *
+     * @return int
+     */
+    public int nodes() {
+
+        return forward.labels.length + backward.labels.length;
+    }
+
+    /**
+     * 占用的字节数(不含对象头)
+     *
+     * @return long
+     */
+    public long bytes() {
+
+        return forward.bytes() + backward.bytes();
+    }
+
+    /**
+     * 查询与word的编辑距离为1到maxDistance的单词, 按距离加入buckets, buckets需为空
+     *
+     * @param word        单词
+     * @param maxDistance 最大编辑距离
+     * @param skip        跳过的单词, 如已删除的单词
+     * @param buckets     结果, 下标为距离, 见buckets(int)
+     */
+    public void similar(String word, int maxDistance, Predicate<String> skip, List<Set<String>> buckets) {
+
+        // 正向查询word的前split + 1个字符(编辑距离表的第0到split列), 反向查询其余的字符
+        int split = (word.length() - 1) / 2;
+        int forwardDistance = maxDistance / 2;
+        forward.search(new Query(word, maxDistance, split, forwardDistance, false, skip, buckets));
+        // 前一半的某一列超过forwardDistance个错误时, 之后最多还有maxDistance - forwardDistance - 1个,
+        // 反向查询时这一列之前(倒过来后之后)的列都不超过这个数
+        backward.search(new Query(reverse(word), maxDistance, word.length() - 1 - split,
+            maxDistance - forwardDistance - 1, true, skip, buckets));
+        // 两次查询都有限制, 得到的不一定是最小距离, 但最小距离一定有一次能得到, 同一个单词只保留最小的
+        for (int d = 1; d < maxDistance; d++) {
+            for (int e = d + 1; e <= maxDistance; e++) {
+                buckets.get(e).removeAll(buckets.get(d));
+            }
+        }
+    }
+
+    /**
+     * 两个单词的编辑距离, 超过maxDistance时返回maxDistance + 1
+     *
+     * @param a           单词
+     * @param b           单词
+     * @param maxDistance 最大编辑距离
+     * @return int
+     */
+    public static int distance(String a, String b, int maxDistance) {
+
+        if (Math.abs(a.length() - b.length()) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int[][] table = new int[a.length() + 1][b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            table[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            table[i][0] = i;
+            int min = i;
+            for (int j = 1; j <= b.length(); j++) {
+                char c = a.charAt(i - 1);
+                char q = b.charAt(j - 1);
+                int cost = Math.min(table[i - 1][j - 1] + (q == c ? 0 : 1),
+                    Math.min(table[i - 1][j], table[i][j - 1]) + 1);
+                if (i > 1 && j > 1 && q == a.charAt(i - 2) && b.charAt(j - 2) == c) {
+                    cost = Math.min(cost, table[i - 2][j - 2] + 1);
+                }
+                table[i][j] = cost;
+                min = Math.min(min, cost);
+            }
+            if (min > maxDistance) {
+                return maxDistance + 1;
+            }
+        }
+        return Math.min(table[a.length()][b.length()], maxDistance + 1);
+    }
+
+    /**
+     * 新建按距离分组的结果, 同一距离按字母顺序且不重复
+     *
+     * @param maxDistance 最大编辑距离
+     * @return java.util.List<java.util.Set<java.lang.String>>
+     */
+    public static List<Set<String>> buckets(int maxDistance) {
+
+        List<Set<String>> buckets = new ArrayList<>(maxDistance + 1);
+        for (int i = 0; i <= maxDistance; i++) {
+            buckets.add(new TreeSet<>());
+        }
+        return buckets;
+    }
+
+    private static String reverse(String word) {
+
+        return new StringBuilder(word).reverse().toString();
+    }
+
+    /**
+     * 一次查询的参数和编辑距离表
+     */
+    private static class Query {
+
+        final String word;
+
+        final int maxDistance;
+
+        /**
+         * 编辑距离表的第0到split列最多只能有splitDistance个错误
+         */
+        final int split;
+
+        final int splitDistance;
+
+        /**
+         * 是否在反向字典树中查询, 找到的单词需要倒回来
+         */
+        final boolean reversed;
+
+        final Predicate<String> skip;
+
+        final List<Set<String>> buckets;
+
+        Query(String word, int maxDistance, int split, int splitDistance, boolean reversed, Predicate<String> skip,
+            List<Set<String>> buckets) {
+
+            this.word = word;
+            this.maxDistance = maxDistance;
+            this.split = split;
+            this.splitDistance = splitDistance;
+            this.reversed = reversed;
+            this.skip = skip;
+            this.buckets = buckets;
+        }
+
+        /**
+         * 限制后的距离, 超过限制时为maxDistance + 1
+         *
+         * @param j    列, 即word的前j个字符
+         * @param cost 编辑距离
+         * @return int
+         */
+        int limit(int j, int cost) {
+
+            return cost > (j <= split ? splitDistance : maxDistance) ? maxDistance + 1 : cost;
+        }
+    }
+
+    /**
+     * 先序存放的字典树
+     */
+    private static final class Trie {
+
+        /**
+         * 每个节点的字符, 根节点不使用
+         */
+        final char[] labels;
+
+        /**
+         * 每个节点的下一个兄弟节点, 0为没有(根节点不会是兄弟节点)
+         */
+        final int[] siblings;
+
+        /**
+         * 有子节点的节点
+         */
+        final long[] parents;
+
+        /**
+         * 是单词结尾的节点
+         */
+        final long[] terminals;
+
+        /**
+         * 最长单词的长度
+         */
+        final int depth;
+
+        Trie(char[] labels, int[] siblings, long[] parents, long[] terminals, int depth) {
+
+            this.labels = labels;
+            this.siblings = siblings;
+            this.parents = parents;
+            this.terminals = terminals;
+            this.depth = depth;
+        }
+
+        static Trie build(Iterable<String> sorted) {
+
+            char[] labels = new char[1024];
+            int[] siblings = new int[1024];
+            long[] parents = new long[16];
+            long[] terminals = new long[16];
+            int[] path = new int[16];
+            int count = 1;
+            int depth = 0;
+            String previous = "";
+            for (String word : sorted) {
+                if (word.isEmpty() || word.equals(previous)) {
+                    continue;
+                }
+                int common = 0;
+                int max = Math.min(previous.length(), word.length());
+                while (common < max && previous.charAt(common) == word.charAt(common)) {
+                    common++;
+                }
+                if (path.length <= word.length()) {
+                    path = Arrays.copyOf(path, word.length() * 2);
+                }
+                if (labels.length < count + word.length() - common) {
+                    int capacity = Math.max(labels.length * 2, count + word.length() - common);
+                    labels = Arrays.copyOf(labels, capacity);
+                    siblings = Arrays.copyOf(siblings, capacity);
+                    parents = Arrays.copyOf(parents, (capacity >>> 6) + 1);
+                    terminals = Arrays.copyOf(terminals, (capacity >>> 6) + 1);
+                }
+                for (int d = common + 1; d <= word.length(); d++) {
+                    int node = count++;
+                    labels[node] = word.charAt(d - 1);
+                    if (d == common + 1 && previous.length() >= d) {
+                        // 与上一个单词在这一层分叉, 是上一个单词这一层节点的兄弟
+                        siblings[path[d]] = node;
+                    } else {
+                        // 父节点是刚创建的节点, 第一个子节点紧跟在它后面
+                        set(parents, path[d - 1]);
+                    }
+                    path[d] = node;
+                }
+                set(terminals, path[word.length()]);
+                depth = Math.max(depth, word.length());
+                previous = word;
+            }
+            return new Trie(Arrays.copyOf(labels, count), Arrays.copyOf(siblings, count),
+                Arrays.copyOf(parents, (count >>> 6) + 1), Arrays.copyOf(terminals, (count >>> 6) + 1), depth);
+        }
+
+        long bytes() {
+
+            return labels.length * 6L + (parents.length + terminals.length) * 8L;
+        }
+
+        void search(Query query) {
+
+            if (!hasChild(0)) {
+                return;
+            }
+            int columns = query.word.length() + 1;
+            // 深度超过最长单词和word长度加最大距离的节点都不需要
+            int[][] table = new int[Math.min(depth, query.word.length() + query.maxDistance) + 1][columns];
+            for (int[] row : table) {
+                Arrays.fill(row, query.maxDistance + 1);
+            }
+            for (int j = 0; j < columns; j++) {
+                table[0][j] = query.limit(j, j);
+            }
+            visit(1, 1, query, table, new char[table.length]);
+        }
+
+        /**
+         * 遍历节点及其兄弟节点, 只计算第d行中与对角线相差不超过最大距离的格子, 其余的格子一定超过最大距离
+         *
+         * @param first 第一个节点
+         * @param d     节点深度
+         * @param query 查询
+         * @param table 编辑距离表, 第d行为到深度d的节点的路径与word每个前缀的距离
+         * @param path  到当前节点的路径
+         */
+        private void visit(int first, int d, Query query, int[][] table, char[] path) {
+
+            if (d >= table.length) {
+                return;
+            }
+            String word = query.word;
+            int[] previous = table[d - 1];
+            int[] row = table[d];
+            int low = Math.max(0, d - query.maxDistance);
+            int high = Math.min(word.length(), d + query.maxDistance);
+            for (int node = first; node != 0; node = siblings[node]) {
+                char c = labels[node];
+                path[d - 1] = c;
+                int min = query.maxDistance + 1;
+                for (int j = low; j <= high; j++) {
+                    int cost;
+                    if (j == 0) {
+                        cost = d;
+                    } else {
+                        char q = word.charAt(j - 1);
+                        cost = Math.min(previous[j - 1] + (q == c ? 0 : 1), Math.min(previous[j], row[j - 1]) + 1);
+                        if (d > 1 && j > 1 && q == path[d - 2] && word.charAt(j - 2) == c) {
+                            cost = Math.min(cost, table[d - 2][j - 2] + 1);
+                        }
+                    }
+                    cost = query.limit(j, cost);
+                    row[j] = cost;
+                    min = Math.min(min, cost);
+                }
+                if (min > query.maxDistance) {
+                    continue;
+                }
+                int distance = row[word.length()];
+                if (high == word.length() && distance > 0 && distance <= query.maxDistance && get(terminals, node)) {
+                    String found = new String(path, 0, d);
+                    if (query.reversed) {
+                        found = reverse(found);
+                    }
+                    if (!query.skip.test(found)) {
+                        query.buckets.get(distance).add(found);
+                    }
+                }
+                if (hasChild(node)) {
+                    visit(node + 1, d + 1, query, table, path);
+                }
+            }
+        }
+
+        private boolean hasChild(int node) {
+
+            return node + 1 < labels.length && get(parents, node);
+        }
+
+        private static boolean get(long[] bits, int index) {
+
+            return (bits[index >>> 6] & (1L << index)) != 0;
+        }
+
+        private static void set(long[] bits, int index) {
+
+            bits[index >>> 6] |= 1L << index;
+        }
+    }
+}
\ No newline at end of file
@@ -1,8 +1,5 @@
 package com.paul.web.module.word.schedule;
 
-import com.paul.web.module.word.dao.WordDao;
-import com.paul.web.module.word.entity.WordEntity;
-import com.paul.web.module.word.entity.WordEntityExtend;
 import com.paul.web.module.word.service.WordService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -10,11 +7,6 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.concurrent.BlockingQueue;
-
 /**
  * 单词定时任务
  *
@@ -28,44 +20,23 @@ public class WordScheduleJobs {
 
     private WordService wordService;
 
-    private WordDao wordDao;
-
     /**
      * Spring Boot的定时任务中, 无法直接注入Bean, 需要这样间接注入
      *
      * @param wordService 要注入的Bean
-     * @param wordDao     要注入的Bean
      */
     @Autowired
-    public WordScheduleJobs(WordService wordService, WordDao wordDao) {
+    public WordScheduleJobs(WordService wordService) {
 
         this.wordService = wordService;
-        this.wordDao = wordDao;
     }
 
+    /**
+     * 将所有用户今日没背完的单词顺延到明天, 并重置所有背诵会话
+     */
     @Scheduled(cron = "${spring.schedule.corn.word-check}")
     public void wordCheck() {
 
-        Date startDate = new Date();
-        Calendar calendar = new GregorianCalendar();
-        calendar.setTime(startDate);
-        calendar.add(Calendar.DATE, 1);
-        startDate = calendar.getTime();
-
-        BlockingQueue<WordEntityExtend> todayWords = wordService.getTodayWords();
-        if (todayWords != null) {
-            // 获取并移除队列的头, 若队列为空, 则返回null
-            WordEntityExtend todayWord = todayWords.poll();
-            while (todayWord != null) {
-                WordEntity word = new WordEntity();
-                word.setId(todayWord.getId());
-                word.setStartDate(startDate);
-                word.setSchedule(0);
-                wordDao.update(word);
-                todayWord = todayWords.poll();
-            }
-        }
-
-        wordService.init();
+        wordService.rollover();
     }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.paul.web.module.word.service;
+
+import com.paul.common.base.BaseService;
+import com.paul.common.util.R;
+import com.paul.web.module.word.entity.DeckEntity;
+
+import java.util.List;
+
+/**
+ * 牌组
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 14:00
+ */
+public interface DeckService extends BaseService<DeckEntity> {
+
+    /**
+     * 把单词加入牌组, 已在牌组中的单词忽略
+     *
+     * @param id      牌组ID
+     * @param wordIds 单词ID
+     * @return com.paul.common.util.R data为牌组的单词数量
+     */
+    R addWords(String id, List<String> wordIds);
+
+    /**
+     * 把单词移出牌组
+     *
+     * @param id      牌组ID
+     * @param wordIds 单词ID, 以英文逗号隔开
+     * @return com.paul.common.util.R data为牌组的单词数量
+     */
+    R removeWords(String id, String wordIds);
+
+    /**
+     * 单词已删除, 移出全部牌组, 并回收牌组索引中的编号
+     *
+     * @param wordIds 已删除的单词ID
+     */
+    void deleteWords(List<String> wordIds);
+}
\ No newline at end of file
@@ -1,11 +1,14 @@
 package com.paul.web.module.word.service;
 
 import com.paul.common.base.BaseService;
+import com.paul.common.util.P;
 import com.paul.common.util.R;
 import com.paul.web.module.word.entity.WordEntity;
+import com.paul.web.module.word.entity.ReviewAnswerBatch;
 import com.paul.web.module.word.entity.WordEntityExtend;
+import org.springframework.web.multipart.MultipartFile;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
 
 /**
  * 单词
@@ -24,14 +27,93 @@ public interface WordService extends BaseService<WordEntity> {
     R next(int know);
 
     /**
-     * 获得昨日没背完的单词
+     * 获得某个会话的下一个单词, 用于没有当前请求的场景, 如WebSocket
      *
-     * @return java.util.concurrent.BlockingQueue<com.paul.web.module.word.entity.WordEntityExtend>
+     * @param key  会话键, 见ReviewSessionRegistry.keyOf
+     * @param know 1: 认识, 0: 不认识, 2: 初始加载
+     * @return com.paul.common.util.R
+     */
+    R next(String key, int know);
+
+    /**
+     * 批量回答, 同一批次的回答要么全部生效, 要么全部不生效, 重复提交同一批次时不会重复处理
+     *
+     * @param batch 批量回答
+     * @return com.paul.common.util.R 回答后的状态, 同next
+     */
+    R answers(ReviewAnswerBatch batch);
+
+    /**
+     * 选择要背诵的牌组, 只背诵属于牌组的今日单词, 已加载的今日单词按新的牌组重新加载, 进度保留
+     *
+     * @param expression 牌组表达式, 如: (cet4 | cet6) & !已掌握, 为空时背诵全部今日单词
+     * @return com.paul.common.util.R 选择后的状态, 同next
+     */
+    R selectDecks(String expression);
+
+    /**
+     * 某个会话的批量回答, 用于没有当前请求的场景, 如WebSocket
+     *
+     * @param key   会话键, 见ReviewSessionRegistry.keyOf
+     * @param batch 批量回答
+     * @return com.paul.common.util.R 回答后的状态, 同next
+     */
+    R answers(String key, ReviewAnswerBatch batch);
+
+    /**
+     * 预测从今日开始之后每天需要背诵的单词数量
+     *
+     * @param days 天数
+     * @return com.paul.common.util.R data为每天的数量, start为第一天的日期
+     */
+    R forecast(int days);
+
+    /**
+     * 搜索单词, 翻译和备注, 见SearchIndex
+     *
+     * @param query 搜索内容, 多个词都要出现
+     * @param limit 最多返回的结果数, 不超过100
+     * @return com.paul.common.util.R data为搜索结果, 按得分从高到低
+     */
+    R search(String query, int limit);
+
+    /**
+     * 前缀补全, 见SuggestIndex
+     *
+     * @param prefix 前缀, 不区分大小写
+     * @param limit  最多返回的单词数, 不超过50
+     * @return com.paul.common.util.R data为以prefix开头的单词, 按字母顺序
+     */
+    R suggest(String prefix, int limit);
+
+    /**
+     * 批量导入单词, 文件保存后立即返回导入进度, 之后用importProgress查询, 见WordImporter
+     *
+     * @param file   上传的文件(CSV, TSV或Anki导出的纯文本), UTF-8编码
+     * @param format 格式: csv, tsv, anki, 为NULL时按扩展名判断
+     * @return com.paul.common.util.R data为导入进度
+     */
+    R importWords(MultipartFile file, String format);
+
+    /**
+     * 查询导入进度
+     *
+     * @param id 导入ID
+     * @return com.paul.common.util.R data为导入进度
+     */
+    R importProgress(String id);
+
+    /**
+     * 流式查询某日需要背诵的单词
+     *
+     * @param p        参数: date:日期
+     * @param consumer 每个单词的处理
      */
-    BlockingQueue<WordEntityExtend> getTodayWords();
+    void streamObjectsExtend(P p, Consumer<? super WordEntityExtend> consumer);
 
     /**
-     * 初始化今日单词
+     * 每日顺延: 重置全部会话和进度, 默认的艾宾浩斯算法将没背完的单词顺延到明天重新开始,
+     * 使用单词状态的算法(SM-2, FSRS)按今日结果批量计算下次背诵日期, 见SchedulingAlgorithm
      */
-    void init();
+    void rollover();
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package com.paul.web.module.word.service.impl;
+
+import com.paul.common.base.BaseServiceImpl;
+import com.paul.common.util.R;
+import com.paul.web.module.word.dao.DeckDao;
+import com.paul.web.module.word.dao.WordDeckDao;
+import com.paul.web.module.word.entity.DeckEntity;
+import com.paul.web.module.word.index.DeckExpression;
+import com.paul.web.module.word.index.DeckIndex;
+import com.paul.web.module.word.service.DeckService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+import static com.paul.common.constant.StringConstant.COMMA;
+
+/**
+ * 牌组
+ * 牌组和单词的关联写入word_deck表后, 同步更新内存中的牌组索引(DeckIndex)
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/8/3 14:05
+ */
+@Service("deckService")
+public class DeckServiceImpl extends BaseServiceImpl<DeckEntity, DeckDao> implements DeckService {
+
+    /**
+     * 每条SELECT/INSERT/DELETE语句处理的单词数量
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    private WordDeckDao wordDeckDao;
+
+    @Autowired
+    private DeckIndex index;
+
+    @Override
+    public R insert(DeckEntity entity) {
+
+        String error = checkName(entity);
+        if (error != null) {
+            return R.err(error);
+        }
+        R r = super.insert(entity);
+        index.putDeck(entity.getId(), entity.getName());
+        return r;
+    }
+
+    @Override
+    public R insertBatch(List<DeckEntity> list) {
+
+        for (DeckEntity entity : list) {
+            String error = checkName(entity);
+            if (error != null) {
+                return R.err(error);
+            }
+        }
+        if (list.stream().map(DeckEntity::getName).distinct().count() < list.size()) {
+            return R.err("牌组名称不能重复! ");
+        }
+        R r = super.insertBatch(list);
+        list.forEach(entity -> index.putDeck(entity.getId(), entity.getName()));
+        return r;
+    }
+
+    @Override
+    public R update(DeckEntity entity) {
+
+        if (entity.getName() != null) {
+            String error = checkName(entity);
+            if (error != null) {
+                return R.err(error);
+            }
+        }
+        R r = super.update(entity);
+        if (entity.getName() != null) {
+            index.putDeck(entity.getId(), entity.getName());
+        }
+        return r;
+    }
+
+    @Override
+    public R updateBatch(DeckEntity entity, String ids) {
+
+        if (entity.getName() != null) {
+            return R.err("牌组名称不能重复, 不能批量修改! ");
+        }
+        return super.updateBatch(entity, ids);
+    }
+
+    @Override
+    public R delete(Object id) {
+
+        R r = super.delete(id);
+        wordDeckDao.deleteByDeck(String.valueOf(id));
+        index.removeDeck(String.valueOf(id));
+        return r;
+    }
+
+    @Override
+    public R deleteBatch(String ids) {
+
+        R r = super.deleteBatch(ids);
+        for (String id : ids.split(COMMA)) {
+            wordDeckDao.deleteByDeck(id);
+            index.removeDeck(id);
+        }
+        return r;
+    }
+
+    @Override
+    public R addWords(String id, List<String> wordIds) {
+
+        if (getCached(id) == null) {
+            return R.err("牌组不存在! ");
+        }
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(wordIds));
+        distinct.removeIf(Objects::isNull);
+        // 只加入存在且未删除的单词, 否则每个ID都会在牌组索引中占用一个不会回收的编号
+        List<String> existing = new ArrayList<>(distinct.size());
+        for (int i = 0; i < distinct.size(); i += CHUNK_SIZE) {
+            existing.addAll(wordDeckDao.listWordIds(distinct.subList(i, Math.min(i + CHUNK_SIZE, distinct.size()))));
+        }
+        for (int i = 0; i < existing.size(); i += CHUNK_SIZE) {
+            wordDeckDao.insertBatch(id, existing.subList(i, Math.min(i + CHUNK_SIZE, existing.size())));
+        }
+        index.addWords(id, existing);
+        return R.ok(index.size(id)).put("ignored", distinct.size() - existing.size());
+    }
+
+    @Override
+    public R removeWords(String id, String wordIds) {
+
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(wordIds.split(COMMA))));
+        for (int i = 0; i < distinct.size(); i += CHUNK_SIZE) {
+            wordDeckDao.deleteBatch(id, distinct.subList(i, Math.min(i + CHUNK_SIZE, distinct.size())));
+        }
+        index.removeWords(id, distinct);
+        return R.ok(index.size(id));
+    }
+
+    @Override
+    public void deleteWords(List<String> wordIds) {
+
+        for (int i = 0; i < wordIds.size(); i += CHUNK_SIZE) {
+            wordDeckDao.deleteByWords(wordIds.subList(i, Math.min(i + CHUNK_SIZE, wordIds.size())));
+        }
+        index.deleteWords(wordIds);
+    }
+
+    /**
+     * 检查牌组名称: 不能为空, 不能包含空白和运算符, 不能与其他牌组重复
+     *
+     * @param entity 牌组, 修改时有ID
+     * @return java.lang.String 错误信息, 没有错误时为NULL
+     */
+    private String checkName(DeckEntity entity) {
+
+        if (!DeckExpression.isName(entity.getName())) {
+            return "牌组名称不能为空, 不能包含空白和运算符(!&|())! ";
+        }
+        DeckEntity same = dao.getObjectByName(entity.getName());
+        if (same != null && !same.getId().equals(entity.getId())) {
+            return "已有该牌组! ";
+        }
+        return null;
+    }
+}
\ No newline at end of file
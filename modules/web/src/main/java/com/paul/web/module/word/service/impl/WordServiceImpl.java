@@ -1,56 +1,162 @@
 package com.paul.web.module.word.service.impl;
 
 import com.paul.common.base.BaseServiceImpl;
+import com.paul.common.exception.CustomException;
 import com.paul.common.util.DateUtils;
 import com.paul.common.util.P;
 import com.paul.common.util.R;
 import com.paul.common.util.StringUtils;
+import com.paul.web.module.word.algorithm.DueHistogram;
+import com.paul.web.module.word.algorithm.ReviewStates;
+import com.paul.web.module.word.algorithm.SchedulingAlgorithm;
+import com.paul.web.module.word.dao.UserWordProgressDao;
 import com.paul.web.module.word.dao.WordDao;
+import com.paul.web.module.word.entity.ReviewAnswerBatch;
+import com.paul.web.module.word.entity.UserWordProgressEntity;
 import com.paul.web.module.word.entity.WordEntity;
 import com.paul.web.module.word.entity.WordEntityExtend;
+import com.paul.web.module.word.importer.ImportProgress;
+import com.paul.web.module.word.importer.WordImporter;
+import com.paul.web.module.word.index.DeckExpression;
+import com.paul.web.module.word.index.DeckIndex;
+import com.paul.web.module.word.index.SearchIndex;
+import com.paul.web.module.word.index.SuggestIndex;
+import com.paul.web.module.word.index.WordIndex;
+import com.paul.web.module.word.service.DeckService;
 import com.paul.web.module.word.service.WordService;
+import com.paul.web.module.word.session.ReviewJournal;
+import com.paul.web.module.word.session.ReviewLogWriter;
+import com.paul.web.module.word.session.ReviewSession;
+import com.paul.web.module.word.session.ReviewSessionRegistry;
+import com.paul.web.module.word.session.ScheduleWriteBehind;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import static com.paul.common.constant.DateConstant.DAY_DATE_PATTERN;
+import static com.paul.common.constant.StringConstant.COMMA;
+import static com.paul.web.module.word.algorithm.SchedulingAlgorithm.*;
 
 /**
  * 单词
+ * 背诵状态保存在每个用户各自的会话中, 见ReviewSessionRegistry
+ * 进度延迟批量写入各用户的进度表, 见ScheduleWriteBehind
  *
  * @author paul paulandcode@gmail.com
  * @since 2019/3/28 20:05
  */
+@Slf4j
 @Service("wordService")
 public class WordServiceImpl extends BaseServiceImpl<WordEntity, WordDao> implements WordService {
 
     /**
-     * 下一个要背的单词
+     * 顺延时每条UPDATE语句更新的单词数量
      */
-    private WordEntityExtend nextWord;
+    private static final int ROLLOVER_CHUNK_SIZE = 1000;
 
     /**
-     * 今日单词
+     * 最多预测多少天
      */
-    private BlockingQueue<WordEntityExtend> todayWords;
+    private static final int MAX_FORECAST_DAYS = 366;
 
     /**
-     * 是否已完成今日任务
+     * 按日期分组的单词数量, 用于预测
      */
-    private boolean finished;
+    private final DueHistogram histogram = new DueHistogram();
+
+    @Autowired
+    private ReviewSessionRegistry sessions;
+
+    @Autowired
+    private ReviewJournal journal;
+
+    @Autowired
+    private ScheduleWriteBehind writeBehind;
+
+    @Autowired
+    private UserWordProgressDao progressDao;
+
+    @Autowired
+    private ReviewLogWriter reviewLog;
+
+    @Autowired
+    private WordIndex index;
+
+    @Autowired
+    private WordImporter importer;
+
+    @Autowired
+    private SearchIndex search;
+
+    @Autowired
+    private SuggestIndex suggest;
+
+    @Autowired
+    private DeckIndex decks;
+
+    @Autowired
+    private DeckService deckService;
+
+    /**
+     * 响应中返回接下来的多少个单词, 客户端据此预先显示后面的单词
+     */
+    @Value("${spring.word.session.window:5}")
+    private int window;
+
+    /**
+     * 顺延时并行更新的线程数
+     */
+    @Value("${spring.word.rollover.threads:4}")
+    private int rolloverThreads;
+
+    /**
+     * 全部间隔重复算法, 键为Bean名称
+     */
+    @Autowired
+    private Map<String, SchedulingAlgorithm> algorithms;
 
     /**
-     * 进度: 0(未背诵), 1(已背诵1遍), 2(已背诵2遍), 3(已背诵3遍, 今日无需再背诵), 4(不认识: 只要一次背诵时忘记, 则变为不认识状态)
+     * 使用的间隔重复算法的Bean名称
      */
-    private int[] schedules = new int[]{0, 0, 0, 0, 0};
+    @Value("${spring.word.algorithm:ebbinghaus}")
+    private String algorithmName;
+
+    /**
+     * 使用的间隔重复算法
+     */
+    private SchedulingAlgorithm algorithm;
+
+    /**
+     * 选择间隔重复算法
+     */
+    @PostConstruct
+    public void init() {
+
+        algorithm = algorithms.get(algorithmName);
+        if (algorithm == null) {
+            throw new CustomException("未知的间隔重复算法: " + algorithmName + ", 可选: " + algorithms.keySet());
+        }
+        log.info("间隔重复算法: {}", algorithmName);
+    }
 
     @Override
     public R insert(WordEntity entity) {
 
-        WordEntity word = dao.getObjectByWord(entity.getWord());
-        if (word != null) {
+        if (!index.reserve(entity.getWord())) {
             return R.err("数据库已有该单词！");
         }
         Date startDate = new Date();
@@ -59,190 +165,512 @@ public class WordServiceImpl extends BaseServiceImpl<WordEntity, WordDao> implem
         calendar.add(Calendar.DATE, 1);
         startDate = calendar.getTime();
         entity.setStartDate(startDate);
-        return super.insert(entity);
+        entity.setDueDay(startDate);
+        R r;
+        try {
+            r = super.insert(entity);
+        } catch (RuntimeException e) {
+            index.release(entity.getWord());
+            throw e;
+        }
+        histogram.add(algorithm.dayOf(entity), 1);
+        search.put(entity);
+        suggest.add(entity.getWord());
+        return putSimilar(r, entity.getWord());
     }
 
     @Override
-    public R delete(Object id) {
+    public R insertBatch(List<WordEntity> list) {
 
-        WordEntityExtend word = todayWords.poll();
-        assert word != null;
-        Integer schedule = word.getSchedule();
-        // 当前进度减一
-        schedules[schedule]--;
-        if (todayWords.size() == 0) {
-            // 完成并重置, 但保留进度
-            finished = true;
-            todayWords = null;
-            nextWord = null;
-        } else {
-            nextWord = todayWords.peek();
+        List<String> reserved = new ArrayList<>(list.size());
+        for (WordEntity entity : list) {
+            if (!index.reserve(entity.getWord())) {
+                reserved.forEach(index::release);
+                return R.err("数据库已有该单词: " + entity.getWord());
+            }
+            reserved.add(entity.getWord());
+            // 批量插入时NULL也会插入, 默认值与新增单个单词一致
+            WordImporter.prepare(entity);
+        }
+        R r;
+        try {
+            r = super.insertBatch(list);
+        } catch (RuntimeException e) {
+            reserved.forEach(index::release);
+            throw e;
         }
+        list.forEach(entity -> {
+            histogram.add(algorithm.dayOf(entity), 1);
+            search.put(entity);
+            suggest.add(entity.getWord());
+        });
+        return r;
+    }
+
+    @Override
+    public R deleteBatch(String ids) {
 
-        int totalCount = 0;
-        for (int oneSchedule : schedules) {
-            totalCount += oneSchedule;
+        List<WordEntity> old = listCached(ids);
+        R r = super.deleteBatch(ids);
+        List<String> deleted = new ArrayList<>(old.size());
+        old.stream().filter(entity -> !Boolean.TRUE.equals(entity.getDelFlag())).forEach(entity -> {
+            index.remove(entity.getWord());
+            search.remove(entity.getId());
+            suggest.remove(entity.getWord());
+            deleted.add(entity.getId());
+        });
+        deckService.deleteWords(deleted);
+        histogram.invalidate();
+        if (!deleted.isEmpty()) {
+            sessions.forEach(session -> deleted.forEach(id -> {
+                if (session.remove(id)) {
+                    journal.remove(session, id);
+                }
+            }));
         }
+        return r;
+    }
 
-        return super.delete(id).put("schedules", schedules).put("nextWord", nextWord)
-            .put("totalCount", totalCount);
+    @Override
+    public R delete(Object id) {
+
+        WordEntity old = getCached(id);
+        R r = super.delete(id);
+        if (old != null && !Boolean.TRUE.equals(old.getDelFlag())) {
+            histogram.add(algorithm.dayOf(old), -1);
+            index.remove(old.getWord());
+            search.remove(id);
+            suggest.remove(old.getWord());
+            deckService.deleteWords(Collections.singletonList(old.getId()));
+            // 所有用户的会话中都移出该单词, 不只是当前用户的
+            sessions.forEach(session -> {
+                if (session.remove(id)) {
+                    journal.remove(session, id);
+                }
+            });
+        }
+        ReviewSession session = sessions.lockCurrent();
+        try {
+            return session.put(r, window);
+        } finally {
+            session.unlock();
+        }
     }
 
     @Override
     public R update(WordEntity entity) {
 
-        String oldWord = dao.getObject(entity.getId()).getWord();
+        WordEntity old = getCached(entity.getId());
+        if (old == null || Boolean.TRUE.equals(old.getDelFlag())) {
+            return R.err("单词不存在或已删除! ");
+        }
+        String oldWord = old.getWord();
         String newWord = entity.getWord();
-        if (!Objects.equals(oldWord, newWord)) {
-            WordEntity word = dao.getObjectByWord(entity.getWord());
-            if (word != null) {
-                return R.err("数据库已有该单词！");
+        // 只改了大小写或首尾空白时仍是同一个单词, 不需要重新占用
+        boolean renamed = newWord != null && !WordIndex.same(oldWord, newWord);
+        if (renamed && !index.reserve(newWord)) {
+            return R.err("数据库已有该单词！");
+        }
+
+        R r;
+        try {
+            r = super.update(entity);
+        } catch (RuntimeException e) {
+            if (renamed) {
+                index.release(newWord);
             }
+            throw e;
         }
+        if (renamed) {
+            index.remove(oldWord);
+            suggest.remove(oldWord);
+            suggest.add(newWord);
+            putSimilar(r, newWord);
+        }
+        if (newWord != null || entity.getTranslation() != null || entity.getRemark() != null) {
+            // 只更新了不为NULL的字段, 搜索索引需要完整的值
+            WordEntity merged = new WordEntity();
+            merged.setId(entity.getId());
+            merged.setWord(newWord != null ? newWord : oldWord);
+            merged.setTranslation(entity.getTranslation() != null ? entity.getTranslation() : old.getTranslation());
+            merged.setRemark(entity.getRemark() != null ? entity.getRemark() : old.getRemark());
+            search.put(merged);
+        }
+        if (entity.getStartDate() != null || entity.getDueDay() != null) {
+            // 修改了计划, 统计需要重新查询
+            histogram.invalidate();
+        }
+        // 当前用户正在背的单词修改后移到队列最后, 其他位置和其他用户的会话中只更新单词的内容
+        String key = sessions.currentKey();
+        sessions.forEach(session -> {
+            if (key.equals(session.getKey()) && session.edit(entity)) {
+                journal.edit(session, entity);
+            } else if (session.refresh(entity)) {
+                journal.refresh(session, entity);
+            }
+        });
+        ReviewSession session = sessions.lockCurrent();
+        try {
+            return session.put(r, window);
+        } finally {
+            session.unlock();
+        }
+    }
+
+    @Override
+    public R next(int know) {
+
+        return next(sessions.currentKey(), know);
+    }
+
+    @Override
+    public R next(String key, int know) {
 
-        // 获取并移除队列的头, 若队列为空, 则返回null
-        WordEntityExtend todayWord = todayWords.poll();
-        assert todayWord != null;
+        ReviewSession session = sessions.lock(key);
+        try {
+            if (!session.isLoaded()) {
+                // 若今日单词未加载, 则需要加载今日单词, 并返回级别和下一个背诵单词
+                // 查询今日单词, 以系统时间为准, 不以数据库时间为准, 进度由查询结果统计, 只查询一次
+                List<WordEntityExtend> words = listToday(session);
+                session.load(words);
+                sessions.reclaim(words);
+                journal.snapshot(session);
+            } else {
+                // 若已加载今日单词, 则需返回级别和下一个背诵单词, 2或其他代表初始加载
+                WordEntityExtend word = session.answer(know);
+                journal.answer(session, word, know);
+                if (word != null) {
+                    writeBehind.put(session.getKey(), word.getId(), word.getSchedule());
+                    reviewLog.append(session.getKey(), word.getId(), know, word.getSchedule());
+                }
+            }
+            return session.put(R.ok(), window);
+        } finally {
+            session.unlock();
+        }
+    }
 
-        String sound = entity.getSound();
-        String translation = entity.getTranslation();
-        String remark = entity.getRemark();
+    @Override
+    public R selectDecks(String expression) {
 
-        if (!StringUtils.isEmpty(newWord)) {
-            todayWord.setWord(newWord);
+        String selected = StringUtils.isEmpty(expression) ? null : decks.parse(expression).toString();
+        ReviewSession session = sessions.lockCurrent();
+        try {
+            if (!Objects.equals(selected, session.getDecks())) {
+                session.setDecks(selected);
+                // 未加载时下次背诵加载今日单词时再筛选, 快照也在那时记录
+                if (session.isLoaded()) {
+                    List<WordEntityExtend> words = listToday(session);
+                    session.reload(words);
+                    sessions.reclaim(words);
+                    journal.snapshot(session);
+                }
+            }
+            return session.put(R.ok(), window);
+        } finally {
+            session.unlock();
         }
-        if (!StringUtils.isEmpty(sound)) {
-            todayWord.setSound(sound);
+    }
+
+    @Override
+    public R answers(ReviewAnswerBatch batch) {
+
+        return answers(sessions.currentKey(), batch);
+    }
+
+    @Override
+    public R answers(String key, ReviewAnswerBatch batch) {
+
+        List<ReviewAnswerBatch.Answer> answers =
+            batch.getAnswers() == null ? new ArrayList<>() : new ArrayList<>(batch.getAnswers());
+        if (StringUtils.isEmpty(batch.getBatchId())) {
+            return R.err("批次ID不能为空! ");
         }
-        if (!StringUtils.isEmpty(translation)) {
-            todayWord.setTranslation(translation);
+        // 客户端时间都有值时按时间排序, 排序是稳定的, 时间相同时保持提交的顺序
+        if (answers.stream().allMatch(answer -> answer.getClientTimestamp() != null)) {
+            answers.sort(Comparator.comparing(ReviewAnswerBatch.Answer::getClientTimestamp));
         }
-        if (!StringUtils.isEmpty(remark)) {
-            todayWord.setRemark(remark);
+        List<Object> wordIds = new ArrayList<>(answers.size());
+        List<Integer> knows = new ArrayList<>(answers.size());
+        for (ReviewAnswerBatch.Answer answer : answers) {
+            wordIds.add(answer.getWordId());
+            knows.add(answer.getKnow());
         }
 
-        todayWords.offer(todayWord);
-        // 获取但不移除队列的头, 若队列为空, 则返回null
-        nextWord = todayWords.peek();
+        ReviewSession session = sessions.lock(key);
+        try {
+            if (session.hasBatch(batch.getBatchId())) {
+                // 重试的批次, 直接返回当前状态
+                return session.put(R.ok(), window).put("applied", 0);
+            }
+            if (batch.getVersion() != null && batch.getVersion() != session.getVersion()) {
+                // 客户端基于过期的队列回答(如在其他页面背过), 需要重新同步
+                return session.put(R.err("单词队列已变化, 请刷新后重试! "), window);
+            }
+            int[] results = session.answerAll(wordIds, knows);
+            if (results == null) {
+                return session.put(R.err("回答与当前单词不一致, 请刷新后重试! "), window);
+            }
+            for (int i = 0; i < results.length; i++) {
+                journal.answer(session, wordIds.get(i), knows.get(i), results[i]);
+                writeBehind.put(session.getKey(), wordIds.get(i), results[i]);
+                reviewLog.append(session.getKey(), wordIds.get(i), knows.get(i), results[i]);
+            }
+            session.markBatch(batch.getBatchId());
+            journal.batch(session, batch.getBatchId());
+            return session.put(R.ok(), window).put("applied", results.length);
+        } finally {
+            session.unlock();
+        }
+    }
+
+    @Override
+    public R importWords(MultipartFile file, String format) {
+
+        return R.ok(importer.submit(file, format, this::insertImported));
+    }
+
+    @Override
+    public R importProgress(String id) {
+
+        ImportProgress progress = importer.get(id);
+        return progress == null ? R.err("导入不存在或已过期! ") : R.ok(progress);
+    }
+
+    @Override
+    public R search(String query, int limit) {
 
-        int totalCount = 0;
-        for (int oneSchedule : schedules) {
-            totalCount += oneSchedule;
+        if (!search.isLoaded()) {
+            return R.err("搜索索引正在加载或已关闭, 请稍后再试! ");
         }
-        return super.update(entity).put("schedules", schedules).put("nextWord", nextWord)
-            .put("totalCount", totalCount);
+        return R.ok(search.search(query, limit));
     }
 
     @Override
-    public R next(int know) {
+    public R suggest(String prefix, int limit) {
 
-        if (!finished) {
-            if (todayWords == null) {
-                // 若今日单词为空, 则需要初始化今日单词, 并返回级别和下一个背诵单词
-                // 查询今日单词, 以系统时间为准, 不以数据库时间为准
-                P p = new P("date", DateUtils.format(new Date(), DAY_DATE_PATTERN));
-                List<WordEntityExtend> words = dao.listObjectsExtend(p);
-                if (words.size() == 0) {
-                    // 今日没有单词, 直接完成
-                    finished = true;
-                } else {
-                    todayWords = new ArrayBlockingQueue<>(words.size());
-                    for (WordEntityExtend word : words) {
-                        todayWords.offer(word);
-                    }
-                    // 获取但不移除队列的头, 若队列为空, 则返回null
-                    nextWord = todayWords.peek();
-                    List<Map<String, Object>> counts = dao.count(p);
-                    for (Map<String, Object> count : counts) {
-                        // 若有进度, 则改变数量, 没有则还是默认的0
-                        schedules[Integer.parseInt(count.get("schedule").toString())] =
-                            Integer.parseInt(count.get("count").toString());
-                    }
-                }
-            } else {
-                // 若已初始化今日单词, 则需返回级别和下一个背诵单词
-                // 2或其他代表初始加载
-                if (know == 0) {
-                    // 获取并移除队列的头, 若队列为空, 则返回null
-                    WordEntityExtend word = todayWords.poll();
-                    assert word != null;
-                    Integer schedule = word.getSchedule();
-                    // 当前进度减一
-                    schedules[schedule]--;
-                    // 不认识进度加一
-                    schedules[4]++;
-                    word.setSchedule(4);
-                    // 插入队列的最后
-                    todayWords.offer(word);
-                    // 获取但不移除下一个单词
-                    nextWord = todayWords.peek();
-                } else if (know == 1) {
-                    // 获取并移除队列的头, 若队列为空, 则返回null
-                    WordEntityExtend word = todayWords.poll();
-                    assert word != null;
-                    Integer schedule = word.getSchedule();
-                    // 当前进度减一
-                    schedules[schedule]--;
-                    switch (schedule) {
-                        case 0:
-                        case 1:
-                            // 下一个进度加一
-                            schedules[schedule + 1]++;
-                            // 修改进度为下一进度
-                            word.setSchedule(schedule + 1);
-                            // 插入队列的最后
-                            todayWords.offer(word);
-                            // 获取但不移除下一个单词
-                            nextWord = todayWords.peek();
-                            break;
-                        case 2:
-                            // 下一个进度加一
-                            schedules[schedule + 1]++;
-                            if (todayWords.size() == 0) {
-                                // 完成并重置, 但保留进度
-                                finished = true;
-                                todayWords = null;
-                                nextWord = null;
-                            } else {
-                                // 获取但不移除下一个单词
-                                nextWord = todayWords.peek();
-                            }
-                            break;
-                        case 4:
-                            // 已背诵1遍进度加一
-                            schedules[1]++;
-                            word.setSchedule(1);
-                            // 插入队列的最后
-                            todayWords.offer(word);
-                            // 获取但不移除下一个单词
-                            nextWord = todayWords.peek();
-                            break;
-                        default:
-                    }
+        return R.ok(suggest.suggest(prefix, limit));
+    }
+
+    /**
+     * 响应中加入与新单词相似的已有单词(similar), 可能是拼写错误或重复录入, 只提示不拦截
+     *
+     * @param r    响应
+     * @param word 新增或改名后的单词
+     * @return com.paul.common.util.R
+     */
+    private R putSimilar(R r, String word) {
+
+        List<String> similar = suggest.similar(word);
+        return similar.isEmpty() ? r : r.put("similar", similar);
+    }
+
+    @Override
+    public R forecast(int days) {
+
+        if (days < 1 || days > MAX_FORECAST_DAYS) {
+            return R.err("预测天数需在1到" + MAX_FORECAST_DAYS + "之间! ");
+        }
+        LocalDate today = LocalDate.now();
+        int[] counts = histogram.read(this::countByDay, map -> algorithm.forecast(map, today, days));
+        return R.ok(counts).put("start", today.toString());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamObjectsExtend(P p, Consumer<? super WordEntityExtend> consumer) {
+
+        stream(dao.cursorObjectsExtend(p.put("algorithm", algorithm)), consumer);
+    }
+
+    @Override
+    public void rollover() {
+
+        long begin = System.currentTimeMillis();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        Set<String> forgotten = ConcurrentHashMap.newKeySet();
+        Set<String> done = new HashSet<>();
+        // 重置会话和清空进度期间暂停获取会话, 否则新的一天的第一次加载可能读到昨天的进度,
+        // 期间的回答也会被清空
+        sessions.exclusive(() -> {
+            // 各会话互不影响, 并行取出没背完的单词, 同一个单词可能在多个会话中, 只需顺延一次
+            sessions.sessions().parallelStream().forEach(session -> {
+                session.lock();
+                try {
+                    forgotten.addAll(session.getForgotten());
+                    session.reset().forEach(word -> ids.add(String.valueOf(word.getId())));
+                } finally {
+                    session.unlock();
                 }
+            });
+            // 在取出各会话之后, 期间被淘汰的会话中的单词也一起顺延
+            ids.addAll(sessions.drainEvictedWordIds());
+            forgotten.addAll(sessions.drainEvictedForgotten());
+            if (algorithm.isStateful()) {
+                // 先写入今日的进度, 再按各用户的进度给今日背过的单词评分, 包括会话已被淘汰的用户
+                writeBehind.flush();
+                ids.addAll(progressDao.listUnfinishedWordIds());
+                done.addAll(progressDao.listDoneWordIds());
             }
+            // 新的一天所有用户的单词都从进度0开始, 未写入的进度也不再需要
+            writeBehind.clear();
+            progressDao.truncate();
+            // 会话重置后还没有新的快照, 清空后的回答都在新的快照之后, 不会因没有快照而不记录
+            journal.clear();
+        });
+        if (algorithm.isStateful()) {
+            reschedule(ids, forgotten, done);
+        } else {
+            restart(ids);
         }
-        int totalCount = 0;
-        for (int schedule : schedules) {
-            totalCount += schedule;
+        // 大量单词的计划已改变, 预测统计下次使用时重新查询, 缓存的单词也都过期了
+        histogram.invalidate();
+        clearCache();
+        log.info("每日顺延完成: 会话{}个, 用时{}ms", sessions.sessions().size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 查询今日单词, 会话选择了牌组时只保留属于牌组的单词, 进度为该用户今日的进度, 没背过为0
+     *
+     * @param session 会话, 调用方需持有会话锁
+     * @return java.util.List<com.paul.web.module.word.entity.WordEntityExtend>
+     */
+    private List<WordEntityExtend> listToday(ReviewSession session) {
+
+        P p = new P("date", DateUtils.format(new Date(), DAY_DATE_PATTERN)).put("algorithm", algorithm);
+        List<WordEntityExtend> words = dao.listObjectsExtend(p);
+        if (session.getDecks() != null) {
+            words = decks.filter(words, DeckExpression.parse(session.getDecks()));
+        }
+        // 先写入缓冲区中的进度(如会话被淘汰前的回答), 查询到的进度才是最新的
+        writeBehind.flush();
+        Map<String, Integer> progress = new HashMap<>();
+        for (UserWordProgressEntity entity : progressDao.listByUser(session.getKey())) {
+            progress.put(entity.getWordId(), entity.getSchedule());
         }
+        for (WordEntityExtend word : words) {
+            word.setSchedule(progress.getOrDefault(String.valueOf(word.getId()), 0));
+        }
+        return words;
+    }
 
-        return R.ok().put("schedules", schedules).put("nextWord", nextWord)
-            .put("totalCount", totalCount);
+    /**
+     * 插入导入的一块单词, 单词已由导入占用, ID和默认值已设置
+     *
+     * @param chunk 单词
+     */
+    private void insertImported(List<WordEntity> chunk) {
+
+        dao.insertBatch(chunk);
+        chunk.forEach(entity -> {
+            histogram.add(algorithm.dayOf(entity), 1);
+            search.put(entity);
+            suggest.add(entity.getWord());
+        });
     }
 
-    @Override
-    public BlockingQueue<WordEntityExtend> getTodayWords() {
+    /**
+     * 按当前算法的日期字段分组统计单词数量, 一条GROUP BY语句
+     *
+     * @return java.util.NavigableMap<java.time.LocalDate, java.lang.Integer>
+     */
+    private NavigableMap<LocalDate, Integer> countByDay() {
 
-        return todayWords;
+        NavigableMap<LocalDate, Integer> counts = new TreeMap<>();
+        for (Map<String, Object> row : dao.countByDay(algorithm.getDayColumn())) {
+            counts.put(ReviewStates.toLocalDate((Date) row.get("day")), ((Number) row.get("count")).intValue());
+        }
+        return counts;
     }
 
-    @Override
-    public void init() {
+    /**
+     * 没背完的单词改为明天重新开始, 用于不使用单词状态的算法(艾宾浩斯)
+     *
+     * @param ids 没背完的单词ID
+     */
+    private void restart(Set<String> ids) {
 
-        todayWords = null;
-        nextWord = null;
-        finished = false;
-        schedules = new int[]{0, 0, 0, 0, 0};
+        if (ids.isEmpty()) {
+            log.info("没有需要顺延的单词");
+            return;
+        }
+        Date startDate = new Date();
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTime(startDate);
+        calendar.add(Calendar.DATE, 1);
+        startDate = calendar.getTime();
+
+        // 分块批量更新: UPDATE `word` SET ... WHERE `id` IN (...)
+        List<String> all = new ArrayList<>(ids);
+        WordEntity word = new WordEntity();
+        word.setStartDate(startDate);
+        inChunks(all.size(), "顺延没背完的单词",
+            (from, to) -> dao.updateBatch(word, String.join(COMMA, all.subList(from, to))));
+    }
+
+    /**
+     * 给今日背过的单词评分, 由间隔重复算法批量计算单词状态和下次背诵日期
+     * 背完且没忘记过为GOOD, 背完但忘记过为HARD, 没背完为AGAIN, 今日没背过的单词不变, 仍然到期
+     * 单词状态是各用户共用的, 有用户没背完即为AGAIN
+     *
+     * @param ids       没背完的单词ID
+     * @param forgotten 今日忘记过的单词ID
+     * @param done      今日有用户背完的单词ID
+     */
+    private void reschedule(Set<String> ids, Set<String> forgotten, Set<String> done) {
+
+        LocalDate today = LocalDate.now();
+        List<WordEntityExtend> words =
+            dao.listObjectsExtend(new P("date", today.toString()).put("algorithm", algorithm));
+        ReviewStates states = new ReviewStates(today, words.size());
+        for (WordEntityExtend word : words) {
+            String id = String.valueOf(word.getId());
+            if (ids.contains(id)) {
+                states.add(word, GRADE_AGAIN);
+            } else if (done.contains(id)) {
+                states.add(word, forgotten.contains(id) ? GRADE_HARD : GRADE_GOOD);
+            }
+        }
+        long begin = System.nanoTime();
+        algorithm.schedule(states);
+        log.info("计算单词状态: {}个, 用时{}μs", states.getSize(), (System.nanoTime() - begin) / 1000);
+        inChunks(states.getSize(), "更新单词状态",
+            (from, to) -> dao.updateStates(states.slice(from, to)));
+    }
+
+    /**
+     * 分块并行执行, 每块最多ROLLOVER_CHUNK_SIZE个, 某块失败不影响其他块
+     *
+     * @param total 总数
+     * @param name  名称, 用于日志
+     * @param chunk 每块的处理, 参数为开始下标(包含)和结束下标(不包含)
+     */
+    private void inChunks(int total, String name, BiConsumer<Integer, Integer> chunk) {
+
+        if (total == 0) {
+            return;
+        }
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i < total; i += ROLLOVER_CHUNK_SIZE) {
+            ranges.add(new int[]{i, Math.min(i + ROLLOVER_CHUNK_SIZE, total)});
+        }
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.max(1, Math.min(rolloverThreads, ranges.size())));
+        try {
+            CompletableFuture.allOf(ranges.stream().map(range -> CompletableFuture.runAsync(() -> {
+                try {
+                    chunk.accept(range[0], range[1]);
+                    log.info("{}: {}/{}", name, done.addAndGet(range[1] - range[0]), total);
+                } catch (RuntimeException e) {
+                    failed.addAndGet(range[1] - range[0]);
+                    log.error(name + "失败: [" + range[0] + ", " + range[1] + ")", e);
+                }
+            }, pool)).toArray(CompletableFuture[]::new)).join();
+        } finally {
+            pool.shutdown();
+        }
+        log.info("{}完成: {}个, 失败{}个", name, done.get(), failed.get());
     }
 }
\ No newline at end of file
@@ -0,0 +1,739 @@
+package com.paul.web.module.word.session;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.paul.common.exception.CustomException;
+import com.paul.common.util.DateUtils;
+import com.paul.web.module.word.entity.WordEntity;
+import com.paul.web.module.word.entity.WordEntityExtend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static com.paul.common.constant.DateConstant.DAY_DATE_PATTERN;
+
+/**
+ * 背诵日志, 只追加写入内存映射文件, 记录每个会话的快照和之后的每一次操作(回答, 删除, 修改, 批量回答的批次)
+ * 启动时重放日志即可重建各用户的背诵会话, 不会丢失进度, 也不需要重新查询今日单词
+ * 写入内存映射文件只是内存拷贝, 进程崩溃后数据仍在操作系统的页缓存中, 不会丢失
+ * <p>
+ * 文件格式: 头部为魔数和代数(int + long), 之后是一条条记录, 长度为0的记录表示结束
+ * 记录: 长度(int, 不含自身), CRC32(int), 类型(byte), 会话键(short长度 + UTF-8), 内容
+ * <p>
+ * 压缩: 每个会话只保留最新的快照和其后的记录, 写入另一个文件后, 再写入更大的代数使其生效,
+ * 两个文件交替使用, 启动时使用代数大的有效文件, 压缩过程中崩溃也不会损坏日志
+ * 压缩和写入磁盘(force)在后台线程进行, 期间的新记录仍写入原文件, 同时暂存起来, 切换前补写到新文件;
+ * 追加记录只在锁内做一次内存拷贝, 不同用户的回答不会等待压缩
+ * 每日顺延时会重置所有会话, 日志随之清空; 重放到往日的快照时(如停机错过了顺延), 没背完的单词交给下次顺延
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/24 9:52
+ */
+@Slf4j
+@Component
+public class ReviewJournal {
+
+    /**
+     * 文件头的魔数
+     */
+    private static final int MAGIC = 0x5245564A;
+
+    /**
+     * 文件头长度: 魔数 + 代数
+     */
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    /**
+     * 记录类型: 快照, 内容为JSON: {"day": 日期, "finished": 是否完成, "schedules": 进度, "words": 单词,
+     * "decks": 牌组表达式, "forgotten": 今日忘记过的单词ID, "dropped": 切换牌组时移出的单词}
+     */
+    private static final byte SNAPSHOT = 1;
+
+    /**
+     * 记录类型: 回答, 内容为单词ID(short长度 + UTF-8), 是否认识(byte), 回答后的进度(byte)
+     */
+    private static final byte ANSWER = 2;
+
+    /**
+     * 记录类型: 移出已删除的单词, 内容为单词ID
+     */
+    private static final byte REMOVE = 3;
+
+    /**
+     * 记录类型: 修改当前单词, 内容为修改的单词JSON
+     */
+    private static final byte EDIT = 4;
+
+    /**
+     * 记录类型: 已处理的回答批次, 内容为批次ID(UTF-8)
+     */
+    private static final byte BATCH = 5;
+
+    /**
+     * 记录类型: 更新单词的内容(不移动位置), 内容为修改的单词JSON
+     */
+    private static final byte REFRESH = 6;
+
+    @Autowired
+    private ReviewSessionRegistry sessions;
+
+    /**
+     * 是否启用
+     */
+    @Value("${spring.word.journal.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 日志目录
+     */
+    @Value("${spring.word.journal.path:journal}")
+    private String path;
+
+    /**
+     * 日志文件初始大小(MB), 写满时先压缩, 压缩后仍不够则扩大一倍
+     */
+    @Value("${spring.word.journal.size-mb:16}")
+    private int sizeMb;
+
+    /**
+     * 两个交替使用的日志文件
+     */
+    private final FileChannel[] channels = new FileChannel[2];
+
+    /**
+     * 当前使用的日志文件下标
+     */
+    private int active;
+
+    /**
+     * 当前日志文件的代数
+     */
+    private long generation;
+
+    /**
+     * 当前日志文件的内存映射
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * 每个会话的有效记录: 最新的快照及其后的记录, 压缩时只写入这些记录
+     */
+    private final Map<String, List<byte[]>> live = new LinkedHashMap<>();
+
+    /**
+     * 有效记录的总字节数
+     */
+    private long liveBytes;
+
+    /**
+     * 是否正在压缩, 压缩开始后追加的记录同时暂存在tail中, 由this保护
+     */
+    private boolean compacting;
+
+    /**
+     * 压缩开始后追加的记录, 切换文件前补写到新文件
+     */
+    private final List<byte[]> tail = new ArrayList<>();
+
+    /**
+     * 压缩锁, 同一时间只有一个压缩, 需在this之前获取
+     */
+    private final ReentrantLock compactLock = new ReentrantLock();
+
+    /**
+     * 是否已提交了后台压缩
+     */
+    private final AtomicBoolean compactScheduled = new AtomicBoolean();
+
+    /**
+     * 后台压缩线程
+     */
+    private ExecutorService compactor;
+
+    /**
+     * 重放时遇到的往日快照的会话键, 只在启动时使用
+     */
+    private final Set<String> stale = new HashSet<>();
+
+    /**
+     * 打开日志文件并重放
+     *
+     * @throws java.io.IOException 打开日志文件失败
+     */
+    @PostConstruct
+    public void open() throws IOException {
+
+        if (!enabled) {
+            return;
+        }
+        Path dir = Paths.get(path);
+        Files.createDirectories(dir);
+        long[] generations = new long[2];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = FileChannel.open(dir.resolve("review-" + i + ".journal"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            generations[i] = readGeneration(channels[i]);
+        }
+        active = generations[1] > generations[0] ? 1 : 0;
+        generation = Math.max(generations[active], 0);
+        long capacity = Math.max(channels[active].size(), (long) sizeMb << 20);
+        buffer = channels[active].map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (generations[active] < 0) {
+            writeHeader(buffer, generation);
+        }
+
+        long begin = System.currentTimeMillis();
+        buffer.position(HEADER_SIZE);
+        int records = 0;
+        byte[] record;
+        while ((record = readRecord(buffer)) != null) {
+            replay(record);
+            records++;
+        }
+        retainStale();
+        liveBytes = live.values().stream().flatMap(List::stream).mapToLong(r -> r.length).sum();
+        log.info("重放背诵日志: 记录{}条, 会话{}个, 用时{}ms", records, live.size(),
+            System.currentTimeMillis() - begin);
+        if (records > 0) {
+            compact();
+        }
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "review-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 关闭时等待后台压缩结束, 并将内存映射写入磁盘
+     */
+    @PreDestroy
+    public void close() {
+
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        compactLock.lock();
+        try {
+            synchronized (this) {
+                if (buffer != null) {
+                    buffer.force();
+                }
+                for (FileChannel channel : channels) {
+                    try {
+                        if (channel != null) {
+                            channel.close();
+                        }
+                    } catch (IOException e) {
+                        log.error("关闭背诵日志失败! ", e);
+                    }
+                }
+            }
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * 记录会话快照, 会话加载今日单词后调用, 之前的记录都会失效
+     *
+     * @param session 会话, 调用方需持有会话锁
+     */
+    public void snapshot(ReviewSession session) {
+
+        if (!enabled) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("day", today());
+        json.put("finished", session.isFinished());
+        json.put("schedules", session.getSchedules());
+        json.put("words", session.getTodayWords());
+        json.put("decks", session.getDecks());
+        // 顺延时据此评分和顺延, 快照之前的回答压缩后就没有了
+        json.put("forgotten", session.getForgotten());
+        json.put("dropped", session.getDropped());
+        append(session.getKey(), SNAPSHOT, JSON.toJSONBytes(json), true);
+    }
+
+    /**
+     * 记录回答
+     *
+     * @param session 会话, 调用方需持有会话锁
+     * @param word    回答的单词, 进度为回答后的进度
+     * @param know    1: 认识, 0: 不认识
+     */
+    public void answer(ReviewSession session, WordEntityExtend word, int know) {
+
+        if (word != null) {
+            answer(session, word.getId(), know, word.getSchedule());
+        }
+    }
+
+    /**
+     * 记录回答
+     *
+     * @param session  会话, 调用方需持有会话锁
+     * @param wordId   回答的单词ID
+     * @param know     1: 认识, 0: 不认识
+     * @param schedule 回答后的进度
+     */
+    public void answer(ReviewSession session, Object wordId, int know, int schedule) {
+
+        if (!enabled) {
+            return;
+        }
+        byte[] id = String.valueOf(wordId).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer content = ByteBuffer.allocate(Short.BYTES + id.length + 2);
+        content.putShort((short) id.length).put(id).put((byte) know).put((byte) schedule);
+        append(session.getKey(), ANSWER, content.array(), false);
+    }
+
+    /**
+     * 记录已处理的回答批次, 重启后重试同一批次也不会重复处理
+     *
+     * @param session 会话, 调用方需持有会话锁
+     * @param batchId 批次ID
+     */
+    public void batch(ReviewSession session, String batchId) {
+
+        if (!enabled) {
+            return;
+        }
+        append(session.getKey(), BATCH, batchId.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * 记录移出已删除的单词
+     *
+     * @param session 会话, 调用方需持有会话锁
+     * @param id      单词ID
+     */
+    public void remove(ReviewSession session, Object id) {
+
+        if (!enabled) {
+            return;
+        }
+        byte[] bytes = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer content = ByteBuffer.allocate(Short.BYTES + bytes.length);
+        content.putShort((short) bytes.length).put(bytes);
+        append(session.getKey(), REMOVE, content.array(), false);
+    }
+
+    /**
+     * 记录修改当前单词
+     *
+     * @param session 会话, 调用方需持有会话锁
+     * @param entity  修改的单词
+     */
+    public void edit(ReviewSession session, WordEntity entity) {
+
+        if (!enabled) {
+            return;
+        }
+        append(session.getKey(), EDIT, JSON.toJSONBytes(entity), false);
+    }
+
+    /**
+     * 记录更新单词的内容
+     *
+     * @param session 会话, 调用方需持有会话锁
+     * @param entity  修改的单词
+     */
+    public void refresh(ReviewSession session, WordEntity entity) {
+
+        if (!enabled) {
+            return;
+        }
+        append(session.getKey(), REFRESH, JSON.toJSONBytes(entity), false);
+    }
+
+    /**
+     * 清空日志, 每日顺延重置所有会话后, 在ReviewSessionRegistry.exclusive中调用
+     * 之后才能获取会话, 会话重新加载时记录的快照不会被清空
+     */
+    public void clear() {
+
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            live.clear();
+            liveBytes = 0;
+        }
+        compact();
+    }
+
+    /**
+     * 定时压缩, 有效记录不到已用空间的一半时压缩
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void compactIfNeeded() {
+
+        boolean needed;
+        synchronized (this) {
+            needed = enabled && buffer != null && liveBytes < (buffer.position() - HEADER_SIZE) / 2;
+        }
+        if (needed) {
+            compact();
+        }
+    }
+
+    /**
+     * 追加一条记录, 编码在锁外进行, 锁内只做内存拷贝
+     * 文件用了四分之三时提交后台压缩; 写满时该记录只保留在有效记录中, 由压缩写入新文件
+     *
+     * @param key      会话键
+     * @param type     记录类型
+     * @param content  内容
+     * @param snapshot 是否是快照, 快照会使该会话之前的记录失效
+     */
+    private void append(String key, byte type, byte[] content, boolean snapshot) {
+
+        byte[] record = encode(key, type, content);
+        boolean needCompact;
+        synchronized (this) {
+            List<byte[]> records = live.get(key);
+            if (snapshot || records == null) {
+                if (records != null) {
+                    liveBytes -= records.stream().mapToLong(r -> r.length).sum();
+                }
+                if (!snapshot) {
+                    // 没有快照的记录无法重放, 如会话在日志清空前加载, 清空后才回答
+                    return;
+                }
+                records = new ArrayList<>();
+                live.put(key, records);
+            }
+            records.add(record);
+            liveBytes += record.length;
+            if (compacting) {
+                tail.add(record);
+            }
+            if (buffer.remaining() >= record.length + Integer.BYTES) {
+                write(buffer, record);
+            }
+            needCompact = !compacting && buffer.position() > buffer.capacity() / 4 * 3
+                || buffer.remaining() < record.length + Integer.BYTES;
+        }
+        if (needCompact && !compactor.isShutdown() && compactScheduled.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                compactScheduled.set(false);
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    log.error("后台压缩背诵日志失败! ", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * 压缩: 将有效记录写入另一个文件, 然后切换到该文件
+     * 写入新文件和force在锁外进行, 期间追加的记录暂存在tail中, 切换时补写; 新文件放不下时重新压缩
+     */
+    private void compact() {
+
+        compactLock.lock();
+        try {
+            while (true) {
+                List<byte[]> records = new ArrayList<>();
+                int next;
+                long capacity;
+                synchronized (this) {
+                    live.values().forEach(records::addAll);
+                    next = 1 - active;
+                    capacity = buffer.capacity();
+                    // 有效记录最多占一半, 压缩期间追加的记录和之后的记录都有空间
+                    while (capacity < (HEADER_SIZE + liveBytes + Integer.BYTES) * 2) {
+                        capacity <<= 1;
+                    }
+                    tail.clear();
+                    compacting = true;
+                }
+                MappedByteBuffer target;
+                try {
+                    target = channels[next].map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                    // 先使文件头失效, 写完记录后再写入新的代数, 中途崩溃时仍使用原文件
+                    target.putInt(0, 0);
+                    target.position(HEADER_SIZE);
+                    target.putInt(HEADER_SIZE, 0);
+                    for (byte[] record : records) {
+                        write(target, record);
+                    }
+                    target.force();
+                } catch (IOException e) {
+                    abortCompact();
+                    throw new CustomException("压缩背诵日志失败! ", e);
+                } catch (RuntimeException e) {
+                    abortCompact();
+                    throw e;
+                }
+                synchronized (this) {
+                    compacting = false;
+                    long tailBytes = tail.stream().mapToLong(r -> r.length).sum();
+                    if (target.remaining() < tailBytes + Integer.BYTES) {
+                        tail.clear();
+                        continue;
+                    }
+                    tail.forEach(record -> write(target, record));
+                    tail.clear();
+                    writeHeader(target, ++generation);
+                    buffer = target;
+                    active = next;
+                }
+                target.force();
+                return;
+            }
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * 压缩失败, 继续使用原文件
+     */
+    private synchronized void abortCompact() {
+
+        compacting = false;
+        tail.clear();
+    }
+
+    /**
+     * 重放结束后, 往日快照的会话中没背完的单词和忘记过的单词交给下次顺延, 并重置会话, 这些记录不再保留
+     */
+    private void retainStale() {
+
+        for (String key : stale) {
+            live.remove(key);
+            ReviewSession session = sessions.lock(key);
+            try {
+                sessions.retain(session);
+            } finally {
+                session.unlock();
+            }
+        }
+        if (!stale.isEmpty()) {
+            log.info("背诵日志中往日的会话: {}个, 没背完的单词交给下次顺延", stale.size());
+        }
+        stale.clear();
+    }
+
+    /**
+     * 重放一条记录
+     *
+     * @param record 记录, 不含长度和CRC
+     */
+    private void replay(byte[] record) {
+
+        ByteBuffer in = ByteBuffer.wrap(record);
+        byte type = in.get();
+        String key = readString(in);
+        // 启动时还没有请求, 会话锁不会有竞争
+        ReviewSession session = sessions.lock(key);
+        try {
+            if (type == SNAPSHOT) {
+                JSONObject json = JSON.parseObject(remaining(in), JSONObject.class);
+                // 牌组表达式不随日期失效
+                session.setDecks(json.getString("decks"));
+                if (today().equals(json.getString("day"))) {
+                    stale.remove(key);
+                } else {
+                    // 往日的快照, 仍然重放, 重放结束后没背完的单词交给下次顺延
+                    stale.add(key);
+                }
+                session.reset();
+                session.restore(json.getJSONArray("words").toJavaList(WordEntityExtend.class),
+                    json.getObject("schedules", int[].class), json.getBooleanValue("finished"));
+                JSONArray forgotten = json.getJSONArray("forgotten");
+                JSONArray dropped = json.getJSONArray("dropped");
+                session.restoreDay(forgotten == null ? new ArrayList<>() : forgotten.toJavaList(String.class),
+                    dropped == null ? new ArrayList<>() : dropped.toJavaList(WordEntityExtend.class));
+                live.put(key, new ArrayList<>());
+            } else if (live.containsKey(key)) {
+                if (type == ANSWER) {
+                    String id = readString(in);
+                    int know = in.get();
+                    int schedule = in.get();
+                    WordEntityExtend next = session.nextWord();
+                    if (next == null || !id.equals(String.valueOf(next.getId()))) {
+                        log.warn("背诵日志与会话不一致, 忽略回答: {} {}", key, id);
+                        return;
+                    }
+                    WordEntityExtend word = session.answer(know);
+                    if (word != null && word.getSchedule() != schedule) {
+                        log.warn("背诵日志与会话不一致, 进度: {} {}", word.getSchedule(), schedule);
+                    }
+                } else if (type == REMOVE) {
+                    session.remove(readString(in));
+                } else if (type == EDIT) {
+                    session.edit(JSON.parseObject(remaining(in), WordEntity.class));
+                } else if (type == BATCH) {
+                    session.markBatch(remaining(in));
+                } else if (type == REFRESH) {
+                    session.refresh(JSON.parseObject(remaining(in), WordEntity.class));
+                }
+            } else {
+                return;
+            }
+            live.get(key).add(encodeRecord(record));
+        } finally {
+            session.unlock();
+        }
+    }
+
+    /**
+     * 编码一条记录, 含长度和CRC
+     *
+     * @param key     会话键
+     * @param type    记录类型
+     * @param content 内容
+     * @return byte[]
+     */
+    private static byte[] encode(String key, byte type, byte[] content) {
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(1 + Short.BYTES + keyBytes.length + content.length);
+        body.put(type).putShort((short) keyBytes.length).put(keyBytes).put(content);
+        return encodeRecord(body.array());
+    }
+
+    /**
+     * 在记录内容前加上长度和CRC
+     *
+     * @param body 类型, 会话键和内容
+     * @return byte[]
+     */
+    private static byte[] encodeRecord(byte[] body) {
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + body.length);
+        record.putInt(Integer.BYTES + body.length).putInt((int) crc.getValue()).put(body);
+        return record.array();
+    }
+
+    /**
+     * 写入一条记录, 先写内容和结束标记, 最后写长度, 保证任何时刻文件中的记录都是完整的
+     *
+     * @param buffer 内存映射
+     * @param record 记录, 含长度和CRC
+     */
+    private static void write(MappedByteBuffer buffer, byte[] record) {
+
+        int position = buffer.position();
+        buffer.position(position + Integer.BYTES);
+        buffer.put(record, Integer.BYTES, record.length - Integer.BYTES);
+        if (buffer.remaining() >= Integer.BYTES) {
+            buffer.putInt(buffer.position(), 0);
+        }
+        buffer.putInt(position, record.length - Integer.BYTES);
+    }
+
+    /**
+     * 读取一条记录, 读到结束标记或损坏的记录时返回NULL, 并停在该记录的开始处
+     *
+     * @param buffer 内存映射
+     * @return byte[] 记录的类型, 会话键和内容
+     */
+    private static byte[] readRecord(MappedByteBuffer buffer) {
+
+        int position = buffer.position();
+        if (buffer.remaining() < Integer.BYTES * 2) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= Integer.BYTES || length > buffer.remaining() - Integer.BYTES) {
+            return null;
+        }
+        int checksum = buffer.getInt(position + Integer.BYTES);
+        byte[] body = new byte[length - Integer.BYTES];
+        buffer.position(position + Integer.BYTES * 2);
+        buffer.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            buffer.position(position);
+            return null;
+        }
+        return body;
+    }
+
+    /**
+     * 读取文件头中的代数
+     *
+     * @param channel 日志文件
+     * @return long 文件无效时返回-1
+     * @throws java.io.IOException 读取失败
+     */
+    private static long readGeneration(FileChannel channel) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            return -1;
+        }
+        return header.getLong(Integer.BYTES);
+    }
+
+    /**
+     * 写入文件头
+     *
+     * @param buffer     内存映射
+     * @param generation 代数
+     */
+    private static void writeHeader(MappedByteBuffer buffer, long generation) {
+
+        buffer.putLong(Integer.BYTES, generation);
+        buffer.putInt(0, MAGIC);
+    }
+
+    private static String readString(ByteBuffer in) {
+
+        byte[] bytes = new byte[in.getShort()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String remaining(ByteBuffer in) {
+
+        return new String(in.array(), in.position(), in.remaining(), StandardCharsets.UTF_8);
+    }
+
+    private static String today() {
+
+        return DateUtils.format(new Date(), DAY_DATE_PATTERN);
+    }
+}
\ No newline at end of file
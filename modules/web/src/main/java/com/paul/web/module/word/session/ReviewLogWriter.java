@@ -0,0 +1,261 @@
+package com.paul.web.module.word.session;
+
+import com.paul.web.module.word.dao.WordReviewLogDao;
+import com.paul.web.module.word.entity.WordReviewLogEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 背诵记录的异步批量写入
+ * 回答的线程只把记录放入有界队列, 由一个后台线程取出后用多行INSERT批量插入word_review_log,
+ * 每条语句的大小不超过max-packet-kb(需小于MySQL的max_allowed_packet), 队列满时丢弃并计数, 不阻塞回答
+ * 另外每天提前创建之后几天的分区, 见WordReviewLogDao.addPartition
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/29 10:10
+ */
+@Slf4j
+@Component
+public class ReviewLogWriter {
+
+    /**
+     * 每行除字符串字段外的估计字节数: 占位符参数, 数字和日期
+     */
+    private static final int ROW_OVERHEAD = 64;
+
+    /**
+     * 分区名的日期格式
+     */
+    private static final DateTimeFormatter PARTITION_PATTERN = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    @Autowired
+    private WordReviewLogDao dao;
+
+    /**
+     * 是否记录背诵记录
+     */
+    @Value("${spring.word.review-log.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 队列容量
+     */
+    @Value("${spring.word.review-log.queue-size:100000}")
+    private int queueSize;
+
+    /**
+     * 每条INSERT语句最多插入的行数
+     */
+    @Value("${spring.word.review-log.batch-size:2000}")
+    private int batchSize;
+
+    /**
+     * 每条INSERT语句的最大KB数
+     */
+    @Value("${spring.word.review-log.max-packet-kb:1024}")
+    private int maxPacketKb;
+
+    /**
+     * 提前创建之后多少天的分区
+     */
+    @Value("${spring.word.review-log.partition-days:7}")
+    private int partitionDays;
+
+    /**
+     * 待写入的记录
+     */
+    private BlockingQueue<WordReviewLogEntity> queue;
+
+    /**
+     * 队列满时丢弃的记录数
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * 已写入的记录数
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * 写入线程
+     */
+    private Thread writer;
+
+    /**
+     * 是否正在运行
+     */
+    private volatile boolean running;
+
+    /**
+     * 创建分区并启动写入线程
+     */
+    @PostConstruct
+    public void start() {
+
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        createPartitions();
+        running = true;
+        writer = new Thread(this::run, "review-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 记录一次回答, 不阻塞
+     *
+     * @param userKey  背诵会话键
+     * @param wordId   单词ID
+     * @param know     1: 认识, 0: 不认识
+     * @param schedule 回答后的进度
+     */
+    public void append(String userKey, Object wordId, int know, int schedule) {
+
+        if (!enabled || wordId == null) {
+            return;
+        }
+        WordReviewLogEntity entity = new WordReviewLogEntity();
+        Date now = new Date();
+        entity.setUserKey(userKey);
+        entity.setWordId(String.valueOf(wordId));
+        entity.setKnow(know);
+        entity.setSchedule(schedule);
+        entity.setReviewTime(now);
+        entity.setReviewDay(now);
+        if (!queue.offer(entity) && dropped.incrementAndGet() % queueSize == 1) {
+            log.warn("背诵记录队列已满, 已丢弃: {}条", dropped.get());
+        }
+    }
+
+    /**
+     * 每天凌晨1点提前创建之后几天的分区
+     */
+    @Scheduled(cron = "0 0 1 * * ?")
+    public void createPartitions() {
+
+        if (!enabled) {
+            return;
+        }
+        try {
+            Set<String> partitions = new HashSet<>(dao.listPartitions());
+            LocalDate today = LocalDate.now();
+            int created = 0;
+            for (int i = 0; i <= partitionDays; i++) {
+                LocalDate day = today.plusDays(i);
+                String name = day.format(PARTITION_PATTERN);
+                if (!partitions.contains(name)) {
+                    dao.addPartition(name, day.plusDays(1).toString());
+                    created++;
+                }
+            }
+            if (created > 0) {
+                log.info("创建背诵记录分区: {}个", created);
+            }
+        } catch (RuntimeException e) {
+            log.error("创建背诵记录分区失败, 记录会写入pmax分区", e);
+        }
+    }
+
+    /**
+     * 停止写入线程, 并写入剩余的记录
+     */
+    @PreDestroy
+    public void close() {
+
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<WordReviewLogEntity> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        write(rest);
+        log.info("背诵记录写入结束: 已写入{}条, 丢弃{}条", written.get(), dropped.get());
+    }
+
+    /**
+     * 写入线程: 等待第一条记录, 然后取出队列中已有的记录一起写入
+     */
+    private void run() {
+
+        List<WordReviewLogEntity> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                WordReviewLogEntity first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize * 10 - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                // close()中断等待, 剩余的记录由close()写入
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 按行数和语句大小分块写入, 某块失败时丢弃该块并记录日志, 不影响后面的块
+     *
+     * @param records 记录
+     */
+    private void write(List<WordReviewLogEntity> records) {
+
+        int maxBytes = maxPacketKb * 1024;
+        int from = 0;
+        int bytes = 0;
+        for (int i = 0; i < records.size(); i++) {
+            WordReviewLogEntity record = records.get(i);
+            int rowBytes = ROW_OVERHEAD + record.getWordId().getBytes(StandardCharsets.UTF_8).length +
+                (record.getUserKey() == null ? 0 : record.getUserKey().getBytes(StandardCharsets.UTF_8).length);
+            if (i > from && (i - from >= batchSize || bytes + rowBytes > maxBytes)) {
+                insert(records.subList(from, i));
+                from = i;
+                bytes = 0;
+            }
+            bytes += rowBytes;
+        }
+        if (from < records.size()) {
+            insert(records.subList(from, records.size()));
+        }
+    }
+
+    private void insert(List<WordReviewLogEntity> chunk) {
+
+        try {
+            dao.insertBatch(chunk);
+            written.addAndGet(chunk.size());
+        } catch (RuntimeException e) {
+            log.error("写入背诵记录失败, 丢弃: " + chunk.size() + "条", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,622 @@
+package com.paul.web.module.word.session;
+
+import com.paul.common.util.R;
+import com.paul.common.util.StringUtils;
+import com.paul.web.module.word.entity.WordEntity;
+import com.paul.web.module.word.entity.WordEntityExtend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 某个用户当日的背诵会话: 今日单词队列, 各进度的数量, 是否已完成
+ * 会话不是线程安全的, 读写会话状态前必须先调用lock(), 用完在finally中调用unlock()
+ * 同一用户的请求在会话锁上串行执行, 不同用户之间互不影响
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/22 14:10
+ */
+public class ReviewSession {
+
+    /**
+     * 进度: 0(未背诵), 1(已背诵1遍), 2(已背诵2遍), 3(已背诵3遍, 今日无需再背诵), 4(不认识: 只要一次背诵时忘记, 则变为不认识状态)
+     */
+    public static final int SCHEDULE_COUNT = 5;
+
+    /**
+     * 今日无需再背诵的进度
+     */
+    public static final int SCHEDULE_DONE = 3;
+
+    /**
+     * 不认识的进度
+     */
+    public static final int SCHEDULE_UNKNOWN = 4;
+
+    /**
+     * 最多记住多少个回答批次ID
+     */
+    private static final int MAX_BATCH_IDS = 64;
+
+    /**
+     * 会话的键, 登录用户为用户ID
+     */
+    private final String key;
+
+    /**
+     * 会话锁
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 今日单词, 未加载或已完成时为NULL
+     */
+    private Deque<WordEntityExtend> todayWords;
+
+    /**
+     * 是否已完成今日任务
+     */
+    private boolean finished;
+
+    /**
+     * 各进度的单词数量
+     */
+    private int[] schedules = new int[SCHEDULE_COUNT];
+
+    /**
+     * 今日忘记过的单词ID, 每日顺延时据此给单词评分, 见SchedulingAlgorithm
+     */
+    private final Set<String> forgotten = new HashSet<>();
+
+    /**
+     * 切换牌组时移出队列的没背完的单词, 每日顺延时与队列中的单词一起顺延
+     */
+    private final Map<String, WordEntityExtend> dropped = new HashMap<>();
+
+    /**
+     * 牌组表达式, 只背诵属于这些牌组的今日单词, NULL为不筛选
+     */
+    private String decks;
+
+    /**
+     * 队列版本, 每次改变队列(加载, 回答, 删除, 修改)加一, 每次回答正好加一
+     * 客户端据此判断本地缓存的单词窗口是否过期
+     */
+    private long version;
+
+    /**
+     * 最近处理过的回答批次ID, 用于批量回答的幂等
+     */
+    private final Map<String, Boolean> batchIds = new LinkedHashMap<String, Boolean>() {
+
+        private static final long serialVersionUID = 2811960437517012412L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+
+            return size() > MAX_BATCH_IDS;
+        }
+    };
+
+    /**
+     * 最后访问时间, 用于空闲淘汰
+     */
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * 是否已被淘汰, 已淘汰的会话不再使用, 由会话锁保护
+     */
+    private boolean evicted;
+
+    ReviewSession(String key) {
+
+        this.key = key;
+    }
+
+    public String getKey() {
+
+        return key;
+    }
+
+    /**
+     * 加锁并刷新访问时间
+     */
+    public void lock() {
+
+        lock.lock();
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * 解锁
+     */
+    public void unlock() {
+
+        lock.unlock();
+    }
+
+    /**
+     * 今日单词是否已加载, 已完成也算已加载
+     *
+     * @return boolean
+     */
+    public boolean isLoaded() {
+
+        return finished || todayWords != null;
+    }
+
+    /**
+     * 加载今日单词, 同时统计各进度的数量, 不需要再单独查询统计
+     * 单词的进度为该用户今日的进度(user_word_progress表, 由ScheduleWriteBehind写入), 与其他用户无关
+     * 会话被淘汰后重新加载时, 已背完(进度为3)的单词只统计数量, 不再进入队列
+     *
+     * @param words 今日单词
+     */
+    public void load(List<WordEntityExtend> words) {
+
+        version++;
+        todayWords = new ArrayDeque<>(words.size());
+        for (WordEntityExtend word : words) {
+            schedules[word.getSchedule()]++;
+            if (word.getSchedule() != SCHEDULE_DONE) {
+                todayWords.offer(word);
+            }
+        }
+        if (todayWords.isEmpty()) {
+            // 今日没有单词或都已背完, 直接完成
+            finished = true;
+            todayWords = null;
+        }
+    }
+
+    /**
+     * 重新加载今日单词, 用于切换牌组, 保留今日忘记过的单词和回答批次
+     * 原队列中不在新单词里的单词记为已移出, 每日顺延时仍然顺延
+     *
+     * @param words 今日单词, 进度为数据库中的进度, 调用前需先写入会话中的进度
+     */
+    public void reload(List<WordEntityExtend> words) {
+
+        Set<String> ids = new HashSet<>();
+        for (WordEntityExtend word : words) {
+            String id = String.valueOf(word.getId());
+            ids.add(id);
+            dropped.remove(id);
+        }
+        if (todayWords != null) {
+            for (WordEntityExtend word : todayWords) {
+                String id = String.valueOf(word.getId());
+                if (!ids.contains(id)) {
+                    dropped.put(id, word);
+                }
+            }
+        }
+        todayWords = null;
+        finished = false;
+        schedules = new int[SCHEDULE_COUNT];
+        load(words);
+    }
+
+    /**
+     * 回答当前单词
+     *
+     * @param know 1: 认识, 0: 不认识, 其他: 只查看当前状态
+     * @return com.paul.web.module.word.entity.WordEntityExtend 回答的单词, 回答后的进度已更新, 没有回答时返回NULL
+     */
+    public WordEntityExtend answer(int know) {
+
+        if (todayWords == null || (know != 0 && know != 1)) {
+            return null;
+        }
+        // 获取并移除队列的头, 若队列为空, 则返回null
+        WordEntityExtend word = todayWords.poll();
+        if (word == null) {
+            return null;
+        }
+        version++;
+        int schedule = word.getSchedule();
+        // 当前进度减一
+        schedules[schedule]--;
+        if (know == 0) {
+            // 不认识进度加一, 并插入队列的最后
+            forgotten.add(String.valueOf(word.getId()));
+            schedules[SCHEDULE_UNKNOWN]++;
+            word.setSchedule(SCHEDULE_UNKNOWN);
+            todayWords.offer(word);
+            return word;
+        }
+        switch (schedule) {
+            case 0:
+            case 1:
+                // 下一个进度加一, 修改进度为下一进度, 插入队列的最后
+                schedules[schedule + 1]++;
+                word.setSchedule(schedule + 1);
+                todayWords.offer(word);
+                break;
+            case 2:
+                // 下一个进度加一, 今日无需再背诵
+                schedules[schedule + 1]++;
+                word.setSchedule(schedule + 1);
+                finishIfEmpty();
+                break;
+            case SCHEDULE_UNKNOWN:
+                // 已背诵1遍进度加一
+                schedules[1]++;
+                word.setSchedule(1);
+                todayWords.offer(word);
+                break;
+            default:
+        }
+        return word;
+    }
+
+    /**
+     * 按顺序回答多个单词, 要么全部成功, 要么全部不生效
+     * 每个回答的单词ID必须是回答时的当前单词, 否则说明客户端与服务端不一致, 恢复到回答前的状态
+     *
+     * @param wordIds 单词ID
+     * @param knows   1: 认识, 0: 不认识, 与单词ID一一对应
+     * @return int[] 每次回答后该单词的进度, 不一致时返回NULL
+     */
+    public int[] answerAll(List<Object> wordIds, List<Integer> knows) {
+
+        if (todayWords == null) {
+            return wordIds.isEmpty() ? new int[0] : null;
+        }
+        List<WordEntityExtend> savedWords = getTodayWords();
+        int[] savedWordSchedules = savedWords.stream().mapToInt(WordEntityExtend::getSchedule).toArray();
+        int[] savedSchedules = schedules.clone();
+        boolean savedFinished = finished;
+        long savedVersion = version;
+        Set<String> savedForgotten = new HashSet<>(forgotten);
+
+        int[] results = new int[wordIds.size()];
+        for (int i = 0; i < wordIds.size(); i++) {
+            Integer know = knows.get(i);
+            WordEntityExtend word = current(wordIds.get(i));
+            if (word == null || know == null || (know != 0 && know != 1)) {
+                // 恢复: 单词的进度也要恢复, 因为回答时直接修改了单词对象
+                for (int j = 0; j < savedWords.size(); j++) {
+                    savedWords.get(j).setSchedule(savedWordSchedules[j]);
+                }
+                restore(savedWords, savedSchedules, savedFinished);
+                version = savedVersion;
+                forgotten.retainAll(savedForgotten);
+                return null;
+            }
+            results[i] = answer(know).getSchedule();
+        }
+        return results;
+    }
+
+    /**
+     * 记录已处理的回答批次
+     *
+     * @param batchId 批次ID
+     * @return boolean 是否是新的批次, 已处理过则返回false
+     */
+    public boolean markBatch(String batchId) {
+
+        return batchIds.put(batchId, Boolean.TRUE) == null;
+    }
+
+    /**
+     * 是否已处理过该回答批次
+     *
+     * @param batchId 批次ID
+     * @return boolean
+     */
+    public boolean hasBatch(String batchId) {
+
+        return batchIds.containsKey(batchId);
+    }
+
+    /**
+     * 移出已删除的单词, 单词可以在队列的任意位置, 切换牌组时移出的单词中也一并移出
+     * 单词已删除, 按ID移出不会误删其他单词, 重复提交时单词已不在会话中
+     *
+     * @param id 单词ID
+     * @return boolean 是否移出
+     */
+    public boolean remove(Object id) {
+
+        String key = String.valueOf(id);
+        boolean removed = dropped.remove(key) != null;
+        if (todayWords == null) {
+            return removed;
+        }
+        Iterator<WordEntityExtend> iterator = todayWords.iterator();
+        while (iterator.hasNext()) {
+            WordEntityExtend word = iterator.next();
+            if (key.equals(String.valueOf(word.getId()))) {
+                iterator.remove();
+                version++;
+                // 该单词的进度减一
+                schedules[word.getSchedule()]--;
+                finishIfEmpty();
+                return true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 修改当前单词, 并将其移到队列最后, 当前单词不是该ID时不做处理
+     *
+     * @param entity 修改后的单词
+     * @return boolean 是否修改
+     */
+    public boolean edit(WordEntity entity) {
+
+        WordEntityExtend word = current(entity.getId());
+        if (word == null) {
+            return false;
+        }
+        todayWords.poll();
+        version++;
+        copy(entity, word);
+        todayWords.offer(word);
+        return true;
+    }
+
+    /**
+     * 更新单词的内容, 单词可以在队列的任意位置, 不移动位置, 用于其他用户修改了单词
+     * 切换牌组时移出的单词也一并更新
+     *
+     * @param entity 修改后的单词
+     * @return boolean 是否更新
+     */
+    public boolean refresh(WordEntity entity) {
+
+        String key = String.valueOf(entity.getId());
+        WordEntityExtend word = dropped.get(key);
+        if (word != null) {
+            copy(entity, word);
+        }
+        if (todayWords == null) {
+            return word != null;
+        }
+        for (WordEntityExtend queued : todayWords) {
+            if (key.equals(String.valueOf(queued.getId()))) {
+                // 客户端缓存的单词窗口中可能有该单词
+                version++;
+                copy(entity, queued);
+                return true;
+            }
+        }
+        return word != null;
+    }
+
+    /**
+     * 恢复会话状态, 用于从日志中重建会话
+     *
+     * @param words     今日单词, 按队列顺序
+     * @param schedules 各进度的数量
+     * @param finished  是否已完成
+     */
+    public void restore(List<WordEntityExtend> words, int[] schedules, boolean finished) {
+
+        this.version++;
+        this.todayWords = finished || words.isEmpty() ? null : new ArrayDeque<>(words);
+        this.schedules = Arrays.copyOf(schedules, SCHEDULE_COUNT);
+        this.finished = finished || words.isEmpty();
+    }
+
+    /**
+     * 恢复今日忘记过的单词和切换牌组时移出的单词, 用于从日志中重建会话
+     *
+     * @param forgotten 今日忘记过的单词ID
+     * @param dropped   切换牌组时移出的没背完的单词
+     */
+    public void restoreDay(Collection<String> forgotten, Collection<WordEntityExtend> dropped) {
+
+        this.forgotten.addAll(forgotten);
+        dropped.forEach(word -> this.dropped.put(String.valueOf(word.getId()), word));
+    }
+
+    /**
+     * 今日单词, 按队列顺序, 未加载或已完成时为空
+     *
+     * @return java.util.List<com.paul.web.module.word.entity.WordEntityExtend>
+     */
+    public List<WordEntityExtend> getTodayWords() {
+
+        return todayWords == null ? new ArrayList<>() : new ArrayList<>(todayWords);
+    }
+
+    public int[] getSchedules() {
+
+        return schedules.clone();
+    }
+
+    public long getVersion() {
+
+        return version;
+    }
+
+    public boolean isFinished() {
+
+        return finished;
+    }
+
+    /**
+     * 今日忘记过的单词ID
+     *
+     * @return java.util.Set<java.lang.String>
+     */
+    public Set<String> getForgotten() {
+
+        return new HashSet<>(forgotten);
+    }
+
+    /**
+     * 切换牌组时移出队列的没背完的单词
+     *
+     * @return java.util.List<com.paul.web.module.word.entity.WordEntityExtend>
+     */
+    public List<WordEntityExtend> getDropped() {
+
+        return new ArrayList<>(dropped.values());
+    }
+
+    public String getDecks() {
+
+        return decks;
+    }
+
+    public void setDecks(String decks) {
+
+        this.decks = decks;
+    }
+
+    /**
+     * 取出没背完的单词(包括切换牌组时移出的), 并重置会话, 牌组表达式保留
+     *
+     * @return java.util.List<com.paul.web.module.word.entity.WordEntityExtend>
+     */
+    public List<WordEntityExtend> reset() {
+
+        List<WordEntityExtend> words =
+            todayWords == null ? new ArrayList<>() : new ArrayList<>(todayWords);
+        words.addAll(dropped.values());
+        dropped.clear();
+        todayWords = null;
+        finished = false;
+        schedules = new int[SCHEDULE_COUNT];
+        batchIds.clear();
+        forgotten.clear();
+        version++;
+        return words;
+    }
+
+    /**
+     * 将会话状态放入响应: schedules, nextWord, totalCount, 接下来的window个单词, 队列版本version, 牌组表达式decks
+     * 客户端可以直接用window依次显示后面的单词, 不用每次回答后等待响应
+     *
+     * @param r      响应
+     * @param window 返回接下来的多少个单词
+     * @return com.paul.common.util.R
+     */
+    public R put(R r, int window) {
+
+        int totalCount = 0;
+        for (int schedule : schedules) {
+            totalCount += schedule;
+        }
+        List<WordEntityExtend> words = new ArrayList<>(window);
+        if (todayWords != null) {
+            Iterator<WordEntityExtend> iterator = todayWords.iterator();
+            while (words.size() < window && iterator.hasNext()) {
+                words.add(iterator.next());
+            }
+        }
+        return r.put("schedules", schedules.clone()).put("nextWord", nextWord())
+            .put("totalCount", totalCount).put("window", words).put("version", version)
+            .put("decks", decks);
+    }
+
+    /**
+     * 下一个要背的单词
+     *
+     * @return com.paul.web.module.word.entity.WordEntityExtend
+     */
+    public WordEntityExtend nextWord() {
+
+        return todayWords == null ? null : todayWords.peek();
+    }
+
+    /**
+     * 标记为已淘汰, 调用方需持有会话锁
+     */
+    void evict() {
+
+        evicted = true;
+    }
+
+    /**
+     * 是否已被淘汰, 调用方需持有会话锁
+     *
+     * @return boolean
+     */
+    boolean isEvicted() {
+
+        return evicted;
+    }
+
+    /**
+     * 是否空闲超过某时间点
+     *
+     * @param deadline 时间点
+     * @return boolean
+     */
+    boolean isIdleSince(long deadline) {
+
+        return lastAccess < deadline && !lock.isLocked();
+    }
+
+    long getLastAccess() {
+
+        return lastAccess;
+    }
+
+    /**
+     * 获得当前单词, 当前单词不是该ID时返回NULL, 防止重复提交时误删误改后面的单词
+     *
+     * @param id 单词ID
+     * @return com.paul.web.module.word.entity.WordEntityExtend
+     */
+    private WordEntityExtend current(Object id) {
+
+        WordEntityExtend word = nextWord();
+        if (word == null || id == null ||
+            !Objects.equals(String.valueOf(word.getId()), String.valueOf(id))) {
+            return null;
+        }
+        return word;
+    }
+
+    /**
+     * 复制修改后的单词中不为空的内容
+     *
+     * @param entity 修改后的单词
+     * @param word   会话中的单词
+     */
+    private static void copy(WordEntity entity, WordEntityExtend word) {
+
+        if (!StringUtils.isEmpty(entity.getWord())) {
+            word.setWord(entity.getWord());
+        }
+        if (!StringUtils.isEmpty(entity.getSound())) {
+            word.setSound(entity.getSound());
+        }
+        if (!StringUtils.isEmpty(entity.getTranslation())) {
+            word.setTranslation(entity.getTranslation());
+        }
+        if (!StringUtils.isEmpty(entity.getRemark())) {
+            word.setRemark(entity.getRemark());
+        }
+    }
+
+    /**
+     * 若队列已空, 则完成并重置, 但保留进度
+     */
+    private void finishIfEmpty() {
+
+        if (todayWords.isEmpty()) {
+            finished = true;
+            todayWords = null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,309 @@
+package com.paul.web.module.word.session;
+
+import com.paul.core.system.entity.UserEntity;
+import com.paul.web.module.word.entity.WordEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.UnavailableSecurityManagerException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 背诵会话注册表, 每个用户(Shiro的principal)一个会话, 未登录的请求共用一个匿名会话
+ * 会话存放在ConcurrentHashMap中, 会话状态由各自的会话锁保护, 获取会话时只在很短的锁内调整访问顺序
+ * 内存有上限: 会话数超过上限时淘汰最久未访问的会话, 并定时淘汰空闲超时的会话
+ * 被淘汰会话中没背完的单词会保留下来, 由每日检查任务统一顺延到第二天; 当日又被某个会话加载的单词由该会话负责, 不再保留
+ * 会话可能在等待会话锁时被淘汰, 读写会话状态需通过lock(key)获取, 加锁后若已被淘汰会重新获取
+ * 每日顺延在exclusive中重置全部会话并清空进度, 期间lock(key)等待, 新的一天的请求不会读到昨天的进度
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/22 14:32
+ */
+@Slf4j
+@Component
+public class ReviewSessionRegistry {
+
+    /**
+     * 未登录时的会话键
+     */
+    private static final String ANONYMOUS = "anonymous";
+
+    /**
+     * 会话
+     */
+    private final ConcurrentMap<String, ReviewSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 会话的访问顺序, 最久未访问的在前, 由自身的锁保护, 淘汰最久未访问的会话时不需要遍历全部会话
+     */
+    private final Map<String, ReviewSession> order = new LinkedHashMap<>(16, 0.75F, true);
+
+    /**
+     * 被淘汰会话中没背完的单词ID
+     */
+    private final Set<String> evictedWordIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 被淘汰会话中今日忘记过的单词ID, 每日顺延时据此评分
+     */
+    private final Set<String> evictedForgotten = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 顺延锁: 获取会话时加读锁, 只在获取期间持有; 每日顺延时加写锁, 期间不能获取会话
+     */
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();
+
+    /**
+     * 会话数上限
+     */
+    @Value("${spring.word.session.max-size:10000}")
+    private int maxSize;
+
+    /**
+     * 空闲超时分钟数
+     */
+    @Value("${spring.word.session.idle-minutes:120}")
+    private long idleMinutes;
+
+    /**
+     * 获得当前用户的会话并加锁, 没有则创建, 用完需在finally中调用unlock()
+     *
+     * @return com.paul.web.module.word.session.ReviewSession
+     */
+    public ReviewSession lockCurrent() {
+
+        return lock(currentKey());
+    }
+
+    /**
+     * 获得某个会话并加锁, 没有则创建, 用完需在finally中调用unlock()
+     * 等待会话锁期间会话被淘汰时, 重新获取(创建)会话; 每日顺延期间等待顺延结束
+     *
+     * @param key 会话键
+     * @return com.paul.web.module.word.session.ReviewSession
+     */
+    public ReviewSession lock(String key) {
+
+        gate.readLock().lock();
+        try {
+            while (true) {
+                ReviewSession session = get(key);
+                session.lock();
+                if (!session.isEvicted()) {
+                    return session;
+                }
+                session.unlock();
+            }
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    /**
+     * 独占执行, 用于每日顺延: 期间其他线程的lock(key)等待, 不会有请求开始新的一天
+     * 已持有会话锁的请求不受影响, action给会话加锁时等待其结束
+     * action需用ReviewSession.lock()给会话加锁, 在其他线程(如并行流)中调用lock(key)会死锁
+     *
+     * @param action 执行的操作
+     */
+    public void exclusive(Runnable action) {
+
+        gate.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            gate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获得某个会话, 没有则创建, 读写会话状态前需加锁, 并检查是否已被淘汰, 一般使用lock(key)
+     *
+     * @param key 会话键
+     * @return com.paul.web.module.word.session.ReviewSession
+     */
+    public ReviewSession get(String key) {
+
+        ReviewSession session = sessions.get(key);
+        if (session == null) {
+            session = sessions.computeIfAbsent(key, ReviewSession::new);
+        }
+        ReviewSession eldest = null;
+        synchronized (order) {
+            order.put(key, session);
+            if (order.size() > maxSize) {
+                Iterator<ReviewSession> iterator = order.values().iterator();
+                eldest = iterator.next();
+                iterator.remove();
+            }
+        }
+        if (eldest != null && sessions.remove(eldest.getKey(), eldest)) {
+            evict(eldest);
+        }
+        return session;
+    }
+
+    /**
+     * 获得全部会话的快照
+     *
+     * @return java.util.Collection<com.paul.web.module.word.session.ReviewSession>
+     */
+    public Collection<ReviewSession> sessions() {
+
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * 依次给每个会话加锁并处理, 跳过已被淘汰的会话, 用于修改和删除单词后更新所有用户的会话
+     * 不经过lock(key), 每日顺延期间也可以执行
+     *
+     * @param action 会话的处理, 执行时持有会话锁
+     */
+    public void forEach(Consumer<ReviewSession> action) {
+
+        for (ReviewSession session : sessions.values()) {
+            session.lock();
+            try {
+                if (!session.isEvicted()) {
+                    action.accept(session);
+                }
+            } finally {
+                session.unlock();
+            }
+        }
+    }
+
+    /**
+     * 取出被淘汰会话中没背完的单词ID
+     *
+     * @return java.util.List<java.lang.String>
+     */
+    public List<String> drainEvictedWordIds() {
+
+        List<String> ids = new ArrayList<>(evictedWordIds);
+        ids.forEach(evictedWordIds::remove);
+        return ids;
+    }
+
+    /**
+     * 取出被淘汰会话中今日忘记过的单词ID
+     *
+     * @return java.util.List<java.lang.String>
+     */
+    public List<String> drainEvictedForgotten() {
+
+        List<String> ids = new ArrayList<>(evictedForgotten);
+        ids.forEach(evictedForgotten::remove);
+        return ids;
+    }
+
+    /**
+     * 保留会话中没背完的单词和今日忘记过的单词, 由每日顺延统一处理, 并重置会话
+     * 用于淘汰会话, 以及重放日志时遇到往日的会话
+     *
+     * @param session 会话, 调用方需持有会话锁
+     */
+    public void retain(ReviewSession session) {
+
+        evictedForgotten.addAll(session.getForgotten());
+        session.reset().forEach(word -> evictedWordIds.add(String.valueOf(word.getId())));
+    }
+
+    /**
+     * 会话加载了今日单词, 这些单词由该会话负责顺延, 不再作为被淘汰会话中的单词顺延
+     * 否则被淘汰后当日又回来背完的单词, 每日顺延时仍会被重新开始
+     *
+     * @param words 会话加载的今日单词
+     */
+    public void reclaim(Collection<? extends WordEntity> words) {
+
+        if (!evictedWordIds.isEmpty()) {
+            words.forEach(word -> evictedWordIds.remove(String.valueOf(word.getId())));
+        }
+    }
+
+    /**
+     * 获得当前用户的会话键, 登录用户为用户ID
+     *
+     * @return java.lang.String
+     */
+    public String currentKey() {
+
+        Object principal;
+        try {
+            principal = SecurityUtils.getSubject().getPrincipal();
+        } catch (UnavailableSecurityManagerException e) {
+            // 非请求线程(如定时任务)中没有SecurityManager
+            principal = null;
+        }
+        return keyOf(principal);
+    }
+
+    /**
+     * 获得某个principal的会话键, 登录用户为用户ID
+     *
+     * @param principal Shiro的principal, 未登录时为NULL
+     * @return java.lang.String
+     */
+    public static String keyOf(Object principal) {
+
+        if (principal instanceof UserEntity) {
+            return String.valueOf(((UserEntity) principal).getId());
+        }
+        return principal == null ? ANONYMOUS : principal.toString();
+    }
+
+    /**
+     * 每分钟淘汰空闲超时的会话
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleMinutes);
+        int before = sessions.size();
+        sessions.values().removeIf(session -> {
+            if (!session.isIdleSince(deadline)) {
+                return false;
+            }
+            synchronized (order) {
+                order.remove(session.getKey(), session);
+            }
+            evict(session);
+            return true;
+        });
+        if (before != sessions.size()) {
+            log.info("淘汰空闲的背诵会话: {}个, 剩余: {}个", before - sessions.size(), sessions.size());
+        }
+    }
+
+    /**
+     * 保留被淘汰会话中没背完的单词, 并标记为已淘汰, 等待会话锁的请求会重新获取会话
+     *
+     * @param session 会话, 已移出注册表
+     */
+    private void evict(ReviewSession session) {
+
+        session.lock();
+        try {
+            session.evict();
+            retain(session);
+        } finally {
+            session.unlock();
+        }
+    }
+}
\ No newline at end of file
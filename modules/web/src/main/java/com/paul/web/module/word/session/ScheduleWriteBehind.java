@@ -0,0 +1,199 @@
+package com.paul.web.module.word.session;
+
+import com.paul.web.module.word.dao.UserWordProgressDao;
+import com.paul.web.module.word.entity.UserWordProgressEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单词进度的延迟写入, 进度属于各个用户, 写入user_word_progress表, 不写入共用的word表
+ * 回答时只修改内存中的会话并记录到这里, 同一个用户的同一个单词多次回答只保留最后的进度,
+ * 后台线程按固定间隔或积累到一定数量时批量写入: INSERT INTO ... ON DUPLICATE KEY UPDATE
+ * 数据库的写入频率与回答频率无关, 最多落后一个间隔; 缓冲区满时由回答的线程直接写入, 限制内存占用
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/27 15:10
+ */
+@Slf4j
+@Component
+public class ScheduleWriteBehind {
+
+    /**
+     * 每条INSERT语句写入的进度数量
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    private UserWordProgressDao dao;
+
+    /**
+     * 待写入的进度: [会话键, 单词ID] -> 最后的进度
+     */
+    private final ConcurrentMap<List<String>, Integer> dirty = new ConcurrentHashMap<>();
+
+    /**
+     * 写入锁, 同一时间只有一个线程写入
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * 是否已提交了按数量触发的写入
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * 写入线程
+     */
+    private ScheduledExecutorService flusher;
+
+    /**
+     * 写入间隔毫秒数
+     */
+    @Value("${spring.word.write-behind.interval-ms:1000}")
+    private long intervalMs;
+
+    /**
+     * 积累多少个单词时立即写入
+     */
+    @Value("${spring.word.write-behind.flush-size:500}")
+    private int flushSize;
+
+    /**
+     * 缓冲区上限, 超过时由回答的线程直接写入
+     */
+    @Value("${spring.word.write-behind.max-size:20000}")
+    private int maxSize;
+
+    /**
+     * 启动写入线程
+     */
+    @PostConstruct
+    public void start() {
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "schedule-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录某个用户的单词的最新进度
+     *
+     * @param userKey  会话键
+     * @param wordId   单词ID
+     * @param schedule 进度
+     */
+    public void put(String userKey, Object wordId, int schedule) {
+
+        List<String> key = Arrays.asList(userKey, String.valueOf(wordId));
+        if (dirty.size() >= maxSize && !dirty.containsKey(key)) {
+            // 缓冲区已满, 写入跟不上回答, 由当前线程写入后再继续
+            log.warn("单词进度缓冲区已满: {}个, 直接写入", dirty.size());
+            flush();
+        }
+        dirty.put(key, schedule);
+        if (dirty.size() >= flushSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * 写入全部待写入的进度
+     * 写入后只移除值没变的单词, 写入期间又被回答的单词留到下次写入, 不会用旧进度覆盖新进度
+     *
+     * @return int 写入的单词数量
+     */
+    public int flush() {
+
+        flushLock.lock();
+        try {
+            if (dirty.isEmpty()) {
+                return 0;
+            }
+            Map<List<String>, Integer> snapshot = new HashMap<>(dirty);
+            List<UserWordProgressEntity> progress = new ArrayList<>(snapshot.size());
+            snapshot.forEach((key, schedule) -> {
+                UserWordProgressEntity entity = new UserWordProgressEntity();
+                entity.setUserKey(key.get(0));
+                entity.setWordId(key.get(1));
+                entity.setSchedule(schedule);
+                progress.add(entity);
+            });
+            for (int i = 0; i < progress.size(); i += CHUNK_SIZE) {
+                List<UserWordProgressEntity> chunk =
+                    progress.subList(i, Math.min(i + CHUNK_SIZE, progress.size()));
+                dao.upsertBatch(chunk);
+                for (UserWordProgressEntity entity : chunk) {
+                    // 只移除值没变的进度
+                    List<String> key = Arrays.asList(entity.getUserKey(), entity.getWordId());
+                    dirty.remove(key, entity.getSchedule());
+                }
+            }
+            return snapshot.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 丢弃待写入的进度, 用于每日顺延: 顺延时会重置全部进度, 之前的进度不需要再写入
+     */
+    public void clear() {
+
+        flushLock.lock();
+        try {
+            dirty.clear();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 停止写入线程, 并写入剩余的进度
+     */
+    @PreDestroy
+    public void close() {
+
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(intervalMs + 5000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("写入剩余的单词进度: {}个", flush());
+    }
+
+    /**
+     * 后台写入, 失败时保留进度, 下次重试
+     */
+    private void flushQuietly() {
+
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("写入单词进度失败, 稍后重试: " + dirty.size() + "个", e);
+        }
+    }
+}
\ No newline at end of file
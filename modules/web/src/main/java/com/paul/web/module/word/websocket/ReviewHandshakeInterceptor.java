@@ -0,0 +1,44 @@
+package com.paul.web.module.word.websocket;
+
+import com.paul.web.module.word.session.ReviewSessionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * 握手时记录当前用户的会话键
+ * 握手请求仍然经过Shiro过滤器, 此时能获得当前用户, 之后连接上的消息不再经过过滤器, 直接使用握手时的会话键
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/26 10:32
+ */
+@Component
+public class ReviewHandshakeInterceptor implements HandshakeInterceptor {
+
+    /**
+     * 连接属性中会话键的名称
+     */
+    static final String SESSION_KEY = "reviewSessionKey";
+
+    @Autowired
+    private ReviewSessionRegistry sessions;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+        WebSocketHandler wsHandler, Map<String, Object> attributes) {
+
+        attributes.put(SESSION_KEY, sessions.currentKey());
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+        WebSocketHandler wsHandler, Exception exception) {
+
+    }
+}
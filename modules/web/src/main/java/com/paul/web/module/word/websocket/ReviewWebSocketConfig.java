@@ -0,0 +1,79 @@
+package com.paul.web.module.word.websocket;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 背诵的WebSocket配置, 地址为/word/ws
+ * 一个连接复用握手时的用户, 回答和下一个单词都通过紧凑的文本帧传输, 不再每次回答都经过Shiro过滤器链和JSON转换
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/26 10:20
+ */
+@Configuration
+@EnableWebSocket
+public class ReviewWebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private ReviewWebSocketHandler handler;
+
+    @Autowired
+    private ReviewHandshakeInterceptor interceptor;
+
+    /**
+     * 是否全局跨域
+     */
+    @Value("${spring.all-cors}")
+    private boolean allCors;
+
+    /**
+     * 单个文本帧的最大字节数, 回答帧很小, 不需要很大的缓冲区
+     */
+    @Value("${spring.word.websocket.max-message-size:8192}")
+    private int maxMessageSize;
+
+    /**
+     * 连接空闲超时分钟数
+     */
+    @Value("${spring.word.websocket.idle-minutes:30}")
+    private long idleMinutes;
+
+    /**
+     * 注册背诵的WebSocket
+     *
+     * @param registry WebSocket注册
+     */
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+
+        WebSocketHandlerRegistration registration =
+            registry.addHandler(handler, "/word/ws").addInterceptors(interceptor);
+        if (allCors) {
+            registration.setAllowedOrigins("*");
+        }
+    }
+
+    /**
+     * 每个连接的缓冲区大小和空闲超时, 连接数多时缓冲区直接决定内存占用
+     *
+     * @return org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean
+     */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxMessageSize);
+        container.setMaxBinaryMessageBufferSize(maxMessageSize);
+        container.setMaxSessionIdleTimeout(TimeUnit.MINUTES.toMillis(idleMinutes));
+        return container;
+    }
+}
@@ -0,0 +1,247 @@
+package com.paul.web.module.word.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.paul.common.exception.CustomException;
+import com.paul.common.util.DateUtils;
+import com.paul.common.util.R;
+import com.paul.web.module.word.entity.ReviewAnswerBatch;
+import com.paul.web.module.word.entity.WordEntityExtend;
+import com.paul.web.module.word.service.WordService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.paul.common.constant.DateConstant.DAY_DATE_PATTERN;
+
+/**
+ * 背诵的WebSocket处理器
+ * 客户端发送的帧:
+ * s: 获得当前状态, 未加载时加载今日单词
+ * a 批次ID 队列版本 单词ID:认识 单词ID:认识...: 批量回答, 同POST word/answers, 队列版本为-时不校验
+ * 服务端发送的帧, 都是JSON数组:
+ * ["s", code, msg, 队列版本, 各进度数量, 总数, 接下来的单词, 批次ID]: 当前状态, 单词为[id, word, sound, translation, schedule,
+ * startDate, dayCount, remark], 批次ID为回答帧的批次ID, 客户端据此确认是哪一批的回答, 获得当前状态时为null
+ * ["p", 队列版本, 各进度数量, 总数]: 同一用户在其他连接上回答后推送的进度
+ *
+ * @author paul paulandcode@gmail.com
+ * @since 2019/7/26 10:45
+ */
+@Slf4j
+@Component
+public class ReviewWebSocketHandler extends TextWebSocketHandler {
+
+    /**
+     * 单个连接发送超时毫秒数, 超时的慢连接会被关闭, 不会阻塞其他连接
+     */
+    private static final int SEND_TIME_LIMIT = 10000;
+
+    /**
+     * 单个连接待发送的最大字节数
+     */
+    private static final int BUFFER_SIZE_LIMIT = 64 * 1024;
+
+    /**
+     * 不校验队列版本
+     */
+    private static final String ANY_VERSION = "-";
+
+    @Autowired
+    private WordService wordService;
+
+    /**
+     * 每个会话键的连接, 用于向同一用户的其他连接推送进度
+     */
+    private final ConcurrentMap<String, Set<WebSocketSession>> connections = new ConcurrentHashMap<>();
+
+    /**
+     * 每个连接的并发发送包装, 推送和响应可能来自不同线程
+     */
+    private final ConcurrentMap<String, WebSocketSession> decorated = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+
+        WebSocketSession connection =
+            new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT, BUFFER_SIZE_LIMIT);
+        decorated.put(session.getId(), connection);
+        connections.computeIfAbsent(keyOf(session), key -> ConcurrentHashMap.newKeySet()).add(connection);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+
+        WebSocketSession connection = decorated.remove(session.getId());
+        if (connection != null) {
+            connections.computeIfPresent(keyOf(session), (key, set) -> {
+                set.remove(connection);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+
+        String key = keyOf(session);
+        String[] parts = message.getPayload().trim().split(" ");
+        R r;
+        String batchId = null;
+        try {
+            switch (parts[0]) {
+                case "s":
+                    r = wordService.next(key, 2);
+                    break;
+                case "a":
+                    batchId = parts.length > 1 ? parts[1] : null;
+                    r = wordService.answers(key, parseBatch(parts));
+                    break;
+                default:
+                    r = R.err("未知的消息! ");
+            }
+        } catch (CustomException e) {
+            r = R.err(e.getCode(), e.getMsg());
+        } catch (RuntimeException e) {
+            log.error("处理背诵消息失败: " + message.getPayload(), e);
+            r = R.err();
+        }
+        WebSocketSession connection = decorated.getOrDefault(session.getId(), session);
+        send(connection, state(r, batchId));
+        Object applied = r.get("applied");
+        if (applied instanceof Integer && (Integer) applied > 0) {
+            // 回答改变了进度, 推送给同一用户的其他连接
+            String progress = progress(r);
+            connections.getOrDefault(key, ConcurrentHashMap.newKeySet()).stream()
+                .filter(other -> other != connection).forEach(other -> send(other, progress));
+        }
+    }
+
+    /**
+     * 解析回答帧: a 批次ID 队列版本 单词ID:认识 单词ID:认识...
+     *
+     * @param parts 按空格分割的帧
+     * @return com.paul.web.module.word.entity.ReviewAnswerBatch
+     */
+    private ReviewAnswerBatch parseBatch(String[] parts) {
+
+        if (parts.length < 3) {
+            throw new CustomException("回答消息格式错误! ");
+        }
+        ReviewAnswerBatch batch = new ReviewAnswerBatch();
+        batch.setBatchId(parts[1]);
+        batch.setVersion(ANY_VERSION.equals(parts[2]) ? null : parseLong(parts[2]));
+        List<ReviewAnswerBatch.Answer> answers = new ArrayList<>(parts.length - 3);
+        for (int i = 3; i < parts.length; i++) {
+            int colon = parts[i].lastIndexOf(':');
+            if (colon <= 0) {
+                throw new CustomException("回答消息格式错误! ");
+            }
+            ReviewAnswerBatch.Answer answer = new ReviewAnswerBatch.Answer();
+            answer.setWordId(parts[i].substring(0, colon));
+            answer.setKnow((int) parseLong(parts[i].substring(colon + 1)));
+            answers.add(answer);
+        }
+        batch.setAnswers(answers);
+        return batch;
+    }
+
+    /**
+     * 解析回答帧中的数字
+     *
+     * @param text 文本
+     * @return long
+     */
+    private long parseLong(String text) {
+
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new CustomException("回答消息格式错误! ", e);
+        }
+    }
+
+    /**
+     * 状态帧: ["s", code, msg, 队列版本, 各进度数量, 总数, 接下来的单词, 批次ID]
+     *
+     * @param r       服务的响应
+     * @param batchId 回答帧的批次ID, 获得当前状态时为NULL
+     * @return java.lang.String
+     */
+    @SuppressWarnings("unchecked")
+    private String state(R r, String batchId) {
+
+        List<Object> words = new ArrayList<>();
+        Object window = r.get("window");
+        if (window instanceof List) {
+            for (WordEntityExtend word : (List<WordEntityExtend>) window) {
+                words.add(new Object[]{String.valueOf(word.getId()), word.getWord(), word.getSound(),
+                    word.getTranslation(), word.getSchedule(),
+                    word.getStartDate() == null ? null : DateUtils.format(word.getStartDate(), DAY_DATE_PATTERN),
+                    word.getDayCount(), word.getRemark()});
+            }
+        }
+        Object code = r.get("code");
+        return JSON.toJSONString(new Object[]{"s", code == null ? 0 : code, r.get("msg"), r.get("version"),
+            r.get("schedules"), r.get("totalCount"), words, batchId},
+            SerializerFeature.DisableCircularReferenceDetect);
+    }
+
+    /**
+     * 进度帧: ["p", 队列版本, 各进度数量, 总数]
+     *
+     * @param r 服务的响应
+     * @return java.lang.String
+     */
+    private String progress(R r) {
+
+        return JSON.toJSONString(new Object[]{"p", r.get("version"), r.get("schedules"), r.get("totalCount")});
+    }
+
+    /**
+     * 发送文本帧, 发送失败时关闭连接, 由客户端重连
+     *
+     * @param connection 连接
+     * @param text       文本
+     */
+    private void send(WebSocketSession connection, String text) {
+
+        if (!connection.isOpen()) {
+            return;
+        }
+        try {
+            connection.sendMessage(new TextMessage(text));
+        } catch (IOException | RuntimeException e) {
+            log.warn("发送背诵消息失败, 关闭连接: {}", connection.getId(), e);
+            try {
+                connection.close(CloseStatus.SERVER_ERROR);
+            } catch (IOException ignored) {
+                // 连接已不可用
+            }
+        }
+    }
+
+    /**
+     * 获得连接的会话键, 握手时记录
+     *
+     * @param session 连接
+     * @return java.lang.String
+     */
+    private String keyOf(WebSocketSession session) {
+
+        Map<String, Object> attributes = session.getAttributes();
+        return (String) attributes.get(ReviewHandshakeInterceptor.SESSION_KEY);
+    }
+}
\ No newline at end of file
@@ -9,10 +9,80 @@ layui.use(['layer', 'form'], function () {
     let $delete = $("#delete");
     let lastColor;
     let nextWord;
+    // 接下来要背的单词, 第一个为当前单词, 回答后直接显示下一个, 不用等待响应
+    let words = [];
+    // 服务端的队列版本
+    let version;
+    // 还没提交的回答
+    let pending = [];
+    // 正在提交的批次, 失败时原样重试
+    let sending = null;
+    // 回答全部提交后要执行的操作
+    let afterSync = [];
+    // 背诵的WebSocket连接, 连接可用时通过它提交回答, 否则使用ajax
+    let socket = null;
+    // WebSocket提交后等待响应的定时器, 超时后用ajax重试同一个批次
+    let socketTimer = null;
 
     next(2, function (r) {
         return putWord(r);
     });
+    connect();
+
+    /**
+     * 建立背诵的WebSocket连接, 断开后自动重连
+     */
+    function connect() {
+        if (!window.WebSocket) {
+            return;
+        }
+        let url = new URL("word/ws", location.href);
+        url.protocol = url.protocol.replace("http", "ws");
+        let current = new WebSocket(url.href);
+        current.onopen = function () {
+            socket = current;
+        };
+        current.onmessage = function (event) {
+            let frame = JSON.parse(event.data);
+            if (frame[0] === "s") {
+                let r = {
+                    code: frame[1],
+                    msg: frame[2],
+                    version: frame[3],
+                    schedules: frame[4],
+                    totalCount: frame[5],
+                    window: frame[6].map(function (w) {
+                        return {
+                            id: w[0], word: w[1], sound: w[2], translation: w[3], schedule: w[4],
+                            startDate: w[5], dayCount: w[6], remark: w[7]
+                        };
+                    })
+                };
+                let batchId = frame[7];
+                if (batchId != null) {
+                    // 只确认正在提交的批次, 超时后已由ajax提交的批次, 其迟到的响应直接忽略
+                    if (sending && sending.batchId === batchId) {
+                        clearTimeout(socketTimer);
+                        answered(r);
+                    }
+                } else if (!sending && pending.length === 0) {
+                    putWord(r);
+                }
+            } else if (frame[0] === "p") {
+                // 在其他页面背诵后的进度, 本地没有未提交的回答时重新获取单词
+                putProgress({version: frame[1], schedules: frame[2], totalCount: frame[3]});
+                if (!sending && pending.length === 0 && frame[1] !== version) {
+                    current.send("s");
+                }
+            }
+        };
+        current.onclose = function () {
+            if (socket === current) {
+                socket = null;
+            }
+            setTimeout(connect, 3000);
+        };
+    }
 
     /**
      * 获得下一个单词
@@ -36,17 +106,149 @@ layui.use(['layer', 'form'], function () {
     }
 
     /**
-     * 放置下一个单词
+     * 回答当前单词, 直接显示本地的下一个单词, 回答在后台批量提交
+     *
+     * @param know 1: 认识, 0: 不认识
+     */
+    function answer(know) {
+        let word = words.shift();
+        if (!word) {
+            return;
+        }
+        pending.push({wordId: word.id, know: know, clientTimestamp: Date.now()});
+        if (words.length > 0) {
+            putCard(words[0]);
+        }
+        sync();
+    }
+
+    /**
+     * 提交还没提交的回答, 同一时间只有一个批次在提交
+     */
+    function sync() {
+        if (sending) {
+            return;
+        }
+        if (pending.length === 0) {
+            let callbacks = afterSync;
+            afterSync = [];
+            callbacks.forEach(function (callback) {
+                callback();
+            });
+            return;
+        }
+        sending = {
+            batchId: Date.now().toString(36) + Math.random().toString(36).slice(2),
+            version: version,
+            answers: pending.splice(0, pending.length)
+        };
+        send();
+    }
+
+    /**
+     * 发送正在提交的批次, WebSocket可用时通过它发送, 网络异常时用同一个批次ID重试, 服务端不会重复处理
+     */
+    function send() {
+        if (socket && socket.readyState === WebSocket.OPEN) {
+            let frame = ["a", sending.batchId, sending.version == null ? "-" : sending.version];
+            sending.answers.forEach(function (answer) {
+                frame.push(answer.wordId + ":" + answer.know);
+            });
+            socket.send(frame.join(" "));
+            socketTimer = setTimeout(sendByAjax, 3000);
+            return;
+        }
+        sendByAjax();
+    }
+
+    /**
+     * 通过ajax发送正在提交的批次, 响应回来时批次已完成(如WebSocket先响应)则忽略
+     */
+    function sendByAjax() {
+        let batch = sending;
+        $.ajax({
+            url: "word/answers",
+            type: "POST",
+            data: JSON.stringify(batch),
+            dataType: "json",
+            contentType: "application/json; charset=utf-8",
+            success: function (r) {
+                if (sending === batch) {
+                    answered(r);
+                }
+            },
+            error: function () {
+                if (sending === batch) {
+                    setTimeout(send, 3000);
+                }
+            }
+        });
+    }
+
+    /**
+     * 批次提交完成, 以服务端的状态为准, 然后继续提交后面的回答
+     *
+     * @param r 提交结果
+     */
+    function answered(r) {
+        sending = null;
+        if (!r.code) {
+            version = r.version;
+            if (pending.length === 0) {
+                let current = words[0];
+                let next = r.window[0];
+                if (!current || !next || String(current.id) !== String(next.id)) {
+                    putWord(r);
+                } else {
+                    words = r.window;
+                    putProgress(r);
+                }
+            } else {
+                putProgress(r);
+            }
+        } else {
+            // 与服务端不一致, 丢弃本地的回答, 以服务端为准
+            layer.msg(r.msg, {icon: 2});
+            pending = [];
+            putWord(r);
+        }
+        sync();
+    }
+
+    /**
+     * 回答全部提交后再执行, 如修改和删除当前单词
+     *
+     * @param callback 要执行的操作
+     */
+    function whenSynced(callback) {
+        afterSync.push(callback);
+        sync();
+    }
+
+    /**
+     * 放置进度和下一个单词
      * @param r ajax返回结果
      * @returns {boolean}
      */
     function putWord(r) {
+        words = r.window || [];
+        version = r.version;
+        if (!putProgress(r)) {
+            return false;
+        }
+        return putCard(words[0]);
+    }
+
+    /**
+     * 放置进度
+     * @param r ajax返回结果
+     * @returns {boolean} 今天是否有要背的单词
+     */
+    function putProgress(r) {
         // 总数
         let totalCount = r.totalCount;
         // 进度
         let schedules = r.schedules;
-        // 下一个单词
-        nextWord = r.nextWord;
         if (totalCount === 0) {
             layer.msg("今天没有要背的单词！", {icon: 5});
             return false;
@@ -71,7 +273,16 @@ layui.use(['layer', 'form'], function () {
                 progress.attr("aria-valuenow", width);
             }
         }
+        return true;
+    }
 
+    /**
+     * 放置单词
+     * @param word 单词, 为空时表示已完成
+     * @returns {boolean}
+     */
+    function putCard(card) {
+        nextWord = card;
         if (nextWord) {
             $know.show();
             $notKnow.show();
@@ -172,11 +383,8 @@ layui.use(['layer', 'form'], function () {
     });
 
     $next.click(function () {
-        next(know, function (r) {
-            let b = putWord(r);
-            $next.hide();
-            return b;
-        });
+        answer(know);
+        $next.hide();
     });
 
     // 可以按左右键操作
@@ -219,6 +427,13 @@ layui.use(['layer', 'form'], function () {
     });
 
     $update.click(function () {
+        whenSynced(openUpdate);
+    });
+
+    /**
+     * 打开修改当前单词的页面
+     */
+    function openUpdate() {
         $.ajax({
             url: "word/one/" + nextWord.id,
             type: "GET",
@@ -245,27 +460,62 @@ layui.use(['layer', 'form'], function () {
                 });
             }
         });
-
-
-    });
+    }
 
     $delete.click(function () {
         layer.confirm('确定删除？', function (index) {
             layer.close(index);
+            whenSynced(deleteWord);
+        });
+    });
+
+    /**
+     * 删除当前单词
+     */
+    function deleteWord() {
+        $.ajax({
+            url: "word/one/" + nextWord.id,
+            type: "DELETE",
+            dataType: "json",
+            success: function (r) {
+                if (!r.code) {
+                    layer.msg("删除成功！", {icon: 1});
+                    putWord(r);
+                } else {
+                    layer.msg(r.msg, {icon: 2});
+                }
+            }
+        });
+    }
+
+    // 录入单词时提示已有的单词, 停止输入150毫秒后再查询, 只显示最后一次查询的结果
+    let suggestTimer = null;
+    let suggestSeq = 0;
+    $("#wordInput").on("input", function () {
+        let prefix = $.trim($(this).val());
+        clearTimeout(suggestTimer);
+        if (!prefix) {
+            $("#wordSuggestions").empty();
+            return;
+        }
+        suggestTimer = setTimeout(function () {
+            let seq = ++suggestSeq;
             $.ajax({
-                url: "word/one/" + nextWord.id,
-                type: "DELETE",
+                url: "word/suggest",
+                type: "GET",
+                data: {prefix: prefix},
                 dataType: "json",
                 success: function (r) {
-                    if (!r.code) {
-                        layer.msg("删除成功！", {icon: 1});
-                        putWord(r);
-                    } else {
-                        layer.msg(r.msg, {icon: 2});
+                    if (r.code || seq !== suggestSeq) {
+                        return;
                     }
+                    let $list = $("#wordSuggestions").empty();
+                    r.data.forEach(function (word) {
+                        $list.append($("<option>").attr("value", word));
+                    });
                 }
             });
-        });
+        }, 150);
     });
 
     form.on('submit(submitBtn)', function (data) {
@@ -287,7 +537,12 @@ layui.use(['layer', 'form'], function () {
             contentType: "application/json; charset=utf-8",
             success: function (r) {
                 if (!r.code) {
-                    layer.msg(msg + "成功！", {icon: 1});
+                    if (r.similar) {
+                        // 只提示, 可能是拼写错误或重复录入
+                        layer.msg(msg + "成功！已有相似单词: " + r.similar.join(", "), {icon: 0, time: 5000});
+                    } else {
+                        layer.msg(msg + "成功！", {icon: 1});
+                    }
                     layer.closeAll('page');
                     if (fields.id) {
                         // 若是修改, 则更新当前背诵单词